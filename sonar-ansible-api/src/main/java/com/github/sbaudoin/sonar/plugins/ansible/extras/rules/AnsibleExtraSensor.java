@@ -16,6 +16,7 @@
 package com.github.sbaudoin.sonar.plugins.ansible.extras.rules;
 
 import com.github.sbaudoin.sonar.plugins.ansible.rules.AbstractAnsibleSensor;
+import com.github.sbaudoin.sonar.plugins.ansible.rules.AnsibleLintRegistry;
 import org.sonar.api.batch.fs.FileSystem;
 import org.sonar.api.batch.sensor.SensorContext;
 import org.sonar.api.batch.sensor.SensorDescriptor;
@@ -24,6 +25,7 @@ import org.sonar.api.utils.log.Loggers;
 import com.github.sbaudoin.sonar.plugins.yaml.languages.YamlLanguage;
 
 import java.io.*;
+import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.file.*;
@@ -37,9 +39,10 @@ import java.util.*;
  */
 public final class AnsibleExtraSensor extends AbstractAnsibleSensor {
     /**
-     * Identifier of the temporary directory where the additional rules are extracted
+     * Directory of the project data directory where the additional rules are extracted, in a sub-directory named after
+     * the hash of their content
      */
-    public static final String EXTRA_RULES_TEMP_DIR = "ansible-lint-extra-rules";
+    public static final String EXTRA_RULES_CACHE_DIR = "ansible-lint-extra-rules";
 
     /**
      * Directory that contains the additional ansible-lint rules
@@ -50,12 +53,31 @@ public final class AnsibleExtraSensor extends AbstractAnsibleSensor {
 
 
     /**
-     * Constructor
+     * Directory where the extra rules are extracted
+     */
+    private Path extractionDir = null;
+
+    /**
+     * Python interpreter used to precompile the extra rules, or {@code null} if they must not be compiled
+     */
+    private String pythonPath = null;
+
+
+    /**
+     * Constructor. The extra rules of the plugin are registered for the combined {@code ansible-lint} execution.
      *
      * @param fileSystem the file system on which the sensor will find the files to be analyzed
      */
     public AnsibleExtraSensor(FileSystem fileSystem) {
         super(fileSystem);
+        URL extraRulesDir = getClass().getClassLoader().getResource(EXTRA_RULES_DIR);
+        if (extraRulesDir != null) {
+            try {
+                AnsibleLintRegistry.registerExtraRules(extraRulesDir.toURI());
+            } catch (URISyntaxException e) {
+                LOGGER.debug("Cannot register extra rules {}: {}", extraRulesDir, e.getMessage());
+            }
+        }
     }
 
 
@@ -68,59 +90,170 @@ public final class AnsibleExtraSensor extends AbstractAnsibleSensor {
 
     @Override
     public void execute(SensorContext context) {
+        extractionDir = getDataDir(context).resolve(EXTRA_RULES_CACHE_DIR);
+        pythonPath = getPythonPath(context);
+
+        if (isCombinedExecution(context)) {
+            executeCombined(context);
+            return;
+        }
+
         // Extract extra rules if any
         Path extraRulesDir = extractExtraRules(EXTRA_RULES_DIR);
         if (extraRulesDir != null) {
             executeWithAnsibleLint(context, Arrays.asList("-r", extraRulesDir.toString()));
-            deleteDirectory(extraRulesDir);
         }
     }
 
 
     /**
-     * Extract the files (supposedly containing additional ansible-lint rules) to a temporary directory whose path is
+     * Executes {@code ansible-lint} once with the default rules (if the plugin that executes them is installed) and the
+     * extra rules of all the installed extra rules plugins. Nothing is done if another sensor already executed
+     * {@code ansible-lint} this way for the current module. As the sensor of the default rules skips itself once extra
+     * rules are registered, the default rules are still executed if no extra rules could be extracted.
+     *
+     * @param context the execution sensor context
+     */
+    private void executeCombined(SensorContext context) {
+        if (!AnsibleLintRegistry.claimCombinedExecution(context)) {
+            LOGGER.info("Extra rules already executed by the combined ansible-lint execution, skipping");
+            return;
+        }
+
+        List<String> args = new ArrayList<>();
+        if (AnsibleLintRegistry.hasDefaultRules()) {
+            // -r replaces the default rules unless -R is passed
+            args.add("-R");
+        }
+        List<Path> extraRulesDirs = new ArrayList<>();
+        for (URI rules : AnsibleLintRegistry.getExtraRules()) {
+            Path extraRulesDir = extractExtraRules(rules);
+            if (extraRulesDir != null) {
+                extraRulesDirs.add(extraRulesDir);
+                args.add("-r");
+                args.add(extraRulesDir.toString());
+            }
+        }
+        LOGGER.info("Combined ansible-lint execution with {} extra rules director{}{}", extraRulesDirs.size(),
+                (extraRulesDirs.size() == 1) ? "y" : "ies", AnsibleLintRegistry.hasDefaultRules() ? " and the default rules" : "");
+        if (!extraRulesDirs.isEmpty()) {
+            executeWithAnsibleLint(context, args);
+        } else if (AnsibleLintRegistry.hasDefaultRules()) {
+            LOGGER.warn("No extra rules could be extracted, executing the default rules only");
+            executeWithAnsibleLint(context, null);
+        }
+    }
+
+    /**
+     * Extract the files (supposedly containing additional ansible-lint rules) to a persistent directory whose path is
      * returned
      *
      * @param extraRulesDirectory a directory containing files to be "extracted" (copied or unzipped when this class is
      *                            packaged into a JAR file)
      * @return the path where the files where extracted
+     * @see #extractExtraRules(URI)
      */
     private Path extractExtraRules(String extraRulesDirectory) {
-        // First copy custom rules in a temporary directory
-        Path tempDir;
-        try {
-            LOGGER.debug("Creating temp dir {}", EXTRA_RULES_TEMP_DIR);
-            tempDir = Files.createTempDirectory(Paths.get(System.getProperty("user.dir")), EXTRA_RULES_TEMP_DIR);
-            tempDir.toFile().deleteOnExit();
-            LOGGER.debug("Temp dir created: {}", tempDir.toString());
-        } catch (IOException e) {
-            // Not a blocker issue: we won't execute the extra rules
-            LOGGER.error("Cannot create temporary directory " + EXTRA_RULES_TEMP_DIR, e);
-            LOGGER.warn("Extra rules won't be executed");
-            return null;
-        }
-
         URL extraRulesDir = getClass().getClassLoader().getResource(extraRulesDirectory);
         if (extraRulesDir == null) {
             LOGGER.info("No extra ansible-lint rules found");
             return null;
         }
-        try (com.github.sbaudoin.sonar.plugins.ansible.util.FileSystem fs = new com.github.sbaudoin.sonar.plugins.ansible.util.FileSystem(extraRulesDir.toURI())) {
-            LOGGER.debug("Copying rules from {}...", extraRulesDirectory);
-            fs.readDirectory(extraRulesDir.toURI()).forEach(entry -> copyExtraRule(entry, tempDir));
+        try {
+            return extractExtraRules(extraRulesDir.toURI());
+        } catch (URISyntaxException e) {
+            LOGGER.error("Cannot access extra Ansible-lint rule directory", e);
+            return null;
+        }
+    }
+
+    /**
+     * Extract the files of the passed directory, possibly located in the JAR file of another plugin, to a persistent
+     * directory whose path is returned. The directory is named after the hash of the files, so that the files are only
+     * extracted (and compiled by Python) once for a given version of the rules. The files are first extracted to a
+     * temporary directory that is then atomically renamed, so that concurrent analyses never see a partial extraction.
+     *
+     * @param extraRulesDir the URI of a directory containing the extra rules
+     * @return the path where the files where extracted or {@code null} if an error occurred
+     */
+    private Path extractExtraRules(URI extraRulesDir) {
+        try (com.github.sbaudoin.sonar.plugins.ansible.util.FileSystem fs = new com.github.sbaudoin.sonar.plugins.ansible.util.FileSystem(extraRulesDir)) {
+            Path rulesDir = extractionDir.resolve(fs.getContentHash(extraRulesDir));
+            if (Files.isDirectory(rulesDir)) {
+                LOGGER.debug("Extra rules already extracted to {}", rulesDir);
+                return rulesDir;
+            }
+
+            // First copy custom rules in a temporary directory
+            Path tempDir;
+            try {
+                LOGGER.debug("Creating temp dir in {}", extractionDir);
+                Files.createDirectories(extractionDir);
+                tempDir = Files.createTempDirectory(extractionDir, rulesDir.getFileName() + "-");
+                LOGGER.debug("Temp dir created: {}", tempDir);
+            } catch (IOException e) {
+                // Not a blocker issue: we won't execute the extra rules
+                LOGGER.error("Cannot create temporary directory in " + extractionDir, e);
+                LOGGER.warn("Extra rules won't be executed");
+                return null;
+            }
+            LOGGER.debug("Copying rules from {}...", extraRulesDir);
+            // All the rules are copied, even if one fails, to log all the errors
+            if (!fs.readDirectory(extraRulesDir).map(entry -> copyExtraRule(entry, tempDir)).reduce(true, Boolean::logicalAnd)) {
+                LOGGER.warn("Extra rules won't be executed");
+                deleteDirectory(tempDir);
+                return null;
+            }
+            compileExtraRules(tempDir, rulesDir);
+
+            try {
+                Files.move(tempDir, rulesDir, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException|DirectoryNotEmptyException e) {
+                // Extracted in the meantime by another analysis
+                LOGGER.debug("Extra rules extracted concurrently to {}", rulesDir);
+                deleteDirectory(tempDir);
+            } catch (IOException e) {
+                // The directory may have been created concurrently on a system that reports another error
+                deleteDirectory(tempDir);
+                if (!Files.isDirectory(rulesDir)) {
+                    throw e;
+                }
+            }
+            return rulesDir;
         } catch (DirectoryIteratorException e) {
             // I/O error encountered during the iteration, the cause is an IOException
             LOGGER.error("Error reading extra-rules directory", e);
             return null;
-        } catch (URISyntaxException e) {
-            LOGGER.error("Cannot access extra Ansible-lint rule directory", e);
-            return null;
         } catch (IOException e) {
             LOGGER.error("Unknown error", e);
             return null;
         }
+    }
 
-        return tempDir;
+    /**
+     * Compiles the Python files of the passed directory so that Python does not compile them at every analysis. Errors
+     * are ignored: Python compiles the rules when they are loaded if they are not compiled.
+     *
+     * @param directory the directory where the rules have been extracted
+     * @param finalDirectory the directory where the rules are eventually moved, used in the compiled files
+     */
+    private void compileExtraRules(Path directory, Path finalDirectory) {
+        if (pythonPath == null) {
+            return;
+        }
+        List<String> output = new ArrayList<>();
+        List<String> error = new ArrayList<>();
+        try {
+            int status = executeCommand(Arrays.asList(pythonPath, "-m", "compileall", "-q", "-d", finalDirectory.toString(), directory.toString()), output, error);
+            if (status != 0) {
+                LOGGER.debug("Cannot compile extra rules: {}", String.join(" ", error));
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Cannot compile extra rules: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            LOGGER.debug("Cannot compile extra rules: {}", e.getMessage());
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
@@ -141,7 +274,6 @@ public final class AnsibleExtraSensor extends AbstractAnsibleSensor {
             LOGGER.error("Cannot extract rule " + ruleFile + " to " + directory, e);
             return false;
         }
-        copyFile.toFile().deleteOnExit();
 
         return true;
     }
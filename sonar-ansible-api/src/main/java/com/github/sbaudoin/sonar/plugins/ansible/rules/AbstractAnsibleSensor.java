@@ -19,6 +19,7 @@ import com.github.sbaudoin.sonar.plugins.ansible.settings.AnsibleSettings;
 import org.sonar.api.batch.fs.FilePredicate;
 import org.sonar.api.batch.fs.FileSystem;
 import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.TextRange;
 import org.sonar.api.batch.sensor.Sensor;
 import org.sonar.api.batch.sensor.SensorContext;
 import org.sonar.api.batch.sensor.issue.NewIssue;
@@ -31,11 +32,32 @@ import com.github.sbaudoin.sonar.plugins.yaml.languages.YamlLanguage;
 
 import javax.annotation.Nullable;
 import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Abstract class for sensors that takes in charge the execution of {@code ansible-lint}. The sensors just have to
@@ -51,12 +73,132 @@ import java.util.stream.Collectors;
 public abstract class AbstractAnsibleSensor implements Sensor {
     private static final Logger LOGGER = Loggers.get(AbstractAnsibleSensor.class);
 
+    /**
+     * Threads that read the outputs of the executed commands and probe the versions, shared by all sensors and reused
+     * from one command to the other. Idle threads are released after a minute.
+     */
+    private static final ExecutorService OUTPUT_READERS = Executors.newCachedThreadPool(new AnsibleLintThreadFactory("ansible-lint-output-"));
+
+    /**
+     * Thread that stops the {@code ansible-lint} workers that do not answer in time
+     */
+    static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(new AnsibleLintThreadFactory("ansible-lint-watchdog-"));
+
+    /**
+     * Maximum length of an {@code ansible-lint} command line when several files are passed at once. This is below the
+     * limit of Windows (32767 characters) and far below the usual {@code ARG_MAX} value of Unix systems.
+     */
+    protected static final int MAX_COMMAND_LINE_LENGTH = 32000;
+
+    /**
+     * Directory of the SonarQube user home where the data kept from one analysis to another are stored, in a
+     * sub-directory per project. The scanner working directory cannot be used as it is emptied at every analysis.
+     */
+    protected static final String DATA_DIR = "ansible-lint-data";
+
+    /**
+     * Property set by the scanner in pull request analyses
+     */
+    protected static final String PULL_REQUEST_KEY = "sonar.pullrequest.key";
+
+    /**
+     * Property of the SonarQube user home directory ({@code ~/.sonar} by default)
+     */
+    protected static final String USER_HOME_KEY = "sonar.userHome";
+
+    /**
+     * Directory of the project data directory where the issues of previous analyses are cached
+     */
+    protected static final String CACHE_DIR = "ansible-lint-cache";
+
+    /**
+     * File of the project data directory where the dependency graph of the analyzed files is persisted
+     */
+    protected static final String DEPENDENCY_GRAPH_FILE = "ansible-dependency-graph";
+
+    /**
+     * File of the project data directory where the versions of {@code ansible} and {@code ansible-lint} are cached
+     */
+    protected static final String VERSION_CACHE_FILE = "ansible-versions";
+
+    /**
+     * File of the scanner working directory where the performance report of the {@code ansible-lint} executions is written
+     */
+    protected static final String PERFORMANCE_REPORT_FILE = "ansible-lint-performance.json";
+
+    /**
+     * File of the project data directory where the {@code ansible-lint} duration of each file is persisted
+     */
+    protected static final String DURATIONS_FILE = "ansible-lint-durations";
+
+    /**
+     * Name of the directory (in the project data directory) where the effective {@code ansible-lint} configurations are generated
+     */
+    protected static final String EFFECTIVE_CONFIGURATION_DIR = "ansible-lint-config";
+
+    /**
+     * Configuration file read by {@code ansible-lint} in the project directory when no configuration file is passed
+     */
+    private static final String DEFAULT_ANSIBLE_LINT_CONF_FILE = ".ansible-lint";
+
+    /**
+     * Pattern of the version in the output of {@code ansible-lint --version}
+     */
+    private static final Pattern VERSION_PATTERN = Pattern.compile("ansible-lint[^0-9\\n]*([0-9]+)\\.([0-9]+)");
+
+    /**
+     * Measures of the last command executed by the current thread
+     */
+    static final ThreadLocal<CommandMetrics> COMMAND_METRICS = ThreadLocal.withInitial(CommandMetrics::new);
+
 
     /**
      * Flag used to make sure we notify about warnings disabled only once
      */
     private boolean infoWarningsShown = false;
 
+    /**
+     * Output of {@code ansible-lint --version}, {@code null} if unknown
+     */
+    private String ansibleLintVersion = null;
+
+    /**
+     * Structured output format requested to {@code ansible-lint} ({@code -f} option), {@code null} for the parseable
+     * text format ({@code -p} option)
+     */
+    String outputFormat = null;
+
+    /**
+     * Text format expected from {@code ansible-lint}, chosen once from its version or from the first parsed issue.
+     * {@code null} until known.
+     */
+    private AnsibleLintTextFormat textFormat = null;
+
+    /**
+     * Performance report of the {@code ansible-lint} executions, {@code null} if not requested
+     */
+    AnsibleLintReport report = null;
+
+    /**
+     * Durations of the {@code ansible-lint} executions of the files, {@code null} if the executions do not run concurrently
+     */
+    AnsibleLintDurations durations = null;
+
+    /**
+     * Maximum duration of a command in milliseconds, 0 for no limit
+     */
+    long timeoutMillis = 0;
+
+    /**
+     * Number of times an {@code ansible-lint} execution that timed out is retried
+     */
+    int timeoutRetries = 0;
+
+    /**
+     * Function that resolves the files reported by {@code ansible-lint}
+     */
+    private final Function<String, URI> fileResolver = this::resolveFile;
+
 
     /**
      * The underlying file system that will give access to the files to be analyzed
@@ -69,101 +211,870 @@ public abstract class AbstractAnsibleSensor implements Sensor {
     protected final FilePredicate mainFilesPredicate;
 
     /**
-     * All issues found on the analyzed code. This key is the URI to the files where the issues were found and the
-     * value is the issue message returned by {@code ansible-lint}
+     * Compact store of all the issues found on the analyzed code. The key is the URI to the files where the issues were
+     * found and the value is the issues returned by {@code ansible-lint} for the file.
      */
-    protected final Map<URI, Set<AnsibleLintIssue>> allIssues = new HashMap<>();
+    final IssueStore issueStore = new IssueStore();
+
+    /**
+     * Issues found by the native checks of the hybrid rule engine, kept apart from those of {@code ansible-lint} until
+     * they are saved so that they do not tell which files {@code ansible-lint} has covered
+     */
+    private final IssueStore nativeIssues = new IssueStore();
 
     /**
      * The list of files analyzed by this sensor. As {@code ansible-lint} will not aggregate the issues per file,
-     * the result of {@link InputFile#uri()} will be used as the key for {@link #allIssues}.
+     * the result of {@link InputFile#uri()} will be used as the key for the found issues.
      */
     protected final Set<InputFile> scannedFiles = new HashSet<>();
 
+    /**
+     * Number of files whose issues have been saved before the end of the analysis (streaming mode)
+     */
+    private int streamedFiles = 0;
+
+    /**
+     * Active rule keys by id reported by {@code ansible-lint}, and the context whose active rules they come from
+     */
+    private Map<String, Optional<RuleKey>> ruleKeys = null;
+    private SensorContext ruleKeysContext = null;
+
+
+    /**
+     * Constructor
+     *
+     * @param fileSystem the underlying file system that will give access to the files to be analyzed
+     */
+    protected AbstractAnsibleSensor(FileSystem fileSystem) {
+        this.fileSystem = fileSystem;
+        this.mainFilesPredicate = fileSystem.predicates().and(
+                fileSystem.predicates().hasType(InputFile.Type.MAIN),
+                fileSystem.predicates().hasLanguage(YamlLanguage.KEY));
+    }
+
+
+    /**
+     * Executes {@code ansible-lint} with the passed options and saves the issues detected with this tool.
+     * Also handles the ansible-lint configuration file.
+     *
+     * @param context the execution sensor context (taken from the method {@link #execute(SensorContext)} of the child class)
+     * @param extraAnsibleLintArgs the optional list of command arguments for {@code ansible-lint}. May be {@code null}.
+     */
+    protected void executeWithAnsibleLint(SensorContext context, @Nullable List<String> extraAnsibleLintArgs) {
+        LOGGER.debug("Ansible sensor executed with context: " + context);
+
+        // Skip analysis if no rules enabled from this plugin
+        if (context.activeRules().findByRepository(AnsibleCheckRepository.REPOSITORY_KEY).isEmpty()) {
+            LOGGER.info("No active rules found for this plugin, skipping.");
+            return;
+        }
+
+        // Nothing must be left from a previous execution of the sensor (e.g. on another module), including the rule keys
+        // resolved with the active rules of another context
+        issueStore.clear();
+        nativeIssues.clear();
+        getRuleKeys(context);
+        timeoutMillis = TimeUnit.SECONDS.toMillis(getTimeout(context));
+        timeoutRetries = getTimeoutRetries(context);
+
+        // Versions are only probed if there is something to analyze, and while the dependency graph is built
+        List<InputFile> inputFiles = new ArrayList<>();
+        fileSystem.inputFiles(mainFilesPredicate).forEach(inputFiles::add);
+        skipNonAnsibleFiles(context, inputFiles);
+        if (inputFiles.isEmpty()) {
+            LOGGER.debug("No file to analyze, skipping.");
+            return;
+        }
+
+        // With the native rule engine, the rules implemented in Java are checked in-process and ansible-lint is not
+        // executed at all. With the hybrid engine, ansible-lint only checks the active rules that have no native
+        // implementation, and is not executed if there is none.
+        String ruleEngine = getRuleEngine(context);
+        AnsibleNativeChecks nativeChecks = AnsibleSettings.RULE_ENGINE_DEFAULT_VALUE.equals(ruleEngine) ? null : getNativeChecks(context);
+        if (nativeChecks != null && (AnsibleSettings.RULE_ENGINE_NATIVE.equals(ruleEngine) ||
+                nativeChecks.getIds().size() == context.activeRules().findByRepository(AnsibleCheckRepository.REPOSITORY_KEY).size())) {
+            analyzeWithNativeChecks(context, inputFiles, nativeChecks);
+            saveIssues(context);
+            issueStore.clear();
+            ruleKeys = null;
+            ruleKeysContext = null;
+            return;
+        }
+        if (nativeChecks != null && !nativeChecks.isEmpty()) {
+            // The issues are saved only for the files that ansible-lint eventually analyzes
+            for (InputFile inputFile : inputFiles) {
+                nativeChecks.check(inputFile).forEach(issue -> nativeIssues.add(inputFile.uri(), issue));
+            }
+        }
+        AnsibleVersionCache versionCache = new AnsibleVersionCache(getDataDir(context).resolve(VERSION_CACHE_FILE));
+        Future<List<String>> ansibleVersionProbe = probeVersion(versionCache, "ansible");
+        Future<List<String>> ansibleLintVersionProbe = probeVersion(versionCache, getAnsibleLintPath(context));
+        AnsibleDependencyGraph graph = buildDependencyGraph(context, inputFiles);
+
+        // Log versions
+        logVersions(ansibleVersionProbe, ansibleLintVersionProbe);
+        outputFormat = getOutputFormat(context);
+        report = isPerformanceReport(context) ? new AnsibleLintReport(fileSystem.baseDir()) : null;
+        int[] version = getAnsibleLintVersionNumbers();
+        if (version != null) {
+            textFormat = AnsibleLintTextFormat.forVersion(version[0], version[1]);
+        }
+
+        // Build ansible-lint command, files to analyze will be appended to it
+        List<String> baseCommand = getAnsibleLintCommand(context, extraAnsibleLintArgs);
+        if (nativeChecks != null && !nativeChecks.isEmpty()) {
+            List<String> skipList = getSkipList(nativeChecks);
+            baseCommand.addAll(Arrays.asList("-x", String.join(",", skipList)));
+            LOGGER.info("Hybrid rule engine: {} rule(s) checked in-process and skipped by ansible-lint: {}", nativeChecks.getIds().size(), String.join(", ", skipList));
+        }
+
+        // In project mode, ansible-lint is executed once and discovers the files to lint by itself
+        boolean projectMode = isProjectMode(context);
+        if (projectMode && version != null && version[0] < 5) {
+            LOGGER.warn("Project mode not supported by ansible-lint {}, passing the files to analyze", version[0]);
+            projectMode = false;
+        }
+        if (projectMode) {
+            boolean completed = new AnsibleLintProjectExecution(this).execute(context, baseCommand, inputFiles);
+            writeReport();
+            if (completed) {
+                registerNativeIssues(null);
+                saveIssues(context);
+            }
+            issueStore.clear();
+            nativeIssues.clear();
+            ruleKeys = null;
+            ruleKeysContext = null;
+            return;
+        }
+
+        // Files whose issues are known from a previous analysis are not analyzed again
+        AnsibleLintCache cache = loadCache(context, baseCommand);
+        Map<InputFile, String> cacheKeys = new HashMap<>();
+        List<InputFile> filesToAnalyze = new ArrayList<>();
+        boolean changedFilesOnly = isChangedFilesOnly(context);
+        Set<Path> impactedFiles = (changedFilesOnly && graph != null) ? getImpactedFiles(graph, inputFiles) : null;
+        int unchangedFiles = 0;
+        for (InputFile inputFile : inputFiles) {
+            if (changedFilesOnly && (impactedFiles == null ? inputFile.status() == InputFile.Status.SAME : !impactedFiles.contains(getPath(inputFile)))) {
+                LOGGER.debug("Skipping unchanged file: " + inputFile.filename());
+                unchangedFiles++;
+            } else if (cache != null && replayCachedIssues(cache, inputFile, cacheKeys, graph)) {
+                scannedFiles.add(inputFile);
+            } else {
+                filesToAnalyze.add(inputFile);
+            }
+        }
+
+        if (changedFilesOnly) {
+            LOGGER.info("Changed files only: {} unchanged file(s) skipped", unchangedFiles);
+        }
+
+        // In coverage-aware mode, the files used by other files (typically the roles used by playbooks) are analyzed last
+        // and only if the previous executions did not cover them. In entry-point mode, only the playbooks that no other
+        // file uses are analyzed first: all the other files are deferred, and only the orphan ones are analyzed.
+        List<InputFile> deferredFiles = new ArrayList<>();
+        boolean entryPoints = isEntryPoints(context);
+        AnsibleLintCoverage coverage = (entryPoints || isSkipCoveredFiles(context)) ? new AnsibleLintCoverage(graph, entryPoints) : null;
+        if (coverage != null) {
+            deferredFiles = coverage.getDeferredFiles(filesToAnalyze, inputFiles);
+            filesToAnalyze.removeAll(deferredFiles);
+            if (entryPoints) {
+                LOGGER.info("Entry-point mode: {} entry-point playbook(s), {} other file(s) deferred", filesToAnalyze.size(), deferredFiles.size());
+            }
+        }
+
+        // When executions run concurrently, the longest ones are started first so that none of them is started last
+        // and stretches the analysis time
+        int threads = getThreads(context);
+        durations = (threads > 1) ? new AnsibleLintDurations(getDataDir(context).resolve(DURATIONS_FILE), fileSystem.baseDir()) : null;
+        if (durations != null) {
+            durations.sort(filesToAnalyze);
+            durations.sort(deferredFiles);
+        }
+
+        int batchSize = getBatchSize(context);
+        List<List<InputFile>> batches = createBatches(baseCommand, filesToAnalyze, batchSize);
+
+        // In streaming mode, the issues of a file are saved and released as soon as no pending execution may report
+        // issues on it anymore. The deferred files are considered pending until the end of the deferred executions.
+        PendingExecutions pending = (graph != null && isStreaming(context)) ? new PendingExecutions(graph) : null;
+        Map<URI, InputFile> filesByUri = new HashMap<>();
+        if (pending != null) {
+            inputFiles.forEach(inputFile -> filesByUri.put(inputFile.uri(), inputFile));
+            batches.forEach(batch -> pending.add(batch, batch));
+            pending.add(deferredFiles, deferredFiles);
+            releaseIssues(context, pending, filesByUri);
+        }
+
+        // ansible-lint executions may run concurrently but their results are processed in the order of the batches,
+        // by the current thread only, so that issue registration and saving remain single-threaded
+        int maxBatches = batches.size() + (deferredFiles.isEmpty() ? 0 : createBatches(baseCommand, deferredFiles, batchSize).size());
+        AnsibleLintBatchExecution batchExecution = new AnsibleLintBatchExecution(this, context, baseCommand, maxBatches, cache, cacheKeys, pending, filesByUri);
+        try {
+            if (!batchExecution.analyze(batches)) {
+                return;
+            }
+
+            if (!deferredFiles.isEmpty()) {
+                Set<InputFile> coveredFiles = coverage.getCoveredFiles(deferredFiles, scannedFiles, issueStore);
+                for (InputFile inputFile : coveredFiles) {
+                    LOGGER.debug("File already covered: " + inputFile.filename());
+                    scannedFiles.add(inputFile);
+                    if (cache != null) {
+                        cache.put(Collections.singletonList(inputFile), cacheKeys, issueStore.getOrDefault(inputFile.uri(), Collections.emptySet()).stream()
+                                .map(issue -> new ReportedIssue(inputFile.uri(), issue))
+                                .collect(Collectors.toList()));
+                    }
+                }
+                deferredFiles.removeAll(coveredFiles);
+                List<List<InputFile>> deferredBatches = createBatches(baseCommand, deferredFiles, batchSize);
+                LOGGER.info("{}: {} file(s) already covered, {} ansible-lint execution(s) avoided", entryPoints ? "Entry-point mode" : "Coverage-aware mode",
+                        coveredFiles.size(), createBatches(baseCommand, coveredFiles, batchSize).size());
+                if (entryPoints) {
+                    deferredFiles.forEach(inputFile -> LOGGER.debug("Orphan file analyzed on its own: " + inputFile.filename()));
+                    LOGGER.info("Entry-point mode: {} orphan file(s) analyzed on their own", deferredFiles.size());
+                }
+                if (!batchExecution.analyze(deferredBatches)) {
+                    return;
+                }
+            }
+            if (pending != null) {
+                pending.complete(deferredFiles);
+                releaseIssues(context, pending, filesByUri);
+            }
+        } finally {
+            batchExecution.close();
+            // What the completed executions measured is kept even if the analysis is aborted
+            saveExecutionData(cache);
+        }
+
+        if (pending != null) {
+            LOGGER.info("Streaming mode: {} file(s) saved while ansible-lint was running", streamedFiles);
+        }
+
+        List<InputFile> timedOutFiles = batchExecution.getTimedOutFiles();
+        if (!timedOutFiles.isEmpty()) {
+            LOGGER.warn("ansible-lint timed out on {} file(s), skipped: {}", timedOutFiles.size(),
+                    timedOutFiles.stream().map(this::getRelativePath).collect(Collectors.joining(", ")));
+        }
+
+        // Save all found issues
+        registerNativeIssues(null);
+        saveIssues(context);
+        issueStore.clear();
+        ruleKeys = null;
+        ruleKeysContext = null;
+    }
+
+    /**
+     * Saves the cache of the issues and the durations of the files, and writes the performance report. Only the
+     * completed executions are recorded, so this is also done when an execution failed and the analysis is aborted.
+     *
+     * @param cache the cache of the issues. May be {@code null}.
+     */
+    private void saveExecutionData(@Nullable AnsibleLintCache cache) {
+        if (cache != null) {
+            LOGGER.info("ansible-lint cache: {} hit(s), {} miss(es)", cache.getHits(), cache.getMisses());
+            cache.save();
+        }
+
+        if (durations != null) {
+            durations.save();
+            durations = null;
+        }
+
+        writeReport();
+    }
+
+    /**
+     * Logs and writes the performance report, if enabled, to the scanner working directory
+     */
+    private void writeReport() {
+        if (report != null) {
+            report.log();
+            report.write(fileSystem.workDir().toPath().resolve(PERFORMANCE_REPORT_FILE));
+            report = null;
+        }
+    }
+
+    /**
+     * Removes the files that are clearly not Ansible content from the passed files, according to the rules enabled in
+     * the plugin settings, and reports how many files were skipped by each rule
+     *
+     * @param context the execution sensor context (taken from the method {@link #execute(SensorContext)} of the child class)
+     * @param inputFiles the YAML files of the project
+     * @see AnsibleSettings#NON_ANSIBLE_FILES_SKIP_KEY
+     */
+    private void skipNonAnsibleFiles(SensorContext context, List<InputFile> inputFiles) {
+        AnsibleFileClassifier classifier = new AnsibleFileClassifier(fileSystem.baseDir(),
+                Arrays.asList(context.config().getStringArray(AnsibleSettings.NON_ANSIBLE_FILES_SKIP_KEY)));
+        if (classifier.isEmpty()) {
+            return;
+        }
+        Map<AnsibleFileClassifier.Rule, Integer> skipped = new EnumMap<>(AnsibleFileClassifier.Rule.class);
+        Iterator<InputFile> iterator = inputFiles.iterator();
+        while (iterator.hasNext()) {
+            InputFile inputFile = iterator.next();
+            AnsibleFileClassifier.Rule rule = classifier.classify(inputFile);
+            if (rule != null) {
+                LOGGER.debug("Skipping non-Ansible file ({}): {}", rule.getKey(), inputFile.filename());
+                skipped.merge(rule, 1, Integer::sum);
+                iterator.remove();
+            }
+        }
+        LOGGER.info("Non-Ansible files: {} file(s) skipped{}", skipped.values().stream().mapToInt(Integer::intValue).sum(),
+                skipped.isEmpty() ? "" : skipped.entrySet().stream()
+                        .map(entry -> entry.getKey().getKey() + ": " + entry.getValue())
+                        .collect(Collectors.joining(", ", " (", ")")));
+    }
+
+    /**
+     * Returns the engine that checks the rules
+     *
+     * @param context the execution sensor context (taken from the method {@link #execute(SensorContext)} of the child class)
+     * @return the rule engine set in the plugin settings
+     * @see AnsibleSettings#RULE_ENGINE_KEY
+     */
+    protected String getRuleEngine(SensorContext context) {
+        String engine = context.config().get(AnsibleSettings.RULE_ENGINE_KEY).orElse(AnsibleSettings.RULE_ENGINE_DEFAULT_VALUE).trim();
+        if (!Arrays.asList(AnsibleSettings.RULE_ENGINE_DEFAULT_VALUE, AnsibleSettings.RULE_ENGINE_NATIVE, AnsibleSettings.RULE_ENGINE_HYBRID).contains(engine)) {
+            LOGGER.warn("Unsupported rule engine {}, using {}", engine, AnsibleSettings.RULE_ENGINE_DEFAULT_VALUE);
+            return AnsibleSettings.RULE_ENGINE_DEFAULT_VALUE;
+        }
+        return engine;
+    }
+
+    /**
+     * Returns the native checks of the active rules. A check is reported with the first of its ids that has an active
+     * rule, so that it matches the rules of the quality profile whatever the version of {@code ansible-lint} they were
+     * defined for.
+     *
+     * @param context the sensor context (that contains the active rules)
+     * @return the checks to be run in-process
+     */
+    private AnsibleNativeChecks getNativeChecks(SensorContext context) {
+        Map<AnsibleNativeChecks.Check, String> checks = new EnumMap<>(AnsibleNativeChecks.Check.class);
+        for (AnsibleNativeChecks.Check check : AnsibleNativeChecks.Check.values()) {
+            check.getIds().stream()
+                    .filter(id -> context.activeRules().find(AnsibleCheckRepository.getRuleKey(id)) != null)
+                    .findFirst()
+                    .ifPresent(id -> checks.put(check, id));
+        }
+        return new AnsibleNativeChecks(fileSystem.baseDir(), checks);
+    }
+
+    /**
+     * Returns the ids of the natively checked rules as {@code ansible-lint} expects them in its skip list. All the ids
+     * of each rule are skipped, whatever the id with which its issues are reported, so that the installed version of
+     * {@code ansible-lint} does not check it again. The codes of {@code ansible-lint} 4 rules (e.g. E303) are passed
+     * without their heading E, as ansible-lint 4 identifies them.
+     *
+     * @param checks the native checks
+     * @return the ids of the rules that {@code ansible-lint} must not check
+     */
+    private static List<String> getSkipList(AnsibleNativeChecks checks) {
+        return checks.getChecks().stream()
+                .flatMap(check -> check.getIds().stream())
+                .map(id -> id.matches("E[0-9]+") ? id.substring(1) : id)
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Checks the passed files with the native checks and registers the issues found
+     *
+     * @param context the sensor context (that contains the active rules)
+     * @param inputFiles the files to be analyzed
+     * @param checks the native checks to be run
+     */
+    private void analyzeWithNativeChecks(SensorContext context, List<InputFile> inputFiles, AnsibleNativeChecks checks) {
+        if (!checks.isEmpty()) {
+            for (InputFile inputFile : inputFiles) {
+                checks.check(inputFile).forEach(issue -> registerIssue(new ReportedIssue(inputFile.uri(), issue)));
+            }
+        }
+        scannedFiles.addAll(inputFiles);
+        int activeRules = context.activeRules().findByRepository(AnsibleCheckRepository.REPOSITORY_KEY).size();
+        LOGGER.info("Native checks: {} file(s) analyzed in-process with {} rule(s), {} active rule(s) without native implementation not checked",
+                inputFiles.size(), checks.getIds().size(), activeRules - checks.getIds().size());
+    }
+
+    /**
+     * Tells if the issues must be saved as soon as possible rather than at the end of the analysis
+     *
+     * @param context the execution sensor context (taken from the method {@link #execute(SensorContext)} of the child class)
+     * @return {@code true} if the streaming mode is enabled in the plugin settings
+     * @see AnsibleSettings#ANSIBLE_LINT_STREAMING_KEY
+     */
+    protected boolean isStreaming(SensorContext context) {
+        return context.config().getBoolean(AnsibleSettings.ANSIBLE_LINT_STREAMING_KEY).orElse(false);
+    }
+
+    /**
+     * Tells if the performance of the {@code ansible-lint} executions must be reported
+     *
+     * @param context the execution sensor context (taken from the method {@link #execute(SensorContext)} of the child class)
+     * @return {@code true} if the performance report is enabled in the plugin settings
+     * @see AnsibleSettings#ANSIBLE_LINT_PERFORMANCE_REPORT_KEY
+     */
+    protected boolean isPerformanceReport(SensorContext context) {
+        return context.config().getBoolean(AnsibleSettings.ANSIBLE_LINT_PERFORMANCE_REPORT_KEY).orElse(false);
+    }
+
+    /**
+     * Returns the maximum duration of an {@code ansible-lint} execution
+     *
+     * @param context the execution sensor context (taken from the method {@link #execute(SensorContext)} of the child class)
+     * @return the timeout in seconds as set in the plugin settings, 0 (no timeout) by default
+     * @see AnsibleSettings#ANSIBLE_LINT_TIMEOUT_KEY
+     */
+    protected int getTimeout(SensorContext context) {
+        return Math.max(0, context.config().getInt(AnsibleSettings.ANSIBLE_LINT_TIMEOUT_KEY).orElse(0));
+    }
+
+    /**
+     * Returns the number of times an {@code ansible-lint} execution that timed out is retried
+     *
+     * @param context the execution sensor context (taken from the method {@link #execute(SensorContext)} of the child class)
+     * @return the number of retries as set in the plugin settings, 1 by default
+     * @see AnsibleSettings#ANSIBLE_LINT_TIMEOUT_RETRIES_KEY
+     */
+    protected int getTimeoutRetries(SensorContext context) {
+        return Math.max(0, context.config().getInt(AnsibleSettings.ANSIBLE_LINT_TIMEOUT_RETRIES_KEY).orElse(1));
+    }
+
+    /**
+     * Saves the issues of the analyzed files on which no pending execution may report issues anymore, and releases the
+     * issues of these files as well as the issues of the files that are not analyzed (they are never saved)
+     *
+     * @param context the execution sensor context (taken from the method {@link #execute(SensorContext)} of the child class)
+     * @param pending the pending executions
+     * @param filesByUri the files to be analyzed by URI
+     */
+    void releaseIssues(SensorContext context, PendingExecutions pending, Map<URI, InputFile> filesByUri) {
+        registerNativeIssues(pending);
+        Iterator<Map.Entry<URI, Set<AnsibleLintIssue>>> entries = issueStore.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<URI, Set<AnsibleLintIssue>> entry = entries.next();
+            if (pending.isPending(entry.getKey())) {
+                continue;
+            }
+            InputFile inputFile = filesByUri.get(entry.getKey());
+            if (inputFile != null && scannedFiles.contains(inputFile)) {
+                LOGGER.debug("Saving issues for {}", inputFile.uri());
+                entry.getValue().forEach(issue -> saveIssue(context, inputFile, issue));
+                streamedFiles++;
+            }
+            entries.remove();
+        }
+    }
+
+    /**
+     * Registers the issues found by the native checks of the hybrid rule engine, so that they are saved with those of
+     * {@code ansible-lint}
+     *
+     * @param pending the pending executions in streaming mode: the issues of the files on which an execution is still
+     *                pending are not registered yet. {@code null} to register all the issues.
+     */
+    private void registerNativeIssues(@Nullable PendingExecutions pending) {
+        Iterator<Map.Entry<URI, Set<AnsibleLintIssue>>> entries = nativeIssues.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<URI, Set<AnsibleLintIssue>> entry = entries.next();
+            if (pending == null || !pending.isPending(entry.getKey())) {
+                entry.getValue().forEach(issue -> registerIssue(new ReportedIssue(entry.getKey(), issue)));
+                entries.remove();
+            }
+        }
+    }
+
+    /**
+     * Tells if the files already covered by previous {@code ansible-lint} executions must not be analyzed again
+     *
+     * @param context the execution sensor context (taken from the method {@link #execute(SensorContext)} of the child class)
+     * @return {@code true} if the coverage-aware mode is enabled in the plugin settings
+     * @see AnsibleSettings#ANSIBLE_LINT_SKIP_COVERED_FILES_KEY
+     */
+    protected boolean isSkipCoveredFiles(SensorContext context) {
+        return context.config().getBoolean(AnsibleSettings.ANSIBLE_LINT_SKIP_COVERED_FILES_KEY).orElse(false);
+    }
+
+    /**
+     * Tells if only the entry-point playbooks must be passed to {@code ansible-lint}, the other files being analyzed
+     * only if no entry-point playbook reaches them
+     *
+     * @param context the execution sensor context (taken from the method {@link #execute(SensorContext)} of the child class)
+     * @return {@code true} if the entry-point mode is enabled in the plugin settings
+     * @see AnsibleSettings#ANSIBLE_LINT_ENTRY_POINTS_KEY
+     */
+    protected boolean isEntryPoints(SensorContext context) {
+        return context.config().getBoolean(AnsibleSettings.ANSIBLE_LINT_ENTRY_POINTS_KEY).orElse(false);
+    }
+
+    /**
+     * Returns the structured output format to be requested to {@code ansible-lint}. The format set in the plugin
+     * settings is only used if the installed {@code ansible-lint} supports it: JSON formats are available as of
+     * ansible-lint 5 and SARIF as of ansible-lint 6. If the version is unknown, the format is used as is.
+     *
+     * @param context the execution sensor context (taken from the method {@link #execute(SensorContext)} of the child class)
+     * @return the value of the {@code -f} option or {@code null} to use the parseable text format ({@code -p} option)
+     * @see AnsibleSettings#ANSIBLE_LINT_OUTPUT_FORMAT_KEY
+     */
+    protected String getOutputFormat(SensorContext context) {
+        String format = context.config().get(AnsibleSettings.ANSIBLE_LINT_OUTPUT_FORMAT_KEY).orElse(AnsibleSettings.ANSIBLE_LINT_OUTPUT_FORMAT_DEFAULT_VALUE).trim();
+        if (AnsibleSettings.ANSIBLE_LINT_OUTPUT_FORMAT_DEFAULT_VALUE.equals(format) || "".equals(format)) {
+            return null;
+        }
+        if (!Arrays.asList("json", "codeclimate", "sarif").contains(format)) {
+            LOGGER.warn("Unsupported ansible-lint output format {}, using the parseable format", format);
+            return null;
+        }
+        int[] version = getAnsibleLintVersionNumbers();
+        int majorVersion = (version == null) ? 0 : version[0];
+        if (majorVersion > 0 && majorVersion < ("sarif".equals(format) ? 6 : 5)) {
+            LOGGER.warn("Output format {} not supported by ansible-lint {}, using the parseable format", format, majorVersion);
+            return null;
+        }
+        return format;
+    }
+
+    /**
+     * Returns the version of {@code ansible-lint}
+     *
+     * @return the major and minor versions of {@code ansible-lint} or {@code null} if unknown
+     */
+    private int[] getAnsibleLintVersionNumbers() {
+        if (ansibleLintVersion == null) {
+            return null;
+        }
+        Matcher matcher = VERSION_PATTERN.matcher(ansibleLintVersion);
+        if (!matcher.find()) {
+            return null;
+        }
+        return new int[] { Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)) };
+    }
+
+    /**
+     * Tells if {@code ansible-lint} must be executed once for the default rules and the extra rules of all the installed
+     * plugins
+     *
+     * @param context the execution sensor context (taken from the method {@link #execute(SensorContext)} of the child class)
+     * @return {@code true} if the combined execution is enabled
+     * @see AnsibleLintRegistry
+     */
+    protected boolean isCombinedExecution(SensorContext context) {
+        return context.config().getBoolean(AnsibleSettings.ANSIBLE_LINT_COMBINED_KEY).orElse(false);
+    }
+
+    /**
+     * Tells if only the changed and added files must be analyzed. This is the case if requested in the plugin settings
+     * and if the analysis is a pull request analysis ({@value #PULL_REQUEST_KEY} set), unless the scanner tells that
+     * unchanged files cannot be skipped ({@code SensorContext#canSkipUnchangedFiles()}, only available as of SonarQube
+     * 9.4). In other analyses (such as branch analyses), the issues of the unchanged files would not be saved and
+     * SonarQube would close them.
+     *
+     * @param context the execution sensor context (taken from the method {@link #execute(SensorContext)} of the child class)
+     * @return {@code true} if the files whose status is {@link InputFile.Status#SAME} must not be analyzed
+     * @see AnsibleSettings#ANSIBLE_LINT_CHANGED_FILES_ONLY_KEY
+     */
+    protected boolean isChangedFilesOnly(SensorContext context) {
+        if (!context.config().getBoolean(AnsibleSettings.ANSIBLE_LINT_CHANGED_FILES_ONLY_KEY).orElse(false)) {
+            return false;
+        }
+        if (!context.config().get(PULL_REQUEST_KEY).filter(key -> !"".equals(key.trim())).isPresent()) {
+            LOGGER.debug("Not a pull request analysis, analyzing all files");
+            return false;
+        }
+        try {
+            Method canSkipUnchangedFiles = context.getClass().getMethod("canSkipUnchangedFiles");
+            if (!Boolean.TRUE.equals(canSkipUnchangedFiles.invoke(context))) {
+                LOGGER.debug("Scanner does not allow to skip unchanged files, analyzing all files");
+                return false;
+            }
+        } catch (NoSuchMethodException e) {
+            // Older scanner: rely on the pull request key and the file status only
+        } catch (IllegalAccessException|InvocationTargetException e) {
+            LOGGER.debug("Cannot call canSkipUnchangedFiles, analyzing all files: {}", e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Builds the graph of the dependencies between the passed files and the files they reference if requested in the
+     * plugin settings. The graph is persisted in the working directory so that only the files that changed since the
+     * previous analysis are parsed.
+     *
+     * @param context the execution sensor context (taken from the method {@link #execute(SensorContext)} of the child class)
+     * @param inputFiles the files to be analyzed
+     * @return the dependency graph or {@code null} if disabled
+     * @see AnsibleSettings#DEPENDENCY_GRAPH_KEY
+     * @see AnsibleSettings#ANSIBLE_LINT_STREAMING_KEY
+     * @see AnsibleSettings#ANSIBLE_LINT_ENTRY_POINTS_KEY
+     */
+    private AnsibleDependencyGraph buildDependencyGraph(SensorContext context, List<InputFile> inputFiles) {
+        // The streaming mode needs the graph to know which files an execution may report issues on, the entry-point
+        // mode to find the playbooks and the files they reach, and the cache to invalidate the issues reported on the
+        // files used by a file (such as the roles used by a playbook) when they change
+        if (!context.config().getBoolean(AnsibleSettings.DEPENDENCY_GRAPH_KEY).orElse(false) && !isStreaming(context) && !isEntryPoints(context)
+                && !context.config().getBoolean(AnsibleSettings.ANSIBLE_LINT_CACHE_KEY).orElse(false)) {
+            return null;
+        }
+
+        Path graphFile = getDataDir(context).resolve(DEPENDENCY_GRAPH_FILE);
+        AnsibleDependencyGraph graph = new AnsibleDependencyGraph(fileSystem.baseDir().toPath());
+        graph.load(graphFile);
+        graph.update(inputFiles.stream().map(AbstractAnsibleSensor::getPath).collect(Collectors.toList()));
+        graph.save(graphFile);
+        LOGGER.info("Dependency graph: {} file(s), {} parsed", graph.size(), graph.getParsedFiles());
+        return graph;
+    }
+
+    /**
+     * Returns the files impacted by the changed and added files, i.e. these files and the files that reference them,
+     * directly or not
+     *
+     * @param graph the dependency graph of the files to be analyzed
+     * @param inputFiles the files to be analyzed
+     * @return the paths of the files that must be analyzed again
+     */
+    private static Set<Path> getImpactedFiles(AnsibleDependencyGraph graph, List<InputFile> inputFiles) {
+        return graph.getDependents(inputFiles.stream()
+                .filter(inputFile -> inputFile.status() != InputFile.Status.SAME)
+                .map(AbstractAnsibleSensor::getPath)
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Loads the cache of the issues found by previous analyses if enabled in the plugin settings
+     *
+     * @param context the execution sensor context (taken from the method {@link #execute(SensorContext)} of the child class)
+     * @param baseCommand the {@code ansible-lint} command used for this analysis
+     * @return the cache or {@code null} if disabled or if the cache key cannot be computed
+     * @see AnsibleSettings#ANSIBLE_LINT_CACHE_KEY
+     */
+    private AnsibleLintCache loadCache(SensorContext context, List<String> baseCommand) {
+        if (!context.config().getBoolean(AnsibleSettings.ANSIBLE_LINT_CACHE_KEY).orElse(false)) {
+            return null;
+        }
+
+        // The cache key covers the ansible-lint version, command line and configuration (including the default one)
+        List<String> keyValues = new ArrayList<>();
+        keyValues.add(String.valueOf(ansibleLintVersion));
+        keyValues.addAll(baseCommand);
+        keyValues.add(DEFAULT_ANSIBLE_LINT_CONF_FILE);
+        AnsibleLintCache cache;
+        try {
+            // One cache file per configuration, so that sensors with different configurations do not share entries
+            String configurationKey = AnsibleLintCache.getConfigurationKey(fileSystem.baseDir(), keyValues);
+            cache = new AnsibleLintCache(
+                    getDataDir(context).resolve(CACHE_DIR).resolve(configurationKey),
+                    fileSystem.baseDir(),
+                    configurationKey);
+        } catch (IOException e) {
+            LOGGER.warn("Cannot compute the ansible-lint cache key, cache disabled: {}", e.getMessage());
+            return null;
+        }
+        cache.load();
+        return cache;
+    }
+
+    /**
+     * Returns the directory where the data kept from one analysis to another (such as the cache of the issues) are
+     * stored. The directory is located in the SonarQube user home, in a sub-directory specific to the project key and
+     * base directory.
+     *
+     * @param context the execution sensor context (taken from the method {@link #execute(SensorContext)} of the child class)
+     * @return the data directory of the project
+     */
+    protected Path getDataDir(SensorContext context) {
+        Path userHome = context.config().get(USER_HOME_KEY).filter(path -> !"".equals(path.trim()))
+                .map(Paths::get)
+                .orElse(Paths.get(System.getProperty("user.home"), ".sonar"));
+        String project = context.config().get("sonar.projectKey").orElse("") + '\0' + fileSystem.baseDir().getAbsolutePath();
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(project.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                name.append(String.format("%02x", hash[i]));
+            }
+            return userHome.resolve(DATA_DIR).resolve(name.toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not supported", e);
+        }
+    }
+
+    /**
+     * Registers the cached issues of the passed file if the file has not changed since it was cached
+     *
+     * @param cache the cache of the issues
+     * @param inputFile a file to be analyzed
+     * @param cacheKeys the map where the cache key of the file is stored
+     * @param graph the dependency graph, used to invalidate the entry of the file when one of its dependencies changed.
+     *              May be {@code null}.
+     * @return {@code true} if cached issues have been found and registered, {@code false} if the file must be analyzed
+     */
+    private boolean replayCachedIssues(AnsibleLintCache cache, InputFile inputFile, Map<InputFile, String> cacheKeys,
+                                       @Nullable AnsibleDependencyGraph graph) {
+        String key;
+        try {
+            key = cache.getKey(inputFile, (graph == null) ? null : graph.getDependenciesKey(getPath(inputFile)));
+        } catch (IOException e) {
+            LOGGER.debug("Cannot compute cache key of {}: {}", inputFile, e.getMessage());
+            return false;
+        }
+        cacheKeys.put(inputFile, key);
+        List<ReportedIssue> issues = cache.get(inputFile, key);
+        if (issues == null) {
+            return false;
+        }
+        LOGGER.debug("Issues of {} taken from cache", inputFile.filename());
+        issues.forEach(this::registerIssue);
+        return true;
+    }
+
+    /**
+     * Returns the {@code ansible-lint} command, with its options and arguments but without the files to be analyzed
+     *
+     * @param context the execution sensor context (taken from the method {@link #execute(SensorContext)} of the child class)
+     * @param extraAnsibleLintArgs the optional list of command arguments for {@code ansible-lint}. May be {@code null}.
+     * @return the {@code ansible-lint} command line to which the paths of the files to be analyzed must be appended
+     */
+    protected List<String> getAnsibleLintCommand(SensorContext context, @Nullable List<String> extraAnsibleLintArgs) {
+        List<String> command = new ArrayList<>(Collections.singletonList(getAnsibleLintPath(context)));
+        if (outputFormat == null) {
+            command.add("-p");
+        } else {
+            command.addAll(Arrays.asList("-f", outputFormat));
+        }
+        command.addAll(Arrays.asList("--nocolor", "-q"));
+        String confPath = getAnsibleLintConfPath(context);
+        if (isActiveRulesOnly(context)) {
+            confPath = getEffectiveConfiguration(context, confPath);
+        }
+        if (!"".equals(confPath.trim())) {
+            command.addAll(Arrays.asList("-c", confPath));
+        }
+        if (extraAnsibleLintArgs != null) {
+            command.addAll(extraAnsibleLintArgs);
+        }
+        return command;
+    }
+
+    /**
+     * Generates the effective {@code ansible-lint} configuration that restricts {@code ansible-lint} to the active
+     * rules, merged with the configuration of the user
+     *
+     * @param context the execution sensor context (that contains the active rules)
+     * @param confPath the path to the configuration file of the user, may be empty
+     * @return the path to the effective configuration or {@code confPath} if it could not be generated
+     */
+    private String getEffectiveConfiguration(SensorContext context, String confPath) {
+        Path userConfiguration = fileSystem.baseDir().toPath()
+                .resolve("".equals(confPath.trim()) ? DEFAULT_ANSIBLE_LINT_CONF_FILE : confPath.trim());
+        List<String> ids = context.activeRules().findByRepository(AnsibleCheckRepository.REPOSITORY_KEY).stream()
+                .map(activeRule -> activeRule.ruleKey().rule())
+                .collect(Collectors.toList());
+        try {
+            Path configuration = AnsibleLintConfiguration.get(getDataDir(context).resolve(EFFECTIVE_CONFIGURATION_DIR),
+                    Files.isRegularFile(userConfiguration) ? userConfiguration : null,
+                    ids,
+                    getAnsibleLintVersionNumbers());
+            return configuration.toString();
+        } catch (IOException e) {
+            LOGGER.warn("Cannot generate the effective ansible-lint configuration, all the rules are checked: {}", e.getMessage());
+            return confPath;
+        }
+    }
+
+    /**
+     * Splits the passed files into batches of files to be analyzed by a single {@code ansible-lint} execution. A batch
+     * contains at most {@code batchSize} files and is cut earlier if the resulting command line would exceed
+     * {@link #MAX_COMMAND_LINE_LENGTH} characters.
+     *
+     * @param baseCommand the command to which the file paths will be appended
+     * @param inputFiles the files to be analyzed
+     * @param batchSize the maximum number of files per batch. Values lower than 1 are considered as 1.
+     * @return the list of batches, in the order of the passed files
+     */
+    protected List<List<InputFile>> createBatches(List<String> baseCommand, Iterable<InputFile> inputFiles, int batchSize) {
+        int baseLength = baseCommand.stream().mapToInt(arg -> arg.length() + 1).sum();
+        List<List<InputFile>> batches = new ArrayList<>();
+        List<InputFile> batch = new ArrayList<>();
+        int length = baseLength;
+        for (InputFile inputFile : inputFiles) {
+            int argLength = getAbsolutePath(inputFile).length() + 1;
+            if (!batch.isEmpty() && (batch.size() >= batchSize || length + argLength > MAX_COMMAND_LINE_LENGTH)) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                length = baseLength;
+            }
+            batch.add(inputFile);
+            length += argLength;
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
 
     /**
-     * Constructor
+     * Logs the passed error output of {@code ansible-lint}, filtering the warnings if requested
      *
-     * @param fileSystem the underlying file system that will give access to the files to be analyzed
+     * @param context the execution sensor context (taken from the method {@link #execute(SensorContext)} of the child class)
+     * @param error the lines written by {@code ansible-lint} to the error output
      */
-    protected AbstractAnsibleSensor(FileSystem fileSystem) {
-        this.fileSystem = fileSystem;
-        this.mainFilesPredicate = fileSystem.predicates().and(
-                fileSystem.predicates().hasType(InputFile.Type.MAIN),
-                fileSystem.predicates().hasLanguage(YamlLanguage.KEY));
+    void logErrorOutput(SensorContext context, List<String> error) {
+        // We may ignore ansible-lint warnings
+        if (context.config().getBoolean(AnsibleSettings.ANSIBLE_LINT_DISABLE_WARNINGS_KEY).orElse(false) &&
+                (!LOGGER.isDebugEnabled() && !LOGGER.isTraceEnabled())) {
+            if (!infoWarningsShown) {
+                LOGGER.info("You asked not to see the ansible-lint warnings. If you think the analysis result is not relevant, change the plug-in configuration to see warnings or run the scanner in debug mode to see the warnings.");
+                infoWarningsShown = true;
+            }
+            error = error.stream().filter(line -> !line.startsWith("WARNING ")).collect(Collectors.toList());
+        }
+        // We ignore errors if they are only empty strings
+        if (!error.isEmpty() && !"".equals(error.stream().reduce((str1, str2) -> str1.trim() + str2.trim()).orElse(""))) {
+            LOGGER.warn("Messages printed to error output during analysis:{}{}",
+                    System.getProperty("line.separator"),
+                    String.join(System.getProperty("line.separator"), error)
+            );
+        }
     }
 
-
     /**
-     * Executes {@code ansible-lint} with the passed options and saves the issues detected with this tool.
-     * Also handles the ansible-lint configuration file.
+     * Returns the number of files to be passed to a single {@code ansible-lint} execution
      *
      * @param context the execution sensor context (taken from the method {@link #execute(SensorContext)} of the child class)
-     * @param extraAnsibleLintArgs the optional list of command arguments for {@code ansible-lint}. May be {@code null}.
+     * @return the batch size as set in the plugin settings, 1 by default
+     * @see AnsibleSettings#ANSIBLE_LINT_BATCH_SIZE_KEY
      */
-    protected void executeWithAnsibleLint(SensorContext context, @Nullable List<String> extraAnsibleLintArgs) {
-        LOGGER.debug("Ansible sensor executed with context: " + context);
-
-        // Skip analysis if no rules enabled from this plugin
-        if (context.activeRules().findByRepository(AnsibleCheckRepository.REPOSITORY_KEY).isEmpty()) {
-            LOGGER.info("No active rules found for this plugin, skipping.");
-            return;
-        }
-
-        // Log versions
-        logVersions(context);
+    protected int getBatchSize(SensorContext context) {
+        return Math.max(1, context.config().getInt(AnsibleSettings.ANSIBLE_LINT_BATCH_SIZE_KEY).orElse(1));
+    }
 
-        for (InputFile inputFile : fileSystem.inputFiles(mainFilesPredicate)) {
-            LOGGER.debug("Analyzing file: " + inputFile.filename());
-            scannedFiles.add(inputFile);
+    /**
+     * Returns the number of {@code ansible-lint} executions that can run at the same time
+     *
+     * @param context the execution sensor context (taken from the method {@link #execute(SensorContext)} of the child class)
+     * @return the number of threads as set in the plugin settings, 1 by default
+     * @see AnsibleSettings#ANSIBLE_LINT_THREADS_KEY
+     */
+    protected int getThreads(SensorContext context) {
+        return Math.max(1, context.config().getInt(AnsibleSettings.ANSIBLE_LINT_THREADS_KEY).orElse(1));
+    }
 
-            // Build ansible-lint command
-            List<String> command = new ArrayList<>(Arrays.asList(getAnsibleLintPath(context), "-p", "--nocolor", "-q"));
-            String confPath = getAnsibleLintConfPath(context);
-            if (!"".equals(confPath.trim())) {
-                command.addAll(Arrays.asList("-c", confPath));
-            }
-            if (extraAnsibleLintArgs != null) {
-                command.addAll(extraAnsibleLintArgs);
-            }
-            command.add(new File(inputFile.uri()).getAbsolutePath());
-
-            // Execute Ansible Lint and get a parsable output
-            List<String> output = new ArrayList<>();
-            List<String> error = new ArrayList<>();
-            try {
-                executeCommand(command, output, error);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                return;
-            } catch (IOException e) {
-                return;
-            }
-            // We may ignore ansible-lint warnings
-            if (context.config().getBoolean(AnsibleSettings.ANSIBLE_LINT_DISABLE_WARNINGS_KEY).orElse(false) &&
-                    (!LOGGER.isDebugEnabled() && !LOGGER.isTraceEnabled())) {
-                if (!infoWarningsShown) {
-                    LOGGER.info("You asked not to see the ansible-lint warnings. If you think the analysis result is not relevant, change the plug-in configuration to see warnings or run the scanner in debug mode to see the warnings.");
-                    infoWarningsShown = true;
-                }
-                error = error.stream().filter(line -> !line.startsWith("WARNING ")).collect(Collectors.toList());
-            }
-            // We ignore errors if they are only empty strings
-            if (!error.isEmpty() && !"".equals(error.stream().reduce((str1, str2) -> str1.trim() + str2.trim()).orElse(""))) {
-                LOGGER.warn("Messages printed to error output during analysis:{}{}",
-                        System.getProperty("line.separator"),
-                        String.join(System.getProperty("line.separator"), error)
-                );
-            }
+    String getRelativePath(InputFile inputFile) {
+        return fileSystem.baseDir().toURI().relativize(inputFile.uri()).getPath();
+    }
 
-            LOGGER.debug(output.size() + " issue(s) found");
-            // Parse output and register all issues: as ansible-lint processes only playbooks but returns issues related to
-            // used roles, we need to save all issues first before being able to get role issues and save them
-            output.forEach(this::registerIssue);
-        }
+    static String getAbsolutePath(InputFile inputFile) {
+        return new File(inputFile.uri()).getAbsolutePath();
+    }
 
-        // Save all found issues
-        saveIssues(context);
+    private static Path getPath(InputFile inputFile) {
+        return Paths.get(inputFile.uri());
     }
 
     /**
@@ -181,6 +1092,40 @@ public abstract class AbstractAnsibleSensor implements Sensor {
         return context.config().get(AnsibleSettings.ANSIBLE_LINT_CONF_PATH_KEY).orElse("");
     }
 
+    /**
+     * Tells if {@code ansible-lint} must be restricted to the rules active in the quality profile
+     *
+     * @param context the execution sensor context (taken from the method {@link #execute(SensorContext)} of the child class)
+     * @return the value of the plugin setting, {@code false} by default
+     * @see AnsibleSettings#ANSIBLE_LINT_ACTIVE_RULES_ONLY_KEY
+     */
+    protected boolean isActiveRulesOnly(SensorContext context) {
+        return context.config().getBoolean(AnsibleSettings.ANSIBLE_LINT_ACTIVE_RULES_ONLY_KEY).orElse(false);
+    }
+
+    /**
+     * Tells if {@code ansible-lint} must be executed once on the whole project
+     *
+     * @param context the execution sensor context (taken from the method {@link #execute(SensorContext)} of the child class)
+     * @return the value of the plugin setting, {@code false} by default
+     * @see AnsibleSettings#ANSIBLE_LINT_PROJECT_MODE_KEY
+     */
+    protected boolean isProjectMode(SensorContext context) {
+        return context.config().getBoolean(AnsibleSettings.ANSIBLE_LINT_PROJECT_MODE_KEY).orElse(false);
+    }
+
+    /**
+     * Returns the plugin configuration parameter (settings) that defines the path to the Python interpreter used to run
+     * the {@code ansible-lint} worker
+     *
+     * @param context the execution sensor context (taken from the method {@link #execute(SensorContext)} of the child class)
+     * @return the path to the Python interpreter or {@literal python3} if the plugin setting is not set
+     * @see AnsibleSettings#PYTHON_PATH_KEY
+     */
+    protected String getPythonPath(SensorContext context) {
+        return context.config().get(AnsibleSettings.PYTHON_PATH_KEY).filter(path -> !"".equals(path.trim())).orElse("python3");
+    }
+
     /**
      * Executes a system command and writes the standard and error outputs to the passed
      * <code>StringBuilder</code> if not <code>null</code>
@@ -205,32 +1150,87 @@ public abstract class AbstractAnsibleSensor implements Sensor {
             ProcessBuilder pb = new ProcessBuilder(command);
             LOGGER.debug("Work directory: {}", fileSystem.baseDir());
             pb.directory(fileSystem.baseDir());
+            CommandMetrics metrics = COMMAND_METRICS.get();
+            long start = System.nanoTime();
             Process p = pb.start();
-
-            // Read standard output
-            LineInputReader stdOutputReader = new LineInputReader(p.getInputStream());
-            stdOutputReader.start();
-            // Wait for thread to be ready
-            while (!stdOutputReader.isReady()) {
-                Thread.sleep(100);
+            metrics.spawnNanos = System.nanoTime() - start;
+
+            // The error output is read by a pooled thread while the standard output is read by the current thread, or by
+            // another pooled thread if the command has a time limit
+            Future<List<String>> errOutput = readLines(p.getErrorStream());
+            CountingInputStream output = new CountingInputStream(p.getInputStream());
+            if (timeoutMillis > 0) {
+                long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+                awaitOutput(p, readLines(output), deadline, stdOut::addAll);
+            } else {
+                readLines(output, stdOut);
             }
-            // Get error output
-            LineInputReader errOutputReader = new LineInputReader(p.getErrorStream());
-            errOutputReader.start();
-            // Wait for thread to be ready
-            while (!errOutputReader.isReady()) {
-                Thread.sleep(100);
-            }
-
+            metrics.outputBytes = output.count;
             int status = p.waitFor();
+            errOut.addAll(getLines(errOutput));
+
+            return status;
+        } catch (CommandTimeoutException e) {
+            throw e;
+        } catch (InterruptedException|IOException e) {
+            LOGGER.error("Error executing command: {}", e.getMessage());
+            LOGGER.debug("Stack trace:", e);
+            throw e;
+        }
+    }
+
+    /**
+     * Executes a system command and passes its standard output to the passed reader as it is produced, in the current
+     * thread. The error output is written to the passed list.
+     *
+     * @param command the command to be executed
+     * @param stdOutReader the reader of the standard output
+     * @param errOut where the error output is written to
+     * @return the command exit code
+     * @throws IOException if an error occurred executing the command or reading its output
+     * @throws InterruptedException if the current thread was interrupted while waiting for the command
+     * @see #executeCommand(List, List, List)
+     */
+    protected int executeStreamingCommand(List<String> command, OutputReader stdOutReader, List<String> errOut) throws InterruptedException, IOException {
+        assert stdOutReader != null;
+        assert errOut != null;
+
+        LOGGER.debug("Executing command: {}", command);
 
-            // Create standard output lines
-            stdOut.addAll(stdOutputReader.getOutput());
+        try {
+            ProcessBuilder pb = new ProcessBuilder(command);
+            LOGGER.debug("Work directory: {}", fileSystem.baseDir());
+            pb.directory(fileSystem.baseDir());
+            CommandMetrics metrics = COMMAND_METRICS.get();
+            long start = System.nanoTime();
+            Process p = pb.start();
+            metrics.spawnNanos = System.nanoTime() - start;
+
+            // Get error output in a pooled thread while the standard output is read (by another pooled thread if the
+            // command has a time limit)
+            Future<List<String>> errOutput = readLines(p.getErrorStream());
+            CountingInputStream counter = new CountingInputStream(p.getInputStream());
+            if (timeoutMillis > 0) {
+                long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+                awaitOutput(p, OUTPUT_READERS.submit(() -> {
+                    try (Reader output = new InputStreamReader(counter, StandardCharsets.UTF_8)) {
+                        stdOutReader.read(output);
+                    }
+                    return null;
+                }), deadline, result -> {});
+            } else {
+                try (Reader output = new InputStreamReader(counter, StandardCharsets.UTF_8)) {
+                    stdOutReader.read(output);
+                }
+            }
+            metrics.outputBytes = counter.count;
 
-            // Write error output if any
-            errOut.addAll(errOutputReader.getOutput());
+            int status = p.waitFor();
+            errOut.addAll(getLines(errOutput));
 
             return status;
+        } catch (CommandTimeoutException e) {
+            throw e;
         } catch (InterruptedException|IOException e) {
             LOGGER.error("Error executing command: {}", e.getMessage());
             LOGGER.debug("Stack trace:", e);
@@ -238,43 +1238,125 @@ public abstract class AbstractAnsibleSensor implements Sensor {
         }
     }
 
+    /**
+     * Waits for the standard output of a process to be read and for the process to complete until the passed deadline.
+     * The process and its children are killed if the deadline is reached.
+     *
+     * @param process the process
+     * @param output the output being read
+     * @param deadline the deadline, as returned by {@link System#nanoTime()}
+     * @param consumer the consumer of the output read
+     * @param <T> the type of the output read
+     * @throws CommandTimeoutException if the deadline was reached
+     * @throws IOException if the output could not be read
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     */
+    private static <T> void awaitOutput(Process process, Future<T> output, long deadline, Consumer<T> consumer)
+            throws IOException, InterruptedException {
+        try {
+            consumer.accept(output.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            if (process.waitFor(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                return;
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException)e.getCause();
+            }
+            throw new IOException("Cannot read command output", e.getCause());
+        } catch (TimeoutException e) {
+            // Handled below
+        } catch (InterruptedException e) {
+            destroyProcessTree(process);
+            throw e;
+        }
+        destroyProcessTree(process);
+        throw new CommandTimeoutException("Command timed out");
+    }
+
+    /**
+     * Kills the passed process and, when the Java runtime supports it (Java 9 and later), its descendants
+     *
+     * @param process the process to be killed
+     */
+    static void destroyProcessTree(Process process) {
+        try {
+            Method destroyForcibly = Class.forName("java.lang.ProcessHandle").getMethod("destroyForcibly");
+            Stream<?> descendants = (Stream<?>)Process.class.getMethod("descendants").invoke(process);
+            descendants.forEach(descendant -> {
+                try {
+                    destroyForcibly.invoke(descendant);
+                } catch (ReflectiveOperationException e) {
+                    LOGGER.debug("Cannot kill process: {}", e.getMessage());
+                }
+            });
+        } catch (ReflectiveOperationException e) {
+            LOGGER.debug("Cannot kill the child processes: {}", e.getMessage());
+        }
+        process.destroyForcibly();
+    }
+
     /**
      * Adds the passed issue (containing the filename and the issue message) to the list of known issues
      *
      * @param rawIssue an issue as returned by {@code ansible-lint}. The issue must be of the form: "filename:[0-9]+: [E...] ..."
      * @return {@code true} if the issue has been registered, {@code false} if not
-     * @see #allIssues
+     * @see #registerIssue(ReportedIssue)
      */
     protected boolean registerIssue(String rawIssue) {
-        Matcher oldSplitter = Pattern.compile("^(.*):([0-9]+): \\[E([^\\[]+)\\] (.*)$").matcher(rawIssue);
-        Matcher new43Splitter = Pattern.compile("^([^ ]+) (.+):([0-9]+)$").matcher(rawIssue);
-        Matcher new50Splitter = Pattern.compile("^(.*):([0-9]+): ([^ ]+)$").matcher(rawIssue);
-
-        String filePath;
-        AnsibleLintIssue issue;
-        if (oldSplitter.matches()) {
-            filePath = oldSplitter.group(1);
-            issue = new AnsibleLintIssue(Integer.parseInt(oldSplitter.group(2)), oldSplitter.group(3), oldSplitter.group(4));
-        } else if (new43Splitter.matches()) {
-            filePath = new43Splitter.group(2);
-            issue = new AnsibleLintIssue(Integer.parseInt(new43Splitter.group(3)), new43Splitter.group(1));
-        } else if (new50Splitter.matches()) {
-            filePath = new50Splitter.group(1);
-            issue = new AnsibleLintIssue(Integer.parseInt(new50Splitter.group(2)), new50Splitter.group(3));
-        } else {
-            LOGGER.warn("Invalid issue syntax, ignoring: " + rawIssue);
+        ReportedIssue issue = parseIssue(rawIssue);
+        if (issue == null) {
             return false;
         }
+        registerIssue(issue);
+        return true;
+    }
 
-        URI fileURI = (new File(filePath).isAbsolute())?new File(filePath).toURI():new File(fileSystem.baseDir(), filePath).toURI();
-        LOGGER.debug("Resolved file URI: {}", fileURI);
+    /**
+     * Adds the passed issue to the list of known issues
+     *
+     * @param issue an issue reported on a file
+     */
+    protected void registerIssue(ReportedIssue issue) {
+        issueStore.add(issue.getFile(), issue.getIssue());
+    }
 
-        if (!allIssues.containsKey(fileURI)) {
-            allIssues.put(fileURI, new HashSet<>());
+    /**
+     * Parses an issue as returned by {@code ansible-lint}
+     *
+     * @param rawIssue an issue as returned by {@code ansible-lint}. The issue must be of the form: "filename:[0-9]+: [E...] ..."
+     * @return the parsed issue or {@code null} if the passed string is not a valid issue
+     */
+    protected ReportedIssue parseIssue(String rawIssue) {
+        // Try the expected format first; other formats are still accepted as ansible-lint may mix them (the worker
+        // always uses the legacy format)
+        ReportedIssue issue = (textFormat == null) ? null : textFormat.parse(rawIssue, fileResolver);
+        if (issue == null) {
+            for (AnsibleLintTextFormat format : AnsibleLintTextFormat.values()) {
+                if (format != textFormat && (issue = format.parse(rawIssue, fileResolver)) != null) {
+                    if (textFormat == null) {
+                        LOGGER.debug("ansible-lint output format detected: {}", format);
+                        textFormat = format;
+                    }
+                    break;
+                }
+            }
+        }
+        if (issue == null) {
+            LOGGER.warn("Invalid issue syntax, ignoring: " + rawIssue);
         }
-        allIssues.get(fileURI).add(issue);
+        return issue;
+    }
 
-        return true;
+    /**
+     * Returns the URI of a file reported by {@code ansible-lint}
+     *
+     * @param filePath the path of the file, absolute or relative to the project base directory
+     * @return the URI of the file
+     */
+    URI resolveFile(String filePath) {
+        URI fileURI = (new File(filePath).isAbsolute())?new File(filePath).toURI():new File(fileSystem.baseDir(), filePath).toURI();
+        LOGGER.debug("Resolved file URI: {}", fileURI);
+        return fileURI;
     }
 
     /**
@@ -286,7 +1368,7 @@ public abstract class AbstractAnsibleSensor implements Sensor {
     protected void saveIssues(SensorContext context) {
         for (InputFile inputFile : scannedFiles) {
             LOGGER.debug("Saving issues for {}", inputFile.uri());
-            Set<AnsibleLintIssue> issues = allIssues.getOrDefault(inputFile.uri(), new HashSet<>());
+            Set<AnsibleLintIssue> issues = issueStore.getOrDefault(inputFile.uri(), new HashSet<>());
             for (AnsibleLintIssue issue : issues) {
                 // Saved issues must have been registered first
                 LOGGER.debug("  Saving issue: {}", issue);
@@ -303,22 +1385,21 @@ public abstract class AbstractAnsibleSensor implements Sensor {
      * @param issue an issue that ansible-lint detected on the input file
      */
     protected void saveIssue(SensorContext context, InputFile inputFile, AnsibleLintIssue issue) {
-        RuleKey ruleKey = getRuleKey(context, issue.getId());
-
-        // Old rules (ansible-lint < 3.5) had id ANSIBLE... but now it is E... so we may need to add the heading E back
-        if (ruleKey == null) {
-            ruleKey = getRuleKey(context, "E" + issue.getId());
-        }
-
+        RuleKey ruleKey = resolveRuleKey(context, issue.getId());
         if (ruleKey == null) {
             LOGGER.debug("Rule " + issue.getId() + " ignored, not found in repository");
             return;
         }
 
         NewIssue newIssue = context.newIssue().forRule(ruleKey);
+        TextRange range = inputFile.selectLine(issue.getLine());
+        // Highlight the line from the reported column if any
+        if (issue.getColumn() > 1 && issue.getColumn() - 1 < range.end().lineOffset()) {
+            range = inputFile.newRange(issue.getLine(), issue.getColumn() - 1, issue.getLine(), range.end().lineOffset());
+        }
         NewIssueLocation location = newIssue.newLocation()
                 .on(inputFile)
-                .at(inputFile.selectLine(issue.getLine()));
+                .at(range);
         if (issue.getMessage() != null) {
             location.message(issue.getMessage());
         }
@@ -339,12 +1420,47 @@ public abstract class AbstractAnsibleSensor implements Sensor {
         return (context.activeRules().find(key) != null)?key:null;
     }
 
+    /**
+     * Returns the active rule keys by id as reported by {@code ansible-lint}. The table is filled once per context and
+     * per id with {@link #getRuleKey(SensorContext, String)}, so that the issues of a rule are not resolved again and
+     * again; an id mapped to an empty value has no active rule.
+     *
+     * @param context the sensor context (that contains the active rules)
+     * @return the active rule keys by id
+     */
+    private Map<String, Optional<RuleKey>> getRuleKeys(SensorContext context) {
+        if (ruleKeys == null || ruleKeysContext != context) {
+            ruleKeys = new ConcurrentHashMap<>();
+            ruleKeysContext = context;
+        }
+        return ruleKeys;
+    }
+
+    /**
+     * Returns the active rule key of an id reported by {@code ansible-lint}
+     *
+     * @param context the sensor context (that contains the active rules)
+     * @param ruleId the id reported by {@code ansible-lint}
+     * @return the {@code RuleKey} or {@code null} if no active rule has been found
+     */
+    private RuleKey resolveRuleKey(SensorContext context, String ruleId) {
+        return getRuleKeys(context).computeIfAbsent(ruleId, id -> {
+            RuleKey key = getRuleKey(context, id);
+            // Old rules (ansible-lint < 3.5) had id ANSIBLE... but now it is E... so we may need to add the heading E back
+            if (key == null) {
+                key = getRuleKey(context, "E" + id);
+            }
+            return Optional.ofNullable(key);
+        }).orElse(null);
+    }
+
 
     /**
      * Bean that represents an issue as returned by ansible-lint
      */
     protected static class AnsibleLintIssue {
         private int line;
+        private int column;
         private String id;
         // message is mostly there for information: the couple (line number, error id) is sufficient to uniquely identify
         // an issue
@@ -362,10 +1478,26 @@ public abstract class AbstractAnsibleSensor implements Sensor {
             this.message = message;
         }
 
+        public AnsibleLintIssue(int line, int column, String id, String message) {
+            this.line = line;
+            this.column = column;
+            this.id = id;
+            this.message = message;
+        }
+
         public int getLine() {
             return line;
         }
 
+        /**
+         * Returns the column of the issue
+         *
+         * @return the column (starting at 1) where the issue was found, 0 if unknown
+         */
+        public int getColumn() {
+            return column;
+        }
+
         public String getId() {
             return id;
         }
@@ -395,81 +1527,237 @@ public abstract class AbstractAnsibleSensor implements Sensor {
     }
 
 
+    /**
+     * An issue reported by {@code ansible-lint} on a given file
+     */
+    protected static final class ReportedIssue {
+        private final URI file;
+        private final AnsibleLintIssue issue;
+
+
+        public ReportedIssue(URI file, AnsibleLintIssue issue) {
+            this.file = file;
+            this.issue = issue;
+        }
+
+        public URI getFile() {
+            return file;
+        }
+
+        public AnsibleLintIssue getIssue() {
+            return issue;
+        }
+    }
+
+    /**
+     * Reader of the standard output of a command
+     *
+     * @see #executeStreamingCommand(List, OutputReader, List)
+     */
+    @FunctionalInterface
+    protected interface OutputReader {
+        /**
+         * Reads the output of a command until its end
+         *
+         * @param output the standard output of the command
+         * @throws IOException if the output cannot be read
+         */
+        void read(Reader output) throws IOException;
+    }
+
+    /**
+     * Exception thrown when a command did not complete in time. The command has been killed.
+     */
+    protected static final class CommandTimeoutException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public CommandTimeoutException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Measures of a command execution: time spent to start the process and size of its standard output
+     */
+    static final class CommandMetrics {
+        long spawnNanos = 0;
+        long outputBytes = 0;
+
+        void reset() {
+            spawnNanos = 0;
+            outputBytes = 0;
+        }
+    }
+
+    /**
+     * Stream that counts the bytes read from the underlying stream
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count = 0;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+
+    /**
+     * Factory of the daemon threads used to execute {@code ansible-lint} concurrently and to read its outputs
+     */
+    static final class AnsibleLintThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        AnsibleLintThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+
+    /**
+     * Starts the probe of the version of an executable in a pooled thread. The version is taken from the version cache
+     * if the executable has not changed since it was cached.
+     *
+     * @param versionCache the cache of the versions
+     * @param executable the executable whose version is requested
+     * @return the output of the {@code --version} option of the executable
+     */
+    private Future<List<String>> probeVersion(AnsibleVersionCache versionCache, String executable) {
+        return OUTPUT_READERS.submit(() -> {
+            String key = versionCache.getKey(executable);
+            List<String> output = (key == null) ? null : versionCache.get(key);
+            if (output == null) {
+                output = new ArrayList<>();
+                executeCommand(new ArrayList<>(Arrays.asList(executable, "--version")), output, new ArrayList<>());
+                if (key != null) {
+                    versionCache.put(key, output);
+                }
+            } else {
+                LOGGER.debug("Version of {} found in cache", executable);
+            }
+            return output;
+        });
+    }
+
     /**
      * Log the versions of ansible and ansible-lint
      *
-     * @param context the execution sensor context (taken from the method {@link #execute(SensorContext)} of the child class)
+     * @param ansibleVersionProbe the probe of the version of ansible
+     * @param ansibleLintVersionProbe the probe of the version of ansible-lint
      */
-    private void logVersions(SensorContext context) {
+    private void logVersions(Future<List<String>> ansibleVersionProbe, Future<List<String>> ansibleLintVersionProbe) {
         // Ansible first
-        logVersion("ansible", new ArrayList<>(Arrays.asList("ansible", "--version")));
+        logVersion("ansible", ansibleVersionProbe);
 
         // Then ansible-lint
-        logVersion("ansible-lint", new ArrayList<>(Arrays.asList(getAnsibleLintPath(context), "--version")));
+        List<String> output = logVersion("ansible-lint", ansibleLintVersionProbe);
+        ansibleLintVersion = (output == null) ? null : String.join(System.getProperty("line.separator"), output);
     }
 
     /**
      * Log the output of a command that is supposed to return the version of a command
      *
      * @param name the name of the command
-     * @param command the command to be executed
+     * @param probe the probe of the version
+     * @return the output of the command or {@code null} if it could not be executed
      */
-    private void logVersion(String name, List<String> command) {
-        List<String> output = new ArrayList<>();
-        List<String> error = new ArrayList<>();
-
+    private List<String> logVersion(String name, Future<List<String>> probe) {
         try {
-            executeCommand(command, output, error);
+            List<String> output = probe.get();
             LOGGER.info(name + " version:");
             output.forEach(LOGGER::info);
-        } catch (IOException e) {
+            return output;
+        } catch (ExecutionException e) {
             LOGGER.warn("Cannot get " + name + " version");
         } catch (InterruptedException e) {
             LOGGER.warn("Cannot get " + name + " version");
             Thread.currentThread().interrupt();
         }
+        return null;
     }
 
-
     /**
-     * Reader class for {@code ansible-lint} output
+     * Returns the output of the {@code --version} option of {@code ansible-lint}, as probed at the beginning of the
+     * analysis
+     *
+     * @return the version of {@code ansible-lint} or {@code null} if it is unknown or has not been probed yet
      */
-    private final class LineInputReader extends Thread {
-        private final List<String> output = new ArrayList<>();
-        private BufferedReader input;
-        private boolean ready = false;
+    protected String getAnsibleLintVersion() {
+        return ansibleLintVersion;
+    }
 
 
-        public LineInputReader(InputStream input) {
-            this.input = new BufferedReader(new InputStreamReader(input));
-        }
+    /**
+     * Reads the lines of the passed stream in a thread of the shared pool of output readers
+     *
+     * @param input the output of a command
+     * @return the lines read, available once the end of the stream has been reached
+     */
+    private static Future<List<String>> readLines(InputStream input) {
+        return OUTPUT_READERS.submit(() -> {
+            List<String> lines = new ArrayList<>();
+            readLines(input, lines);
+            return lines;
+        });
+    }
 
-        @Override
-        public void run() {
-            try {
-                String line;
-                ready = true;
-                while ((line = input.readLine()) != null) {
-                    output.add(line);
-                    LOGGER.trace("Read from input: {}", line);
-                }
-            } catch (IOException e) {
-                LOGGER.error("Cannot read input stream", e);
-            } finally {
-                try {
-                    input.close();
-                } catch (IOException e) {
-                    LOGGER.error("Unknown error", e);
-                }
+    /**
+     * Reads the lines of the passed stream until its end in the current thread
+     *
+     * @param input the output of a command
+     * @param lines where the lines are written to
+     * @throws IOException if the stream cannot be read
+     */
+    private static void readLines(InputStream input, List<String> lines) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+                LOGGER.trace("Read from input: {}", line);
             }
         }
+    }
 
-        public List<String> getOutput() {
-            return output;
-        }
-
-        public boolean isReady() {
-            return ready;
+    /**
+     * Waits for the lines read by {@link #readLines(InputStream)}
+     *
+     * @param lines the lines being read
+     * @return the lines read
+     * @throws IOException if the stream could not be read
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     */
+    private static List<String> getLines(Future<List<String>> lines) throws IOException, InterruptedException {
+        try {
+            return lines.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException)e.getCause();
+            }
+            throw new IOException("Cannot read command output", e.getCause());
         }
     }
 }
@@ -0,0 +1,484 @@
+/**
+ * Copyright (c) 2018-2021, Sylvain Baudoin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.sbaudoin.sonar.plugins.ansible.rules;
+
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.AbstractConstruct;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+import org.yaml.snakeyaml.error.YAMLException;
+import org.yaml.snakeyaml.representer.Representer;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Graph of the dependencies between Ansible files: playbooks, imported playbooks, roles, task files, handlers and vars
+ * files. The graph is built by parsing the YAML files and following the references that {@code ansible-lint} follows
+ * ({@code roles}, {@code import_playbook}, {@code include_tasks}, {@code import_tasks}, {@code include_role},
+ * {@code import_role}, {@code vars_files}, {@code include_vars} and role dependencies). References that use Jinja2
+ * expressions cannot be resolved and are ignored.
+ * <p>
+ * The graph can be persisted: when updated, only the files whose content changed since the graph was saved are parsed
+ * again.
+ */
+final class AnsibleDependencyGraph {
+    private static final Logger LOGGER = Loggers.get(AnsibleDependencyGraph.class);
+
+    private static final int FORMAT_VERSION = 2;
+
+    private static final List<String> YAML_EXTENSIONS = Arrays.asList("", ".yml", ".yaml");
+    private static final List<String> ROLE_FILES = Arrays.asList("tasks", "handlers", "vars", "defaults", "meta");
+    private static final List<String> TASK_LISTS = Arrays.asList("tasks", "pre_tasks", "post_tasks", "handlers");
+    private static final List<String> TASK_BLOCKS = Arrays.asList("block", "rescue", "always");
+    private static final List<String> TASK_INCLUDES = Arrays.asList("include_tasks", "import_tasks", "include");
+    private static final List<String> ROLE_INCLUDES = Arrays.asList("include_role", "import_role");
+    private static final String BUILTIN_PREFIX = "ansible.builtin.";
+
+
+    private final Path baseDir;
+    private final Map<Path, Node> nodes = new HashMap<>();
+    private Map<Path, Node> previousNodes = new HashMap<>();
+    private int parsedFiles = 0;
+
+
+    /**
+     * Constructor
+     *
+     * @param baseDir the project base directory, against which the paths of the roles are resolved
+     */
+    AnsibleDependencyGraph(Path baseDir) {
+        this.baseDir = baseDir.toAbsolutePath().normalize();
+    }
+
+
+    /**
+     * Adds the passed files and all the files they reference, directly or not, to the graph
+     *
+     * @param files the files to be added
+     */
+    void update(Iterable<Path> files) {
+        Deque<Path> toVisit = new ArrayDeque<>();
+        files.forEach(file -> toVisit.add(normalize(file)));
+        while (!toVisit.isEmpty()) {
+            Path file = toVisit.poll();
+            if (nodes.containsKey(file)) {
+                continue;
+            }
+            Node node = visit(file);
+            nodes.put(file, node);
+            toVisit.addAll(node.dependencies);
+        }
+    }
+
+    /**
+     * Returns the passed files and the files that depend on them, directly or not
+     *
+     * @param files files of the graph
+     * @return the files that reach the passed files, including the passed files
+     */
+    Set<Path> getDependents(Collection<Path> files) {
+        Map<Path, Set<Path>> reverse = new HashMap<>();
+        for (Map.Entry<Path, Node> entry : nodes.entrySet()) {
+            for (Path dependency : entry.getValue().dependencies) {
+                reverse.computeIfAbsent(dependency, k -> new HashSet<>()).add(entry.getKey());
+            }
+        }
+        return closure(files, file -> reverse.getOrDefault(file, Collections.emptySet()));
+    }
+
+    /**
+     * Returns the files the passed file depends on, directly or not
+     *
+     * @param file a file of the graph
+     * @return the files reached from the passed file, including the file itself
+     */
+    Set<Path> getDependencies(Path file) {
+        return closure(Collections.singleton(file), f -> nodes.containsKey(f) ? nodes.get(f).dependencies : Collections.emptySet());
+    }
+
+    /**
+     * Tells if the passed file is a playbook, i.e. a file whose root is a list of plays
+     *
+     * @param file a file of the graph
+     * @return {@code true} if the file contains at least one play ({@code hosts} or {@code import_playbook})
+     */
+    boolean isPlaybook(Path file) {
+        Node node = nodes.get(normalize(file));
+        return node != null && node.playbook;
+    }
+
+    /**
+     * Returns a key that changes whenever one of the files the passed file depends on changes
+     *
+     * @param file a file of the graph
+     * @return a hash of the contents of the files reached from the passed file, the file itself excepted
+     */
+    String getDependenciesKey(Path file) {
+        Path normalized = normalize(file);
+        MessageDigest digest = newDigest();
+        new TreeSet<>(getDependencies(normalized)).stream().filter(f -> !f.equals(normalized)).forEach(f -> {
+            digest.update(f.toString().getBytes(StandardCharsets.UTF_8));
+            digest.update(nodes.get(f).hash.getBytes(StandardCharsets.UTF_8));
+        });
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Returns the number of files parsed by the last updates, i.e. the number of files that were not known or that
+     * changed since the graph was loaded
+     *
+     * @return the number of parsed files
+     */
+    int getParsedFiles() {
+        return parsedFiles;
+    }
+
+    /**
+     * Returns the number of files in the graph
+     *
+     * @return the number of files in the graph
+     */
+    int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Loads a graph previously saved with {@link #save(Path)}. The loaded files are only used to avoid parsing again
+     * unchanged files. A missing or unreadable file is ignored.
+     *
+     * @param file the file where the graph was saved
+     */
+    void load(Path file) {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                return;
+            }
+            Map<Path, Node> loaded = new HashMap<>();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Path path = baseDir.resolve(in.readUTF()).normalize();
+                String hash = in.readUTF();
+                boolean playbook = in.readBoolean();
+                int dependencyCount = in.readInt();
+                Set<Path> dependencies = new LinkedHashSet<>();
+                for (int j = 0; j < dependencyCount; j++) {
+                    dependencies.add(baseDir.resolve(in.readUTF()).normalize());
+                }
+                loaded.put(path, new Node(hash, playbook, dependencies));
+            }
+            previousNodes = loaded;
+        } catch (IOException e) {
+            LOGGER.warn("Cannot read dependency graph {}, ignoring it: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Saves the graph
+     *
+     * @param file the file where the graph is saved
+     */
+    void save(Path file) {
+        try {
+            Files.createDirectories(file.getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(nodes.size());
+                for (Map.Entry<Path, Node> entry : nodes.entrySet()) {
+                    out.writeUTF(baseDir.relativize(entry.getKey()).toString());
+                    out.writeUTF(entry.getValue().hash);
+                    out.writeBoolean(entry.getValue().playbook);
+                    out.writeInt(entry.getValue().dependencies.size());
+                    for (Path dependency : entry.getValue().dependencies) {
+                        out.writeUTF(baseDir.relativize(dependency).toString());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Cannot write dependency graph {}: {}", file, e.getMessage());
+        }
+    }
+
+
+    private Path normalize(Path file) {
+        return baseDir.resolve(file).normalize();
+    }
+
+    private Node visit(Path file) {
+        byte[] content;
+        try {
+            content = Files.readAllBytes(file);
+        } catch (IOException e) {
+            LOGGER.debug("Cannot read {}: {}", file, e.getMessage());
+            return new Node("", false, Collections.emptySet());
+        }
+        String hash = toHex(newDigest().digest(content));
+        Node previous = previousNodes.get(file);
+        if (previous != null && previous.hash.equals(hash)) {
+            return previous;
+        }
+
+        parsedFiles++;
+        Set<Path> dependencies = new LinkedHashSet<>();
+        ReferenceCollector collector = new ReferenceCollector(file, dependencies);
+        try {
+            LoaderOptions options = new LoaderOptions();
+            DumperOptions dumperOptions = new DumperOptions();
+            Yaml yaml = new Yaml(new LenientConstructor(options), new Representer(dumperOptions), dumperOptions, options);
+            Object document = yaml.load(new String(content, StandardCharsets.UTF_8));
+            collector.collect(document);
+        } catch (YAMLException e) {
+            LOGGER.debug("Cannot parse {}, dependencies ignored: {}", file, e.getMessage());
+        }
+        dependencies.remove(file);
+        return new Node(hash, collector.playbook, dependencies);
+    }
+
+    private static Set<Path> closure(Collection<Path> start, Function<Path, Set<Path>> next) {
+        Set<Path> visited = new HashSet<>();
+        Deque<Path> toVisit = new ArrayDeque<>(start);
+        while (!toVisit.isEmpty()) {
+            Path file = toVisit.poll();
+            if (visited.add(file)) {
+                toVisit.addAll(next.apply(file));
+            }
+        }
+        return visited;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not supported", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+
+    /**
+     * Collects the files referenced by a parsed YAML document
+     */
+    private final class ReferenceCollector {
+        private final Path file;
+        private final Path directory;
+        private final Path roleDir;
+        private final Set<Path> dependencies;
+        private boolean playbook = false;
+
+        private ReferenceCollector(Path file, Set<Path> dependencies) {
+            this.file = file;
+            this.directory = file.getParent();
+            this.roleDir = getRoleDir(file);
+            this.dependencies = dependencies;
+        }
+
+        private void collect(Object document) {
+            if (roleDir != null && "meta".equals(directory.getFileName().toString())) {
+                // Role meta file: role dependencies
+                if (document instanceof Map) {
+                    asList(((Map<?, ?>)document).get("dependencies")).forEach(this::addRole);
+                }
+            } else if (document instanceof List) {
+                // Playbook or task file
+                for (Object item : (List<?>)document) {
+                    if (item instanceof Map && isPlay((Map<?, ?>)item)) {
+                        playbook = true;
+                        collectPlay((Map<?, ?>)item);
+                    } else {
+                        collectTask(item);
+                    }
+                }
+            }
+        }
+
+        private boolean isPlay(Map<?, ?> item) {
+            return item.containsKey("hosts") || item.containsKey("import_playbook") || item.containsKey(BUILTIN_PREFIX + "import_playbook");
+        }
+
+        private void collectPlay(Map<?, ?> play) {
+            addFile(directory, getValue(play, "import_playbook"));
+            asList(play.get("roles")).forEach(this::addRole);
+            asList(play.get("vars_files")).forEach(varsFile -> addFile(directory, varsFile));
+            for (String key : TASK_LISTS) {
+                asList(play.get(key)).forEach(this::collectTask);
+            }
+        }
+
+        private void collectTask(Object item) {
+            if (!(item instanceof Map)) {
+                return;
+            }
+            Map<?, ?> task = (Map<?, ?>)item;
+            for (String key : TASK_BLOCKS) {
+                asList(task.get(key)).forEach(this::collectTask);
+            }
+            for (String key : TASK_INCLUDES) {
+                addTaskFile(getFileArgument(getValue(task, key)));
+            }
+            for (String key : ROLE_INCLUDES) {
+                Object value = getValue(task, key);
+                if (value instanceof Map) {
+                    addRole(((Map<?, ?>)value).get("name"));
+                }
+            }
+            Object includeVars = getFileArgument(getValue(task, "include_vars"));
+            if (includeVars != null) {
+                // Relative vars files are searched in the vars directory of the role first
+                if (roleDir == null || !addFile(roleDir.resolve("vars"), includeVars)) {
+                    addFile(directory, includeVars);
+                }
+            }
+        }
+
+        private void addTaskFile(Object path) {
+            // Relative task files are searched next to the including file first, then in the tasks directory of the role
+            if (path != null && !addFile(directory, path) && roleDir != null) {
+                addFile(roleDir.resolve("tasks"), path);
+            }
+        }
+
+        private void addRole(Object role) {
+            Object name = (role instanceof Map) ? getValue((Map<?, ?>)role, "role", "name") : role;
+            if (!(name instanceof String) || isTemplated((String)name)) {
+                return;
+            }
+            List<Path> candidates = new ArrayList<>();
+            candidates.add(directory.resolve("roles").resolve((String)name));
+            if (roleDir != null) {
+                candidates.add(roleDir.getParent().resolve((String)name));
+            }
+            candidates.add(baseDir.resolve("roles").resolve((String)name));
+            candidates.add(directory.resolve((String)name));
+            for (Path candidate : candidates) {
+                if (Files.isDirectory(candidate)) {
+                    for (String roleFile : ROLE_FILES) {
+                        addFile(candidate.resolve(roleFile), "main");
+                    }
+                    return;
+                }
+            }
+            LOGGER.debug("Role {} referenced in {} not found", name, file);
+        }
+
+        /**
+         * Adds the first existing file among the passed path and the path with a YAML extension
+         */
+        private boolean addFile(Path dir, Object path) {
+            if (!(path instanceof String) || isTemplated((String)path)) {
+                return false;
+            }
+            for (String extension : YAML_EXTENSIONS) {
+                Path candidate = dir.resolve(path + extension).normalize();
+                if (Files.isRegularFile(candidate)) {
+                    dependencies.add(candidate);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private Object getFileArgument(Object value) {
+            return (value instanceof Map) ? getValue((Map<?, ?>)value, "file") : value;
+        }
+
+        private Object getValue(Map<?, ?> map, String... keys) {
+            for (String key : keys) {
+                if (map.get(key) != null) {
+                    return map.get(key);
+                }
+                if (map.get(BUILTIN_PREFIX + key) != null) {
+                    return map.get(BUILTIN_PREFIX + key);
+                }
+            }
+            return null;
+        }
+
+        private List<?> asList(Object value) {
+            return (value instanceof List) ? (List<?>)value : Collections.emptyList();
+        }
+
+        private boolean isTemplated(String value) {
+            return value.contains("{{") || value.contains("{%");
+        }
+    }
+
+    /**
+     * Returns the directory of the role the passed file belongs to, or {@code null} if the file is not part of a role
+     */
+    private static Path getRoleDir(Path file) {
+        // Task files may be located in subdirectories of the tasks directory
+        for (Path dir = file.getParent(); dir != null && dir.getParent() != null; dir = dir.getParent()) {
+            Path candidate = dir.getParent();
+            if (ROLE_FILES.contains(dir.getFileName().toString()) &&
+                    (candidate.getParent() != null && "roles".equals(candidate.getParent().getFileName().toString()) ||
+                            Files.isRegularFile(candidate.resolve("meta").resolve("main.yml")))) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * Safe YAML constructor that ignores the unknown tags (such as {@code !vault}) instead of failing
+     */
+    private static final class LenientConstructor extends SafeConstructor {
+        private LenientConstructor(LoaderOptions options) {
+            super(options);
+            this.yamlConstructors.put(null, new AbstractConstruct() {
+                @Override
+                public Object construct(org.yaml.snakeyaml.nodes.Node node) {
+                    return null;
+                }
+            });
+        }
+    }
+
+    /**
+     * A file of the graph: its content hash, whether it is a playbook and the files it references
+     */
+    private static final class Node {
+        private final String hash;
+        private final boolean playbook;
+        private final Set<Path> dependencies;
+
+        private Node(String hash, boolean playbook, Set<Path> dependencies) {
+            this.hash = hash;
+            this.playbook = playbook;
+            this.dependencies = dependencies;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/**
+ * Copyright (c) 2018-2021, Sylvain Baudoin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.sbaudoin.sonar.plugins.ansible.rules;
+
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Cheap classifier of the YAML files that are clearly not Ansible content, so that {@code ansible-lint} is not executed
+ * on them. A file is classified from its path and from the top-level keys of its first lines only; the file is never
+ * parsed. Files in the Ansible layout ({@code roles/<role>/tasks}, {@code playbooks}, {@code group_vars}...) and files
+ * whose root is a list (playbooks, task files) are always kept.
+ *
+ * @see com.github.sbaudoin.sonar.plugins.ansible.settings.AnsibleSettings#NON_ANSIBLE_FILES_SKIP_KEY
+ */
+final class AnsibleFileClassifier {
+    private static final Logger LOGGER = Loggers.get(AnsibleFileClassifier.class);
+
+    /**
+     * Maximum number of lines read to find the top-level keys of a file
+     */
+    private static final int MAX_LINES = 100;
+
+    private static final Pattern TOP_LEVEL_KEY = Pattern.compile("^([A-Za-z_][A-Za-z0-9_.-]*|\"[^\"]+\"|'[^']+')\\s*:(\\s|$)");
+
+    private static final Set<String> ROLE_DIRECTORIES = new HashSet<>(Arrays.asList("tasks", "handlers", "meta", "defaults", "vars"));
+
+    private static final Set<String> ANSIBLE_DIRECTORIES = new HashSet<>(Arrays.asList("playbooks", "group_vars", "host_vars"));
+
+    /**
+     * Kinds of files that can be skipped
+     */
+    enum Rule {
+        /**
+         * Files encrypted with Ansible Vault, that {@code ansible-lint} cannot read
+         */
+        VAULT,
+        /**
+         * Kubernetes manifests: {@code apiVersion} and {@code kind} keys
+         */
+        KUBERNETES,
+        /**
+         * Helm charts: {@code Chart.yaml}, values files and templates of the directory of a chart
+         */
+        HELM,
+        /**
+         * OpenAPI and Swagger specifications: {@code openapi} or {@code swagger} key
+         */
+        OPENAPI,
+        /**
+         * CI pipelines (GitLab CI, GitHub Actions, Azure Pipelines, Bitbucket Pipelines, CircleCI, Travis CI)
+         */
+        CI;
+
+        String getKey() {
+            return name().toLowerCase(Locale.ENGLISH);
+        }
+    }
+
+
+    private final URI baseDir;
+    private final Set<Rule> rules;
+
+
+    /**
+     * Constructor
+     *
+     * @param baseDir the project base directory, against which the file paths are evaluated
+     * @param rules the keys of the enabled rules (see {@link Rule}). Unknown keys are ignored.
+     */
+    AnsibleFileClassifier(File baseDir, Collection<String> rules) {
+        this.baseDir = baseDir.toURI();
+        this.rules = EnumSet.noneOf(Rule.class);
+        for (String key : rules) {
+            Optional<Rule> rule = Arrays.stream(Rule.values()).filter(r -> r.getKey().equals(key.trim().toLowerCase(Locale.ENGLISH))).findFirst();
+            if (rule.isPresent()) {
+                this.rules.add(rule.get());
+            } else if (!key.trim().isEmpty()) {
+                LOGGER.warn("Unknown rule to skip non-Ansible files: {}", key);
+            }
+        }
+    }
+
+
+    /**
+     * Tells if no rule is enabled
+     *
+     * @return {@code true} if no file can be skipped
+     */
+    boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    /**
+     * Returns the rule that classifies the passed file as not Ansible content
+     *
+     * @param inputFile a YAML file
+     * @return the matching enabled rule or {@code null} if the file must be analyzed
+     */
+    Rule classify(InputFile inputFile) {
+        if (rules.isEmpty()) {
+            return null;
+        }
+
+        List<String> path = Arrays.asList(baseDir.relativize(inputFile.uri()).getPath().split("/"));
+        List<String> lines = readFirstLines(inputFile);
+        if (!lines.isEmpty() && lines.get(0).startsWith("$ANSIBLE_VAULT")) {
+            return rules.contains(Rule.VAULT) ? Rule.VAULT : null;
+        }
+        if (isAnsibleLayout(path)) {
+            return null;
+        }
+
+        String fileName = path.get(path.size() - 1);
+        if (rules.contains(Rule.CI) && isCiPipeline(path, fileName)) {
+            return Rule.CI;
+        }
+        if (rules.contains(Rule.HELM) && isHelmChart(inputFile, path, fileName)) {
+            return Rule.HELM;
+        }
+
+        Set<String> keys = new HashSet<>();
+        for (String line : lines) {
+            if (line.startsWith("- ") || "-".equals(line)) {
+                // The root is a list: playbook or task file
+                return null;
+            }
+            Matcher matcher = TOP_LEVEL_KEY.matcher(line);
+            if (matcher.find()) {
+                keys.add(matcher.group(1).replaceAll("^[\"']|[\"']$", ""));
+            }
+        }
+        if (rules.contains(Rule.KUBERNETES) && keys.contains("apiVersion") && keys.contains("kind")) {
+            return Rule.KUBERNETES;
+        }
+        if (rules.contains(Rule.OPENAPI) && (keys.contains("openapi") || keys.contains("swagger"))) {
+            return Rule.OPENAPI;
+        }
+        if (rules.contains(Rule.CI) && keys.contains("jobs") && (keys.contains("on") || keys.contains("workflows"))) {
+            return Rule.CI;
+        }
+        return null;
+    }
+
+
+    private static boolean isAnsibleLayout(List<String> path) {
+        for (int i = 0; i < path.size() - 1; i++) {
+            String directory = path.get(i);
+            if (ANSIBLE_DIRECTORIES.contains(directory) ||
+                    "roles".equals(directory) && i + 2 < path.size() - 1 && ROLE_DIRECTORIES.contains(path.get(i + 2))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isCiPipeline(List<String> path, String fileName) {
+        String parent = (path.size() > 1) ? path.get(path.size() - 2) : "";
+        String grandParent = (path.size() > 2) ? path.get(path.size() - 3) : "";
+        return ".gitlab-ci.yml".equals(fileName) || ".travis.yml".equals(fileName) ||
+                fileName.matches("(azure|bitbucket)-pipelines\\.ya?ml") ||
+                ".github".equals(grandParent) && "workflows".equals(parent) ||
+                ".circleci".equals(parent);
+    }
+
+    private static boolean isHelmChart(InputFile inputFile, List<String> path, String fileName) {
+        if ("Chart.yaml".equals(fileName)) {
+            return true;
+        }
+        // Values files and templates of a chart
+        Path directory = Paths.get(inputFile.uri()).getParent();
+        if (path.size() > 1 && "templates".equals(path.get(path.size() - 2))) {
+            directory = directory.getParent();
+        } else if (!fileName.matches("values([.-].*)?\\.ya?ml")) {
+            return false;
+        }
+        return directory != null && Files.exists(directory.resolve("Chart.yaml"));
+    }
+
+    private static List<String> readFirstLines(InputFile inputFile) {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputFile.inputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while (lines.size() < MAX_LINES && (line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty() && !line.startsWith("#") && !"---".equals(line.trim())) {
+                    lines.add(line);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Cannot read {}: {}", inputFile.uri(), e.getMessage());
+        }
+        return lines;
+    }
+}
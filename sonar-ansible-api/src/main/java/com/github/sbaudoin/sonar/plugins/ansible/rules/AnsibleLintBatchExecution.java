@@ -0,0 +1,358 @@
+/**
+ * Copyright (c) 2018-2021, Sylvain Baudoin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.sbaudoin.sonar.plugins.ansible.rules;
+
+import com.github.sbaudoin.sonar.plugins.ansible.rules.AbstractAnsibleSensor.AnsibleLintThreadFactory;
+import com.github.sbaudoin.sonar.plugins.ansible.rules.AbstractAnsibleSensor.CommandMetrics;
+import com.github.sbaudoin.sonar.plugins.ansible.rules.AbstractAnsibleSensor.CommandTimeoutException;
+import com.github.sbaudoin.sonar.plugins.ansible.rules.AbstractAnsibleSensor.ReportedIssue;
+import com.github.sbaudoin.sonar.plugins.ansible.settings.AnsibleSettings;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.sensor.SensorContext;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Execution of {@code ansible-lint} on batches of files, one process per batch or a long-lived worker per thread.
+ * The executions may run concurrently but their results are processed in the order of the batches, by the thread that
+ * calls {@link #analyze(List)} only, so that issue registration and saving remain single-threaded. The commands are
+ * executed and their outputs are parsed by the sensor, so that the sensors that override the command execution keep
+ * doing so.
+ *
+ * @see AnsibleSettings#ANSIBLE_LINT_BATCH_SIZE_KEY
+ * @see AnsibleSettings#ANSIBLE_LINT_THREADS_KEY
+ * @see AnsibleSettings#ANSIBLE_LINT_WORKER_KEY
+ */
+final class AnsibleLintBatchExecution implements Closeable {
+    private static final Logger LOGGER = Loggers.get(AnsibleLintBatchExecution.class);
+
+    private final AbstractAnsibleSensor sensor;
+    private final SensorContext context;
+    private final List<String> baseCommand;
+    private final AnsibleLintCache cache;
+    private final Map<InputFile, String> cacheKeys;
+    private final PendingExecutions pending;
+    private final Map<URI, InputFile> filesByUri;
+    private final ExecutorService executor;
+    private final BlockingQueue<AnsibleLintWorker> workers;
+
+    /**
+     * Files skipped because {@code ansible-lint} did not complete in time on them
+     */
+    private final List<InputFile> timedOutFiles = new ArrayList<>();
+
+
+    /**
+     * Constructor. The threads and the workers are started at once.
+     *
+     * @param sensor the sensor that executes {@code ansible-lint} and registers the issues
+     * @param context the execution sensor context
+     * @param baseCommand the {@code ansible-lint} command to which the file paths will be appended
+     * @param maxBatches the maximum number of batches to be analyzed, used to start no more threads and workers than needed
+     * @param cache the cache where the issues found are stored. May be {@code null}.
+     * @param cacheKeys the cache keys of the files to be analyzed
+     * @param pending the pending executions in streaming mode, {@code null} if the issues are saved at the end
+     * @param filesByUri the files to be analyzed by URI, used in streaming mode
+     */
+    AnsibleLintBatchExecution(AbstractAnsibleSensor sensor, SensorContext context, List<String> baseCommand, int maxBatches,
+                              @Nullable AnsibleLintCache cache, Map<InputFile, String> cacheKeys,
+                              @Nullable PendingExecutions pending, Map<URI, InputFile> filesByUri) {
+        this.sensor = sensor;
+        this.context = context;
+        this.baseCommand = baseCommand;
+        this.cache = cache;
+        this.cacheKeys = cacheKeys;
+        this.pending = pending;
+        this.filesByUri = filesByUri;
+        int threads = sensor.getThreads(context);
+        executor = (threads > 1 && maxBatches > 1) ? Executors.newFixedThreadPool(threads, new AnsibleLintThreadFactory("ansible-lint-")) : null;
+        workers = startWorkers((executor == null) ? 1 : Math.min(threads, maxBatches));
+    }
+
+
+    /**
+     * Executes {@code ansible-lint} on the passed batches and registers the issues found
+     *
+     * @param batches the files to be analyzed, split into batches
+     * @return {@code false} if an execution failed and the analysis must be aborted, {@code true} otherwise
+     */
+    boolean analyze(List<List<InputFile>> batches) {
+        List<Future<Execution>> executions = new ArrayList<>();
+        if (executor != null) {
+            LOGGER.debug("Executing ansible-lint with {} threads", sensor.getThreads(context));
+            for (List<InputFile> batch : batches) {
+                executions.add(executor.submit(() -> executeAnsibleLint(batch)));
+            }
+        }
+
+        for (int i = 0; i < batches.size(); i++) {
+            List<InputFile> batch = batches.get(i);
+            for (InputFile inputFile : batch) {
+                LOGGER.debug("Analyzing file: " + inputFile.filename());
+                sensor.scannedFiles.add(inputFile);
+            }
+
+            // Execute Ansible Lint (or wait for its concurrent execution) and get a parsable output
+            Execution execution;
+            try {
+                execution = (executor == null) ? executeAnsibleLint(batch) : executions.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (IOException|ExecutionException e) {
+                return false;
+            }
+            if (execution.timedOut) {
+                // The files are skipped: their issues are neither saved nor cached
+                sensor.scannedFiles.removeAll(batch);
+                timedOutFiles.addAll(batch);
+                if (pending != null) {
+                    pending.complete(batch);
+                    sensor.releaseIssues(context, pending, filesByUri);
+                }
+                continue;
+            }
+            sensor.logErrorOutput(context, execution.error);
+            if (sensor.durations != null) {
+                sensor.durations.put(batch, execution.wallNanos);
+            }
+
+            LOGGER.debug((execution.output.size() + execution.issues.size()) + " issue(s) found");
+            // Parse output and register all issues: as ansible-lint processes only playbooks but returns issues related to
+            // used roles, we need to save all issues first before being able to get role issues and save them
+            long parseStart = System.nanoTime();
+            List<ReportedIssue> issues = new ArrayList<>(execution.issues);
+            issues.forEach(sensor::registerIssue);
+            for (String rawIssue : execution.output) {
+                ReportedIssue issue = sensor.parseIssue(rawIssue);
+                if (issue != null) {
+                    sensor.registerIssue(issue);
+                    issues.add(issue);
+                }
+            }
+            if (sensor.report != null) {
+                sensor.report.add(batch, execution.spawnNanos, execution.wallNanos, System.nanoTime() - parseStart,
+                        execution.outputBytes, issues.size());
+            }
+            if (cache != null) {
+                cache.put(batch, cacheKeys, issues);
+            }
+            if (pending != null) {
+                pending.complete(batch);
+                sensor.releaseIssues(context, pending, filesByUri);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the files skipped because {@code ansible-lint} did not complete in time on them
+     *
+     * @return the files that timed out, in the order of their executions
+     */
+    List<InputFile> getTimedOutFiles() {
+        return timedOutFiles;
+    }
+
+    /**
+     * Stops the threads and the workers
+     */
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        workers.forEach(AnsibleLintWorker::close);
+    }
+
+
+    /**
+     * Executes {@code ansible-lint} on the passed files. This method may be called concurrently.
+     *
+     * @param batch the files to be analyzed
+     * @return the outputs of the execution
+     * @throws IOException if an error occurred executing the command. See {@link AbstractAnsibleSensor#executeCommand(List, List, List)}
+     * @throws InterruptedException if an error occurred executing the command. See {@link AbstractAnsibleSensor#executeCommand(List, List, List)}
+     */
+    private Execution executeAnsibleLint(List<InputFile> batch) throws IOException, InterruptedException {
+        List<String> paths = batch.stream().map(AbstractAnsibleSensor::getAbsolutePath).collect(Collectors.toList());
+        long start = System.nanoTime();
+
+        int attempt = 1;
+        AnsibleLintWorker worker = workers.poll();
+        if (worker != null) {
+            Execution execution = new Execution();
+            // A worker that does not answer in time is killed, and the files are analyzed by a new process. The worker is
+            // not closed by the watchdog, whose thread must not wait for it to stop. Whichever of the watchdog and the
+            // current thread ends the request first wins, so that a killed worker is never given back to the pool.
+            AtomicBoolean ended = new AtomicBoolean(false);
+            ScheduledFuture<?> watchdog = (sensor.timeoutMillis > 0) ? AbstractAnsibleSensor.WATCHDOG.schedule(() -> {
+                if (ended.compareAndSet(false, true)) {
+                    worker.kill();
+                }
+            }, sensor.timeoutMillis, TimeUnit.MILLISECONDS) : null;
+            IOException failure = null;
+            try {
+                worker.lint(paths, execution.output, execution.error);
+            } catch (IOException e) {
+                failure = e;
+            }
+            boolean timedOut = !ended.compareAndSet(false, true);
+            if (watchdog != null) {
+                watchdog.cancel(false);
+            }
+            if (!timedOut && failure == null) {
+                workers.offer(worker);
+                execution.wallNanos = System.nanoTime() - start;
+                execution.outputBytes = execution.output.stream().mapToLong(line -> line.length() + 1L).sum();
+                return execution;
+            }
+            if (!timedOut) {
+                LOGGER.warn("ansible-lint worker failed, falling back to one ansible-lint process per execution: {}", failure.getMessage());
+            }
+            worker.close();
+            // The worker attempt counts as one of the attempts allowed by the timeout retries
+            if (timedOut) {
+                if (isLastAttempt(batch, attempt++)) {
+                    return timedOutExecution();
+                }
+                start = System.nanoTime();
+            }
+        }
+
+        List<String> command = new ArrayList<>(baseCommand);
+        command.addAll(paths);
+        for (; ; attempt++) {
+            try {
+                return executeAnsibleLintProcess(command, start);
+            } catch (CommandTimeoutException e) {
+                if (isLastAttempt(batch, attempt)) {
+                    return timedOutExecution();
+                }
+                start = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * Logs that an execution of {@code ansible-lint} timed out and tells if it may be retried
+     *
+     * @param batch the files analyzed by the execution
+     * @param attempt the number of the attempt that timed out, starting from 1
+     * @return {@code true} if all the attempts allowed by the timeout retries have been made, {@code false} otherwise
+     */
+    private boolean isLastAttempt(List<InputFile> batch, int attempt) {
+        LOGGER.warn("ansible-lint timed out after {} s on {} (attempt {}/{})", TimeUnit.MILLISECONDS.toSeconds(sensor.timeoutMillis),
+                batch.stream().map(sensor::getRelativePath).collect(Collectors.joining(", ")), attempt, sensor.timeoutRetries + 1);
+        return attempt > sensor.timeoutRetries;
+    }
+
+    private static Execution timedOutExecution() {
+        Execution execution = new Execution();
+        execution.timedOut = true;
+        return execution;
+    }
+
+    /**
+     * Executes an {@code ansible-lint} process
+     *
+     * @param command the {@code ansible-lint} command, with the paths of the files to be analyzed
+     * @param start the start time of the execution, as returned by {@link System#nanoTime()}
+     * @return the outputs of the execution
+     * @throws CommandTimeoutException if the process did not complete in time
+     * @throws IOException if an error occurred executing the command. See {@link AbstractAnsibleSensor#executeCommand(List, List, List)}
+     * @throws InterruptedException if an error occurred executing the command. See {@link AbstractAnsibleSensor#executeCommand(List, List, List)}
+     */
+    private Execution executeAnsibleLintProcess(List<String> command, long start) throws IOException, InterruptedException {
+        Execution execution = new Execution();
+        CommandMetrics metrics = AbstractAnsibleSensor.COMMAND_METRICS.get();
+        metrics.reset();
+        if (sensor.outputFormat == null) {
+            sensor.executeCommand(command, execution.output, execution.error);
+        } else {
+            // Structured output: issues are parsed while the output is read
+            AnsibleLintJsonReader jsonReader = new AnsibleLintJsonReader(
+                    "sarif".equals(sensor.outputFormat) ? AnsibleLintJsonReader.Format.SARIF : AnsibleLintJsonReader.Format.CODECLIMATE,
+                    (path, issue) -> execution.issues.add(new ReportedIssue(sensor.resolveFile(path), issue)));
+            sensor.executeStreamingCommand(command, jsonReader::read, execution.error);
+        }
+        execution.wallNanos = System.nanoTime() - start;
+        execution.spawnNanos = metrics.spawnNanos;
+        execution.outputBytes = metrics.outputBytes;
+        return execution;
+    }
+
+    /**
+     * Starts the long-lived {@code ansible-lint} workers if requested in the plugin settings
+     *
+     * @param count the number of workers to start
+     * @return the started workers, an empty queue if the workers are disabled or if they are not compatible with the
+     * installed {@code ansible-lint}
+     * @see AnsibleSettings#ANSIBLE_LINT_WORKER_KEY
+     */
+    private BlockingQueue<AnsibleLintWorker> startWorkers(int count) {
+        BlockingQueue<AnsibleLintWorker> startedWorkers = new LinkedBlockingQueue<>();
+        if (!context.config().getBoolean(AnsibleSettings.ANSIBLE_LINT_WORKER_KEY).orElse(false)) {
+            return startedWorkers;
+        }
+
+        try {
+            Path shim = AnsibleLintWorker.extractShim(sensor.fileSystem.workDir().toPath());
+            List<String> command = new ArrayList<>(Arrays.asList(sensor.getPythonPath(context), shim.toString()));
+            command.addAll(baseCommand.subList(1, baseCommand.size()));
+            for (int i = 0; i < count; i++) {
+                startedWorkers.add(new AnsibleLintWorker(command, sensor.fileSystem.baseDir(), sensor.timeoutMillis));
+            }
+            LOGGER.debug("{} ansible-lint worker(s) started", count);
+        } catch (IOException e) {
+            LOGGER.warn("Cannot use the ansible-lint worker, falling back to one ansible-lint process per execution: {}", e.getMessage());
+            startedWorkers.forEach(AnsibleLintWorker::close);
+            startedWorkers.clear();
+        }
+        return startedWorkers;
+    }
+
+
+    /**
+     * Outputs of an {@code ansible-lint} execution
+     */
+    private static final class Execution {
+        private final List<ReportedIssue> issues = new ArrayList<>();
+        private final List<String> output = new ArrayList<>();
+        private final List<String> error = new ArrayList<>();
+        private long spawnNanos = 0;
+        private long wallNanos = 0;
+        private long outputBytes = 0;
+        private boolean timedOut = false;
+    }
+}
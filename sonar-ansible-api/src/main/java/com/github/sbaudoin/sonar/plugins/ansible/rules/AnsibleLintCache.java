@@ -0,0 +1,305 @@
+/**
+ * Copyright (c) 2018-2021, Sylvain Baudoin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.sbaudoin.sonar.plugins.ansible.rules;
+
+import com.github.sbaudoin.sonar.plugins.ansible.rules.AbstractAnsibleSensor.AnsibleLintIssue;
+import com.github.sbaudoin.sonar.plugins.ansible.rules.AbstractAnsibleSensor.ReportedIssue;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Persistent cache of the issues found by {@code ansible-lint}. For each analyzed file, the cache stores the issues
+ * reported by the {@code ansible-lint} execution of this file (including the issues reported on other files, such as
+ * the roles used by a playbook). An entry is only valid for the same file content and the same configuration key, that
+ * covers the {@code ansible-lint} version, its command line and its configuration. As the issues reported on other files
+ * are cached, the key of an entry must also cover the files the analyzed file depends on (see
+ * {@link AnsibleDependencyGraph#getDependenciesKey(Path)}).
+ */
+final class AnsibleLintCache {
+    private static final Logger LOGGER = Loggers.get(AnsibleLintCache.class);
+
+    private static final int FORMAT_VERSION = 2;
+
+
+    private final Path file;
+    private final URI baseDir;
+    private final String configurationKey;
+    private Map<String, Entry> previousEntries = new HashMap<>();
+    private final Map<String, Entry> entries = new HashMap<>();
+    private int hits = 0;
+    private int misses = 0;
+
+
+    /**
+     * Constructor
+     *
+     * @param file the file where the cache is persisted
+     * @param baseDir the project base directory, used to store relative paths
+     * @param configurationKey the key of the current {@code ansible-lint} configuration
+     */
+    AnsibleLintCache(Path file, File baseDir, String configurationKey) {
+        this.file = file;
+        this.baseDir = baseDir.toURI();
+        this.configurationKey = configurationKey;
+    }
+
+
+    /**
+     * Loads the cache from its file. A missing or unreadable file results in an empty cache.
+     */
+    void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                return;
+            }
+            Map<String, Entry> loaded = new HashMap<>();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                String key = in.readUTF();
+                int issueCount = in.readInt();
+                List<ReportedIssue> issues = new ArrayList<>(issueCount);
+                for (int j = 0; j < issueCount; j++) {
+                    URI issueFile = baseDir.resolve(in.readUTF());
+                    int line = in.readInt();
+                    int column = in.readInt();
+                    String id = in.readUTF();
+                    String message = in.readBoolean() ? in.readUTF() : null;
+                    issues.add(new ReportedIssue(issueFile, new AnsibleLintIssue(line, column, id, message)));
+                }
+                loaded.put(path, new Entry(key, issues));
+            }
+            previousEntries = loaded;
+        } catch (IOException e) {
+            LOGGER.warn("Cannot read ansible-lint cache {}, ignoring it: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Saves the cache to its file. Only the entries used or updated since the cache was loaded are kept.
+     */
+    void save() {
+        try {
+            Files.createDirectories(file.getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(entries.size());
+                for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeUTF(entry.getValue().key);
+                    out.writeInt(entry.getValue().issues.size());
+                    for (ReportedIssue issue : entry.getValue().issues) {
+                        out.writeUTF(baseDir.relativize(issue.getFile()).toString());
+                        out.writeInt(issue.getIssue().getLine());
+                        out.writeInt(issue.getIssue().getColumn());
+                        out.writeUTF(issue.getIssue().getId());
+                        out.writeBoolean(issue.getIssue().getMessage() != null);
+                        if (issue.getIssue().getMessage() != null) {
+                            out.writeUTF(issue.getIssue().getMessage());
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Cannot write ansible-lint cache {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the cache key of the passed file, computed from its content and from the configuration key
+     *
+     * @param inputFile a file to be analyzed
+     * @return the cache key of the file
+     * @throws IOException if the file cannot be read
+     */
+    String getKey(InputFile inputFile) throws IOException {
+        return getKey(inputFile, null);
+    }
+
+    /**
+     * Returns the cache key of the passed file, computed from its content, from the configuration key and from the key
+     * of the files it depends on
+     *
+     * @param inputFile a file to be analyzed
+     * @param dependenciesKey a key that changes when one of the files the file depends on (such as the roles used by a
+     *                        playbook) changes. May be {@code null}.
+     * @return the cache key of the file
+     * @throws IOException if the file cannot be read
+     */
+    String getKey(InputFile inputFile, @Nullable String dependenciesKey) throws IOException {
+        MessageDigest digest = newDigest();
+        digest.update(configurationKey.getBytes(StandardCharsets.UTF_8));
+        if (dependenciesKey != null) {
+            digest.update(dependenciesKey.getBytes(StandardCharsets.UTF_8));
+        }
+        try (InputStream in = inputFile.inputStream()) {
+            update(digest, in);
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Returns the cached issues of the passed file
+     *
+     * @param inputFile an analyzed file
+     * @param key the current cache key of the file
+     * @return the issues found by the last {@code ansible-lint} execution of the file, or {@code null} if the file was
+     * not analyzed with the same key
+     */
+    List<ReportedIssue> get(InputFile inputFile, String key) {
+        String path = getPath(inputFile.uri());
+        Entry entry = previousEntries.get(path);
+        if (entry == null || !entry.key.equals(key)) {
+            misses++;
+            return null;
+        }
+        hits++;
+        entries.put(path, entry);
+        return entry.issues;
+    }
+
+    /**
+     * Stores the issues found by an {@code ansible-lint} execution of the passed files. The issues found on a file of
+     * the batch are stored for this file; the issues found on files out of the batch (typically the roles used by a
+     * playbook) are stored for every file of the batch.
+     *
+     * @param batch the analyzed files
+     * @param keys the cache keys of the analyzed files
+     * @param issues the issues found by the {@code ansible-lint} execution
+     */
+    void put(List<InputFile> batch, Map<InputFile, String> keys, List<ReportedIssue> issues) {
+        Set<URI> batchFiles = batch.stream().map(InputFile::uri).collect(Collectors.toSet());
+        List<ReportedIssue> foreignIssues = issues.stream().filter(issue -> !batchFiles.contains(issue.getFile())).collect(Collectors.toList());
+        for (InputFile inputFile : batch) {
+            String key = keys.get(inputFile);
+            if (key == null) {
+                continue;
+            }
+            List<ReportedIssue> fileIssues = Stream.concat(
+                    issues.stream().filter(issue -> issue.getFile().equals(inputFile.uri())),
+                    foreignIssues.stream()).collect(Collectors.toList());
+            entries.put(getPath(inputFile.uri()), new Entry(key, fileIssues));
+        }
+    }
+
+    int getHits() {
+        return hits;
+    }
+
+    int getMisses() {
+        return misses;
+    }
+
+    /**
+     * Computes a configuration key from the passed values. Values that are paths to existing files or directories
+     * (such as the configuration file or the extra rules directories) are replaced with a hash of their content, so
+     * that the key does not depend on the location of temporary directories.
+     *
+     * @param baseDir the directory against which relative paths are resolved
+     * @param values the values that identify the configuration
+     * @return the configuration key
+     * @throws IOException if a file or directory cannot be read
+     */
+    static String getConfigurationKey(File baseDir, List<String> values) throws IOException {
+        MessageDigest digest = newDigest();
+        for (String value : values) {
+            File file = new File(value).isAbsolute() ? new File(value) : new File(baseDir, value);
+            if (!value.isEmpty() && !value.startsWith("-") && file.exists()) {
+                updateWithContent(digest, file.toPath());
+            } else {
+                digest.update(value.getBytes(StandardCharsets.UTF_8));
+            }
+            digest.update((byte)0);
+        }
+        return toHex(digest.digest());
+    }
+
+
+    private String getPath(URI uri) {
+        return baseDir.relativize(uri).toString();
+    }
+
+    private static void updateWithContent(MessageDigest digest, Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            List<Path> children;
+            try (Stream<Path> stream = Files.list(path)) {
+                children = stream.sorted().collect(Collectors.toList());
+            }
+            for (Path child : children) {
+                digest.update(child.getFileName().toString().getBytes(StandardCharsets.UTF_8));
+                updateWithContent(digest, child);
+            }
+        } else {
+            try (InputStream in = Files.newInputStream(path)) {
+                update(digest, in);
+            }
+        }
+    }
+
+    private static void update(MessageDigest digest, InputStream in) throws IOException {
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not supported", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+
+    /**
+     * Issues cached for a file
+     */
+    private static final class Entry {
+        private final String key;
+        private final List<ReportedIssue> issues;
+
+        private Entry(String key, List<ReportedIssue> issues) {
+            this.key = key;
+            this.issues = issues;
+        }
+    }
+}
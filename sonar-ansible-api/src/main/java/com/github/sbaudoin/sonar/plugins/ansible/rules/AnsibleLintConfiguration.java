@@ -0,0 +1,177 @@
+/**
+ * Copyright (c) 2018-2021, Sylvain Baudoin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.sbaudoin.sonar.plugins.ansible.rules;
+
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.error.YAMLException;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Effective {@code ansible-lint} configuration that restricts {@code ansible-lint} to the rules active in the quality
+ * profile, so that it does not spend time on rules whose issues would be dropped. The rules are selected with the
+ * {@code tags} key (the {@code -t} option), and enabled with the {@code enable_list} key as of {@code ansible-lint} 5
+ * so that the active opt-in rules are checked. The configuration of the user is merged into the generated one; if it
+ * already selects rules with {@code tags}, its selection is kept and {@code ansible-lint} is not restricted.
+ * <p>
+ * Generated configurations are named after the hash of the active rules, of the user configuration and of the
+ * {@code ansible-lint} version: a configuration is only generated once per quality profile.
+ * </p>
+ */
+final class AnsibleLintConfiguration {
+    private static final Logger LOGGER = Loggers.get(AnsibleLintConfiguration.class);
+
+    /**
+     * Keys of the configuration whose paths are relative to the directory of the configuration file
+     */
+    private static final List<String> PATH_KEYS = Arrays.asList("exclude_paths", "rulesdir");
+
+
+    /**
+     * Hide constructor
+     */
+    private AnsibleLintConfiguration() {
+    }
+
+
+    /**
+     * Returns the effective configuration for the passed active rules, generating it if needed
+     *
+     * @param directory the directory where the generated configurations are kept
+     * @param userConfiguration the configuration file of the user, {@code null} if none
+     * @param ruleIds the ids of the active rules
+     * @param version the major and minor versions of {@code ansible-lint}, {@code null} if unknown
+     * @return the path to the effective configuration file
+     * @throws IOException if the configuration cannot be generated
+     */
+    static Path get(Path directory, @Nullable Path userConfiguration, Collection<String> ruleIds, @Nullable int[] version) throws IOException {
+        boolean enableList = version == null || version[0] >= 5;
+        List<String> ids = ruleIds.stream()
+                // ansible-lint 4 identifies its rules without the heading E of the codes it reports (e.g. 303 for E303)
+                .map(id -> (!enableList && id.matches("E[0-9]+")) ? id.substring(1) : id)
+                .sorted()
+                .distinct()
+                .collect(Collectors.toList());
+        byte[] userContent = (userConfiguration == null) ? new byte[0] : Files.readAllBytes(userConfiguration);
+        Map<String, Object> userKeys = (userConfiguration == null) ? Collections.emptyMap() : load(userConfiguration, userContent);
+        if (userKeys.containsKey("tags")) {
+            LOGGER.warn("Tags set in the ansible-lint configuration {}, ansible-lint is not restricted to the active rules", userConfiguration);
+        } else {
+            LOGGER.info("ansible-lint restricted to the {} active rule(s)", ruleIds.size());
+        }
+
+        MessageDigest digest = newDigest();
+        digest.update(String.valueOf(enableList).getBytes(StandardCharsets.UTF_8));
+        for (String id : ids) {
+            digest.update((byte)0);
+            digest.update(id.getBytes(StandardCharsets.UTF_8));
+        }
+        digest.update((byte)0);
+        digest.update(String.valueOf(userConfiguration).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte)0);
+        digest.update(userContent);
+        Path file = directory.resolve(toHex(digest.digest()) + ".yml");
+        if (Files.exists(file)) {
+            LOGGER.debug("Using the effective ansible-lint configuration {}", file);
+            return file;
+        }
+
+        Map<String, Object> configuration = new LinkedHashMap<>(userKeys);
+        if (!configuration.containsKey("tags")) {
+            configuration.put("tags", ids);
+        }
+        if (enableList) {
+            Set<Object> enabled = new LinkedHashSet<>(asList(configuration.get("enable_list")));
+            enabled.addAll(ids);
+            configuration.put("enable_list", new ArrayList<>(enabled));
+        }
+
+        DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, "config", ".tmp");
+        try (Writer out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            new Yaml(options).dump(configuration, out);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        LOGGER.debug("Effective ansible-lint configuration generated: {}", file);
+        return file;
+    }
+
+
+    private static Map<String, Object> load(Path userConfiguration, byte[] content) {
+        Map<String, Object> configuration = new LinkedHashMap<>();
+        Object document;
+        try {
+            document = new Yaml().load(new String(content, StandardCharsets.UTF_8));
+        } catch (YAMLException e) {
+            LOGGER.warn("Cannot parse ansible-lint configuration {}, ignoring it: {}", userConfiguration, e.getMessage());
+            return configuration;
+        }
+        if (!(document instanceof Map)) {
+            return configuration;
+        }
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>)document).entrySet()) {
+            String key = String.valueOf(entry.getKey());
+            Object value = entry.getValue();
+            if (PATH_KEYS.contains(key)) {
+                // The generated configuration is not in the directory of the user configuration
+                Path parent = userConfiguration.toAbsolutePath().getParent();
+                value = asList(value).stream()
+                        .map(path -> parent.resolve(String.valueOf(path)).normalize().toString())
+                        .collect(Collectors.toList());
+            }
+            configuration.put(key, value);
+        }
+        return configuration;
+    }
+
+    private static List<?> asList(@Nullable Object value) {
+        if (value == null) {
+            return Collections.emptyList();
+        }
+        return (value instanceof List) ? (List<?>)value : Collections.singletonList(value);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not supported", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
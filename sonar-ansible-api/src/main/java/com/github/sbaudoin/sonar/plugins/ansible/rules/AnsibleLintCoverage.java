@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2018-2021, Sylvain Baudoin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.sbaudoin.sonar.plugins.ansible.rules;
+
+import org.sonar.api.batch.fs.InputFile;
+
+import javax.annotation.Nullable;
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Selection of the files passed to {@code ansible-lint} in the coverage-aware and entry-point modes. The files used by
+ * other files (coverage-aware mode) or all the files but the entry-point playbooks (entry-point mode) are deferred, and
+ * only the deferred files that the first executions did not cover are analyzed afterwards.
+ *
+ * @see com.github.sbaudoin.sonar.plugins.ansible.settings.AnsibleSettings#ANSIBLE_LINT_SKIP_COVERED_FILES_KEY
+ * @see com.github.sbaudoin.sonar.plugins.ansible.settings.AnsibleSettings#ANSIBLE_LINT_ENTRY_POINTS_KEY
+ */
+final class AnsibleLintCoverage {
+    private final AnsibleDependencyGraph graph;
+    private final boolean entryPoints;
+
+
+    /**
+     * Constructor
+     *
+     * @param graph the dependency graph of the analyzed files. May be {@code null} in coverage-aware mode, in which case
+     *              the files located in a {@code roles} directory are considered used by the playbooks.
+     * @param entryPoints {@code true} for the entry-point mode, {@code false} for the coverage-aware mode
+     */
+    AnsibleLintCoverage(@Nullable AnsibleDependencyGraph graph, boolean entryPoints) {
+        this.graph = graph;
+        this.entryPoints = entryPoints;
+    }
+
+
+    /**
+     * Returns the files whose analysis must be deferred
+     *
+     * @param filesToAnalyze the files to be analyzed
+     * @param inputFiles all the files of the analysis, used to find the files used by other files
+     * @return the deferred files, in the order of the files to be analyzed
+     */
+    List<InputFile> getDeferredFiles(List<InputFile> filesToAnalyze, List<InputFile> inputFiles) {
+        Set<Path> usedFiles = (graph == null) ? null : getUsedFiles(inputFiles);
+        return filesToAnalyze.stream()
+                .filter(inputFile -> entryPoints ? !isEntryPoint(inputFile, usedFiles) : isUsedByOtherFiles(inputFile, usedFiles))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the passed files that have already been covered by previous {@code ansible-lint} executions. If the
+     * dependency graph is available, a file is covered when it is used by an analyzed file; otherwise a file is
+     * covered when issues have already been reported on it.
+     *
+     * @param inputFiles the files to be checked
+     * @param scannedFiles the files already analyzed
+     * @param issues the issues already found, by file URI
+     * @return the covered files
+     */
+    Set<InputFile> getCoveredFiles(List<InputFile> inputFiles, Collection<InputFile> scannedFiles, Map<URI, ?> issues) {
+        Set<InputFile> covered = new LinkedHashSet<>();
+        if (graph == null) {
+            inputFiles.stream().filter(inputFile -> issues.containsKey(inputFile.uri())).forEach(covered::add);
+        } else {
+            Set<Path> reached = new HashSet<>();
+            scannedFiles.forEach(inputFile -> reached.addAll(graph.getDependencies(getPath(inputFile))));
+            inputFiles.stream().filter(inputFile -> reached.contains(getPath(inputFile))).forEach(covered::add);
+        }
+        return covered;
+    }
+
+
+    /**
+     * Tells if the passed file is an entry point, i.e. a playbook that no other file uses (imports)
+     *
+     * @param inputFile a file to be analyzed
+     * @param usedFiles the files used by other files as given by the dependency graph
+     * @return {@code true} if the file is a top-level playbook
+     */
+    private boolean isEntryPoint(InputFile inputFile, Set<Path> usedFiles) {
+        Path path = getPath(inputFile);
+        return graph.isPlaybook(path) && !usedFiles.contains(path);
+    }
+
+    /**
+     * Returns the files used by the passed files, i.e. the files they depend on, directly or not, except themselves
+     *
+     * @param inputFiles the files to be analyzed
+     * @return the paths of the files used by other files
+     */
+    private Set<Path> getUsedFiles(List<InputFile> inputFiles) {
+        Set<Path> usedFiles = new HashSet<>();
+        for (InputFile inputFile : inputFiles) {
+            Path path = getPath(inputFile);
+            graph.getDependencies(path).stream().filter(dependency -> !dependency.equals(path)).forEach(usedFiles::add);
+        }
+        return usedFiles;
+    }
+
+    /**
+     * Tells if the passed file is used by other files. If the dependency graph is not available, the files located in
+     * a {@code roles} directory are considered used by the playbooks.
+     *
+     * @param inputFile a file to be analyzed
+     * @param usedFiles the files used by other files as given by the dependency graph. May be {@code null}.
+     * @return {@code true} if another file depends on the passed file
+     */
+    private static boolean isUsedByOtherFiles(InputFile inputFile, @Nullable Set<Path> usedFiles) {
+        Path path = getPath(inputFile);
+        if (usedFiles != null) {
+            return usedFiles.contains(path);
+        }
+        for (Path parent = path.getParent(); parent != null && parent.getFileName() != null; parent = parent.getParent()) {
+            if ("roles".equals(parent.getFileName().toString())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Path getPath(InputFile inputFile) {
+        return Paths.get(inputFile.uri());
+    }
+}
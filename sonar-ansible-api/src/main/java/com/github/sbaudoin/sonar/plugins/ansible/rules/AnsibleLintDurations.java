@@ -0,0 +1,162 @@
+/**
+ * Copyright (c) 2018-2021, Sylvain Baudoin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.sbaudoin.sonar.plugins.ansible.rules;
+
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import java.io.*;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Persistent record of the {@code ansible-lint} duration of each file, used to schedule the longest executions first
+ * (longest processing time first heuristic): when executions run concurrently, a long execution started last would
+ * stretch the total analysis time. The duration of a file that has never been analyzed is estimated from its size.
+ */
+final class AnsibleLintDurations {
+    private static final Logger LOGGER = Loggers.get(AnsibleLintDurations.class);
+
+    private static final int FORMAT_VERSION = 1;
+
+
+    private final Path file;
+    private final URI baseDir;
+    private final Map<String, Long> durations = new HashMap<>();
+
+
+    /**
+     * Constructor. The durations are loaded from the passed file if it exists.
+     *
+     * @param file the file where the durations are persisted
+     * @param baseDir the project base directory, used to store relative paths
+     */
+    AnsibleLintDurations(Path file, File baseDir) {
+        this.file = file;
+        this.baseDir = baseDir.toURI();
+        load();
+    }
+
+
+    /**
+     * Sorts the passed files by decreasing expected duration. Files whose duration is unknown get the duration of
+     * the known files of the same size, i.e. their size multiplied by the average duration per byte of the known files.
+     *
+     * @param files the files to be sorted
+     */
+    void sort(List<InputFile> files) {
+        Map<InputFile, Long> sizes = new HashMap<>();
+        long knownDuration = 0;
+        long knownSize = 0;
+        for (InputFile inputFile : files) {
+            long size = getSize(inputFile);
+            sizes.put(inputFile, size);
+            Long duration = durations.get(getPath(inputFile));
+            if (duration != null) {
+                knownDuration += duration;
+                knownSize += size;
+            }
+        }
+        double nanosPerByte = (knownSize > 0) ? (double)knownDuration / knownSize : 1;
+        Map<InputFile, Double> costs = new HashMap<>();
+        for (InputFile inputFile : files) {
+            Long duration = durations.get(getPath(inputFile));
+            costs.put(inputFile, (duration != null) ? duration : sizes.get(inputFile) * nanosPerByte);
+        }
+        files.sort(Comparator.comparing(costs::get, Comparator.reverseOrder()));
+    }
+
+    /**
+     * Records the duration of an {@code ansible-lint} execution. The duration is shared equally by the files of the
+     * execution.
+     *
+     * @param batch the files analyzed by the execution
+     * @param wallNanos the duration of the execution
+     */
+    void put(List<InputFile> batch, long wallNanos) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long duration = wallNanos / batch.size();
+        batch.forEach(inputFile -> durations.put(getPath(inputFile), duration));
+    }
+
+    /**
+     * Returns the recorded duration of a file
+     *
+     * @param inputFile a file
+     * @return the duration in nanoseconds or {@code null} if unknown
+     */
+    Long get(InputFile inputFile) {
+        return durations.get(getPath(inputFile));
+    }
+
+    /**
+     * Saves the durations. The durations of the files that do not exist anymore are dropped.
+     */
+    void save() {
+        durations.keySet().removeIf(path -> !Files.exists(Paths.get(baseDir.resolve(path))));
+        try {
+            Files.createDirectories(file.getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(durations.size());
+                for (Map.Entry<String, Long> entry : durations.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(entry.getValue());
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Cannot write ansible-lint durations {}: {}", file, e.getMessage());
+        }
+    }
+
+
+    private void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                return;
+            }
+            Map<String, Long> loaded = new HashMap<>();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                loaded.put(in.readUTF(), in.readLong());
+            }
+            durations.putAll(loaded);
+        } catch (IOException e) {
+            LOGGER.warn("Cannot read ansible-lint durations {}, ignoring them: {}", file, e.getMessage());
+        }
+    }
+
+    private String getPath(InputFile inputFile) {
+        return baseDir.relativize(inputFile.uri()).toString();
+    }
+
+    private static long getSize(InputFile inputFile) {
+        try {
+            return Files.size(Paths.get(inputFile.uri()));
+        } catch (IOException|IllegalArgumentException e) {
+            return 0;
+        }
+    }
+}
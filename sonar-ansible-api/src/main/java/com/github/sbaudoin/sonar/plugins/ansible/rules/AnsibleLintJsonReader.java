@@ -0,0 +1,385 @@
+/**
+ * Copyright (c) 2018-2021, Sylvain Baudoin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.sbaudoin.sonar.plugins.ansible.rules;
+
+import com.github.sbaudoin.sonar.plugins.ansible.rules.AbstractAnsibleSensor.AnsibleLintIssue;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URI;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Streaming reader of the JSON outputs of {@code ansible-lint} ({@code -f json}, {@code -f codeclimate} and
+ * {@code -f sarif}). The output is parsed as it is read: each issue is passed to the handler as soon as its JSON object
+ * is complete, and only this object is kept in memory, not the whole output.
+ */
+final class AnsibleLintJsonReader {
+    private static final Logger LOGGER = Loggers.get(AnsibleLintJsonReader.class);
+
+    private static final String ARRAY_ITEM = "[]";
+
+    /**
+     * Supported JSON formats
+     */
+    enum Format {
+        /**
+         * Code Climate format, used by {@code -f json} and {@code -f codeclimate}: an array of issues
+         */
+        CODECLIMATE(ARRAY_ITEM),
+        /**
+         * SARIF format, used by {@code -f sarif}: the issues are the results of the runs
+         */
+        SARIF("runs", ARRAY_ITEM, "results", ARRAY_ITEM);
+
+        private final List<String> issuePath;
+
+        Format(String... issuePath) {
+            this.issuePath = Arrays.asList(issuePath);
+        }
+    }
+
+    /**
+     * Receiver of the issues read
+     */
+    @FunctionalInterface
+    interface IssueHandler {
+        /**
+         * Handles an issue
+         *
+         * @param path the path of the file where the issue was found, as reported by {@code ansible-lint}
+         * @param issue the issue
+         */
+        void handle(String path, AnsibleLintIssue issue);
+    }
+
+
+    private final Format format;
+    private final IssueHandler handler;
+    private final Deque<String> path = new ArrayDeque<>();
+    private Reader reader;
+    private int next;
+
+
+    /**
+     * Constructor
+     *
+     * @param format the format of the output to be read
+     * @param handler the receiver of the issues
+     */
+    AnsibleLintJsonReader(Format format, IssueHandler handler) {
+        this.format = format;
+        this.handler = handler;
+    }
+
+
+    /**
+     * Reads the passed output until its end. If the output is not valid JSON, a warning is logged and the rest of the
+     * output is ignored; the issues read before the error are kept.
+     *
+     * @param reader the output of {@code ansible-lint}
+     * @throws IOException if the output cannot be read
+     */
+    void read(Reader reader) throws IOException {
+        this.reader = (reader instanceof BufferedReader) ? reader : new BufferedReader(reader);
+        path.clear();
+        try {
+            next = reader.read();
+            skipWhitespace();
+            if (next == -1) {
+                // No output at all: no issue
+                return;
+            }
+            readValue(false);
+            skipWhitespace();
+            if (next != -1) {
+                throw error("end of output");
+            }
+        } catch (JsonSyntaxException e) {
+            LOGGER.warn("Invalid ansible-lint {} output, ignoring the rest of the output: {}", format.name().toLowerCase(Locale.ENGLISH), e.getMessage());
+            while (this.reader.read() != -1) {
+                // Drain the output so that the process does not block
+            }
+        }
+    }
+
+
+    /**
+     * Reads a JSON value. Objects and arrays are only built if requested, or if they are issues; other values are
+     * parsed and dropped.
+     */
+    private Object readValue(boolean build) throws IOException {
+        skipWhitespace();
+        switch (next) {
+            case '{':
+                return readObject(build);
+            case '[':
+                return readArray(build);
+            case '"':
+                return readString();
+            case 't':
+                expect("true");
+                return Boolean.TRUE;
+            case 'f':
+                expect("false");
+                return Boolean.FALSE;
+            case 'n':
+                expect("null");
+                return null;
+            default:
+                return readNumber();
+        }
+    }
+
+    private Map<String, Object> readObject(boolean build) throws IOException {
+        Map<String, Object> object = build ? new HashMap<>() : null;
+        consume('{');
+        skipWhitespace();
+        if (next == '}') {
+            consume('}');
+            return object;
+        }
+        while (true) {
+            skipWhitespace();
+            String key = readString();
+            skipWhitespace();
+            consume(':');
+            path.addLast(key);
+            Object value = readValue(build);
+            path.removeLast();
+            if (build) {
+                object.put(key, value);
+            }
+            skipWhitespace();
+            if (next == ',') {
+                consume(',');
+            } else {
+                consume('}');
+                return object;
+            }
+        }
+    }
+
+    private List<Object> readArray(boolean build) throws IOException {
+        List<Object> array = build ? new ArrayList<>() : null;
+        consume('[');
+        skipWhitespace();
+        if (next == ']') {
+            consume(']');
+            return array;
+        }
+        while (true) {
+            path.addLast(ARRAY_ITEM);
+            if (!build && path.size() == format.issuePath.size() && format.issuePath.equals(new ArrayList<>(path))) {
+                Object issue = readValue(true);
+                if (issue instanceof Map) {
+                    handleIssue((Map<?, ?>)issue);
+                }
+            } else {
+                Object value = readValue(build);
+                if (build) {
+                    array.add(value);
+                }
+            }
+            path.removeLast();
+            skipWhitespace();
+            if (next == ',') {
+                consume(',');
+            } else {
+                consume(']');
+                return array;
+            }
+        }
+    }
+
+    private String readString() throws IOException {
+        consume('"');
+        StringBuilder sb = new StringBuilder();
+        while (next != '"') {
+            if (next == -1) {
+                throw error("end of string");
+            }
+            if (next == '\\') {
+                next = reader.read();
+                switch (next) {
+                    case 'b': sb.append('\b'); break;
+                    case 'f': sb.append('\f'); break;
+                    case 'n': sb.append('\n'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'u':
+                        char[] hex = new char[4];
+                        for (int i = 0; i < 4; i++) {
+                            hex[i] = (char)reader.read();
+                        }
+                        try {
+                            sb.append((char)Integer.parseInt(new String(hex), 16));
+                        } catch (NumberFormatException e) {
+                            throw error("unicode escape sequence");
+                        }
+                        break;
+                    case -1:
+                        throw error("escape sequence");
+                    default:
+                        sb.append((char)next);
+                }
+            } else {
+                sb.append((char)next);
+            }
+            next = reader.read();
+        }
+        consume('"');
+        return sb.toString();
+    }
+
+    private Number readNumber() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        while (next != -1 && "+-0123456789.eE".indexOf(next) >= 0) {
+            sb.append((char)next);
+            next = reader.read();
+        }
+        if (sb.length() == 0) {
+            throw error("value");
+        }
+        try {
+            String number = sb.toString();
+            return (number.contains(".") || number.contains("e") || number.contains("E")) ? (Number)Double.valueOf(number) : (Number)Long.valueOf(number);
+        } catch (NumberFormatException e) {
+            throw error("number");
+        }
+    }
+
+    private void expect(String literal) throws IOException {
+        for (int i = 0; i < literal.length(); i++) {
+            consume(literal.charAt(i));
+        }
+    }
+
+    private void consume(char c) throws IOException {
+        if (next != c) {
+            throw error("'" + c + "'");
+        }
+        next = reader.read();
+    }
+
+    private void skipWhitespace() throws IOException {
+        while (next == ' ' || next == '\t' || next == '\n' || next == '\r') {
+            next = reader.read();
+        }
+    }
+
+    private JsonSyntaxException error(String expected) {
+        return new JsonSyntaxException("expected " + expected + " but found " + ((next == -1) ? "end of output" : ("'" + (char)next + "'")));
+    }
+
+
+    private void handleIssue(Map<?, ?> issue) {
+        String file;
+        String id;
+        String message;
+        int line;
+        int column;
+        if (format == Format.SARIF) {
+            id = asString(issue.get("ruleId"));
+            message = asString(get(issue, "message", "text"));
+            Object location = issue.get("locations") instanceof List && !((List<?>)issue.get("locations")).isEmpty() ? ((List<?>)issue.get("locations")).get(0) : null;
+            file = asString(get(location, "physicalLocation", "artifactLocation", "uri"));
+            line = asInt(get(location, "physicalLocation", "region", "startLine"));
+            column = asInt(get(location, "physicalLocation", "region", "startColumn"));
+        } else {
+            id = asString(issue.get("check_name"));
+            message = asString(issue.get("description"));
+            file = asString(get(issue, "location", "path"));
+            Object begin = get(issue, "location", "lines", "begin");
+            if (begin instanceof Map) {
+                line = asInt(((Map<?, ?>)begin).get("line"));
+                column = asInt(((Map<?, ?>)begin).get("column"));
+            } else if (begin != null) {
+                line = asInt(begin);
+                column = 0;
+            } else {
+                line = asInt(get(issue, "location", "positions", "begin", "line"));
+                column = asInt(get(issue, "location", "positions", "begin", "column"));
+            }
+        }
+
+        if (id == null || file == null) {
+            LOGGER.warn("Invalid issue, ignoring: {}", issue);
+            return;
+        }
+        handler.handle(toPath(file), new AnsibleLintIssue(Math.max(1, line), column, getRuleId(id), message));
+    }
+
+    /**
+     * Returns the rule id from a check name. The check name may be the rule id followed by the message and enclosed
+     * in brackets ({@code [id] message}, ansible-lint 5) or a tag made of the rule id and a sub-rule
+     * ({@code id[subrule]}, ansible-lint 6); in both cases the rule id is returned.
+     */
+    static String getRuleId(String checkName) {
+        String id = checkName;
+        if (id.startsWith("[") && id.indexOf(']') > 0) {
+            id = id.substring(1, id.indexOf(']'));
+        }
+        int subRule = id.indexOf('[');
+        return (subRule > 0) ? id.substring(0, subRule) : id;
+    }
+
+    private static String toPath(String file) {
+        if (file.startsWith("file:")) {
+            try {
+                return Paths.get(new URI(file)).toString();
+            } catch (Exception e) {
+                LOGGER.debug("Invalid file URI {}: {}", file, e.getMessage());
+            }
+        }
+        return file;
+    }
+
+    private static Object get(Object object, String... keys) {
+        Object value = object;
+        for (String key : keys) {
+            if (!(value instanceof Map)) {
+                return null;
+            }
+            value = ((Map<?, ?>)value).get(key);
+        }
+        return value;
+    }
+
+    private static String asString(Object value) {
+        return (value == null) ? null : value.toString();
+    }
+
+    private static int asInt(Object value) {
+        return (value instanceof Number) ? ((Number)value).intValue() : 0;
+    }
+
+
+    /**
+     * Error raised when the output is not valid JSON
+     */
+    private static final class JsonSyntaxException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private JsonSyntaxException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2018-2021, Sylvain Baudoin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.sbaudoin.sonar.plugins.ansible.rules;
+
+import com.github.sbaudoin.sonar.plugins.ansible.rules.AbstractAnsibleSensor.CommandMetrics;
+import com.github.sbaudoin.sonar.plugins.ansible.rules.AbstractAnsibleSensor.CommandTimeoutException;
+import com.github.sbaudoin.sonar.plugins.ansible.rules.AbstractAnsibleSensor.OutputReader;
+import com.github.sbaudoin.sonar.plugins.ansible.rules.AbstractAnsibleSensor.ReportedIssue;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.sensor.SensorContext;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Project mode of the {@code ansible-lint} execution: {@code ansible-lint} is executed once from the project base
+ * directory, without file arguments, so that it discovers the files to lint by itself. The command is executed and its
+ * output is parsed by the sensor, so that the sensors that override the command execution keep doing so.
+ *
+ * @see com.github.sbaudoin.sonar.plugins.ansible.settings.AnsibleSettings#ANSIBLE_LINT_PROJECT_MODE_KEY
+ */
+final class AnsibleLintProjectExecution {
+    private static final Logger LOGGER = Loggers.get(AnsibleLintProjectExecution.class);
+
+    private final AbstractAnsibleSensor sensor;
+
+
+    /**
+     * Constructor
+     *
+     * @param sensor the sensor that executes {@code ansible-lint} and registers the issues
+     */
+    AnsibleLintProjectExecution(AbstractAnsibleSensor sensor) {
+        this.sensor = sensor;
+    }
+
+
+    /**
+     * Executes {@code ansible-lint} on the project. The issues are parsed while its output is read and registered once it
+     * has completed, so that an execution that times out registers none. The issues reported on files that are not among
+     * the passed files (files not indexed or excluded from the analysis) are dropped without being registered.
+     *
+     * @param context the execution sensor context
+     * @param baseCommand the {@code ansible-lint} command, executed as is
+     * @param inputFiles the files to be analyzed
+     * @return {@code false} if the execution failed and the analysis must be aborted, {@code true} otherwise
+     */
+    boolean execute(SensorContext context, List<String> baseCommand, List<InputFile> inputFiles) {
+        Set<URI> indexedFiles = inputFiles.stream().map(InputFile::uri).collect(Collectors.toSet());
+        // The output may be read by a pooled thread that is still running when the command times out: the issues are
+        // only registered by the current thread once the command has completed
+        List<ReportedIssue> found = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger dropped = new AtomicInteger();
+        Consumer<ReportedIssue> consumer = issue -> {
+            if (indexedFiles.contains(issue.getFile().normalize())) {
+                found.add(new ReportedIssue(issue.getFile().normalize(), issue.getIssue()));
+            } else {
+                dropped.incrementAndGet();
+            }
+        };
+        OutputReader outputReader;
+        if (sensor.outputFormat == null) {
+            outputReader = output -> {
+                BufferedReader reader = new BufferedReader(output);
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    ReportedIssue issue = sensor.parseIssue(line);
+                    if (issue != null) {
+                        consumer.accept(issue);
+                    }
+                }
+            };
+        } else {
+            AnsibleLintJsonReader jsonReader = new AnsibleLintJsonReader(
+                    "sarif".equals(sensor.outputFormat) ? AnsibleLintJsonReader.Format.SARIF : AnsibleLintJsonReader.Format.CODECLIMATE,
+                    (path, issue) -> consumer.accept(new ReportedIssue(sensor.resolveFile(path), issue)));
+            outputReader = jsonReader::read;
+        }
+
+        LOGGER.info("Project mode: executing ansible-lint once on {}", sensor.fileSystem.baseDir());
+        List<String> error = new ArrayList<>();
+        CommandMetrics metrics = AbstractAnsibleSensor.COMMAND_METRICS.get();
+        metrics.reset();
+        long start = System.nanoTime();
+        try {
+            sensor.executeStreamingCommand(baseCommand, outputReader, error);
+        } catch (CommandTimeoutException e) {
+            LOGGER.warn("ansible-lint timed out after {} s in project mode, no issue saved", TimeUnit.MILLISECONDS.toSeconds(sensor.timeoutMillis));
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (IOException e) {
+            return false;
+        }
+        sensor.logErrorOutput(context, error);
+        found.forEach(sensor::registerIssue);
+        sensor.scannedFiles.addAll(inputFiles);
+        if (sensor.report != null) {
+            // The output is parsed while it is read
+            sensor.report.add(inputFiles, metrics.spawnNanos, System.nanoTime() - start, 0, metrics.outputBytes, found.size());
+        }
+        LOGGER.info("Project mode: {} issue(s) found on {} analyzed file(s), {} issue(s) on other files dropped",
+                found.size(), inputFiles.size(), dropped.get());
+        return true;
+    }
+}
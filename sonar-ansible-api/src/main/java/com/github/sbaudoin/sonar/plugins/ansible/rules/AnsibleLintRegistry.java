@@ -0,0 +1,148 @@
+/**
+ * Copyright (c) 2018-2021, Sylvain Baudoin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.sbaudoin.sonar.plugins.ansible.rules;
+
+import org.sonar.api.batch.sensor.SensorContext;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * JVM-wide registry of the {@code ansible-lint} rules provided by the installed plugins, used for the combined
+ * {@code ansible-lint} execution. Each plugin is loaded by its own class loader with its own copy of this class, so the
+ * registry of the installed rules is kept in the system properties, the only place shared by all the plugins. The claims
+ * of the combined execution are kept in the work directory of the analyzed module, which is specific to each analysis.
+ *
+ * @see com.github.sbaudoin.sonar.plugins.ansible.settings.AnsibleSettings#ANSIBLE_LINT_COMBINED_KEY
+ */
+public final class AnsibleLintRegistry {
+    /**
+     * System property set when the plugin that executes the default rules is installed
+     */
+    public static final String DEFAULT_RULES_PROPERTY = "com.github.sbaudoin.sonar.plugins.ansible.default_rules";
+
+    /**
+     * System property that lists the registered extra rules directories
+     */
+    public static final String EXTRA_RULES_PROPERTY = "com.github.sbaudoin.sonar.plugins.ansible.extra_rules";
+
+    /**
+     * File of the module work directory created by the sensor that claims the combined execution
+     */
+    public static final String CLAIM_FILE = "ansible-lint-combined.claim";
+
+    private static final String SEPARATOR = "\n";
+
+    private static final Logger LOGGER = Loggers.get(AnsibleLintRegistry.class);
+
+
+    /**
+     * Hide constructor
+     */
+    private AnsibleLintRegistry() {
+    }
+
+
+    /**
+     * Registers the plugin that executes the default {@code ansible-lint} rules
+     */
+    public static void registerDefaultRules() {
+        System.setProperty(DEFAULT_RULES_PROPERTY, "true");
+    }
+
+    /**
+     * Tells if a plugin that executes the default {@code ansible-lint} rules is installed
+     *
+     * @return {@code true} if the default rules must be executed by the combined execution
+     */
+    public static boolean hasDefaultRules() {
+        return Boolean.parseBoolean(System.getProperty(DEFAULT_RULES_PROPERTY));
+    }
+
+    /**
+     * Registers a directory of extra {@code ansible-lint} rules
+     *
+     * @param rulesDirectory the URI of the directory that contains the rules, typically a directory of a plugin JAR file
+     */
+    public static void registerExtraRules(URI rulesDirectory) {
+        add(EXTRA_RULES_PROPERTY, rulesDirectory.toString());
+    }
+
+    /**
+     * Returns the registered directories of extra {@code ansible-lint} rules
+     *
+     * @return the URIs of the extra rules directories, in the order of their registration
+     */
+    public static List<URI> getExtraRules() {
+        return get(EXTRA_RULES_PROPERTY).stream().map(URI::create).collect(Collectors.toList());
+    }
+
+    /**
+     * Claims the combined {@code ansible-lint} execution of the analyzed module. The first sensor that claims it
+     * executes {@code ansible-lint} for all the plugins; the other sensors of the module must not execute it again.
+     * The claim is a file of the module work directory that contains a token of the claiming analysis: as the scanner
+     * cleans the work directory at the beginning of each analysis, the claim does not outlive the analysis and is not
+     * seen by other modules or concurrent analyses of other projects.
+     *
+     * @param context the execution sensor context, shared by all the sensors of a module
+     * @return {@code true} if the caller must execute {@code ansible-lint}, {@code false} if the execution has already
+     * been claimed for this module
+     */
+    public static boolean claimCombinedExecution(SensorContext context) {
+        Path claim = context.fileSystem().workDir().toPath().resolve(CLAIM_FILE);
+        String token = UUID.randomUUID().toString();
+        try {
+            Files.createDirectories(claim.getParent());
+            // File creation is atomic: only one sensor can succeed
+            Files.write(Files.createFile(claim), token.getBytes(StandardCharsets.UTF_8));
+            LOGGER.debug("Combined ansible-lint execution claimed with token {}", token);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        } catch (IOException e) {
+            // Executing ansible-lint twice is better than not executing it at all
+            LOGGER.warn("Cannot claim the combined ansible-lint execution, the extra rules may be executed twice: {}", e.getMessage());
+            return true;
+        }
+    }
+
+
+    private static List<String> get(String property) {
+        String value = System.getProperty(property, "");
+        return value.isEmpty() ? new ArrayList<>() : new ArrayList<>(Arrays.asList(value.split(SEPARATOR)));
+    }
+
+    private static boolean add(String property, String value) {
+        // The system properties are the lock shared by the plugins class loaders
+        synchronized (System.getProperties()) {
+            List<String> values = get(property);
+            if (values.contains(value)) {
+                return false;
+            }
+            values.add(value);
+            System.setProperty(property, String.join(SEPARATOR, values));
+            return true;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/**
+ * Copyright (c) 2018-2021, Sylvain Baudoin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.sbaudoin.sonar.plugins.ansible.rules;
+
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Performance report of the {@code ansible-lint} executions of an analysis. For each execution (i.e. each file when
+ * files are analyzed one by one), the report records the time spent to spawn the process, the wall time of the
+ * execution, the time spent to parse its output, the size of its output and the number of issues found. The report is
+ * logged as a summary and written as JSON.
+ */
+final class AnsibleLintReport {
+    private static final Logger LOGGER = Loggers.get(AnsibleLintReport.class);
+
+    /**
+     * Number of slowest executions listed in the logged summary
+     */
+    static final int SLOWEST_EXECUTIONS = 10;
+
+
+    private final URI baseDir;
+    private final List<Execution> executions = new ArrayList<>();
+
+
+    /**
+     * Constructor
+     *
+     * @param baseDir the project base directory, used to report relative paths
+     */
+    AnsibleLintReport(File baseDir) {
+        this.baseDir = baseDir.toURI();
+    }
+
+
+    /**
+     * Records an {@code ansible-lint} execution
+     *
+     * @param files the files analyzed by the execution
+     * @param spawnNanos the time spent to start the process, 0 if no process was started (e.g. for a worker)
+     * @param wallNanos the wall time of the execution, from its start to the end of its output
+     * @param parseNanos the time spent to parse the output and to register the issues
+     * @param outputBytes the size of the standard output
+     * @param issues the number of issues found
+     */
+    void add(List<InputFile> files, long spawnNanos, long wallNanos, long parseNanos, long outputBytes, int issues) {
+        List<String> paths = files.stream().map(inputFile -> baseDir.relativize(inputFile.uri()).getPath()).collect(Collectors.toList());
+        executions.add(new Execution(paths, spawnNanos, wallNanos, parseNanos, outputBytes, issues));
+    }
+
+    /**
+     * Returns the number of recorded executions
+     *
+     * @return the number of executions
+     */
+    int size() {
+        return executions.size();
+    }
+
+    /**
+     * Logs the totals, the percentiles of the wall time and the slowest executions
+     */
+    void log() {
+        long[] wallTimes = getSortedWallTimes();
+        LOGGER.info("ansible-lint performance: {} execution(s) on {} file(s), {} ms spent in executions, {} ms spawning processes, {} ms parsing, {} byte(s) of output, {} issue(s)",
+                executions.size(), getFileCount(), toMillis(sum(e -> e.wallNanos)), toMillis(sum(e -> e.spawnNanos)),
+                toMillis(sum(e -> e.parseNanos)), sum(e -> e.outputBytes), sum(e -> e.issues));
+        LOGGER.info("ansible-lint wall time per execution: p50 {} ms, p95 {} ms, p99 {} ms",
+                toMillis(percentile(wallTimes, 50)), toMillis(percentile(wallTimes, 95)), toMillis(percentile(wallTimes, 99)));
+        List<Execution> slowest = getSlowest(SLOWEST_EXECUTIONS);
+        if (!slowest.isEmpty()) {
+            LOGGER.info("Slowest ansible-lint executions:{}{}", System.lineSeparator(), slowest.stream()
+                    .map(e -> "  " + toMillis(e.wallNanos) + " ms: " + String.join(", ", e.files))
+                    .collect(Collectors.joining(System.lineSeparator())));
+        }
+    }
+
+    /**
+     * Writes the report as JSON
+     *
+     * @param file the file where the report is written
+     */
+    void write(Path file) {
+        long[] wallTimes = getSortedWallTimes();
+        try {
+            Files.createDirectories(file.getParent());
+            try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                out.write("{\"executions\":" + executions.size() + ",\"files\":" + getFileCount());
+                out.write(",\"totals\":{\"spawnMs\":" + toMillis(sum(e -> e.spawnNanos)) +
+                        ",\"wallMs\":" + toMillis(sum(e -> e.wallNanos)) +
+                        ",\"parseMs\":" + toMillis(sum(e -> e.parseNanos)) +
+                        ",\"outputBytes\":" + sum(e -> e.outputBytes) +
+                        ",\"issues\":" + sum(e -> e.issues) + "}");
+                out.write(",\"wallMsPercentiles\":{\"p50\":" + toMillis(percentile(wallTimes, 50)) +
+                        ",\"p95\":" + toMillis(percentile(wallTimes, 95)) +
+                        ",\"p99\":" + toMillis(percentile(wallTimes, 99)) + "}");
+                out.write(",\"entries\":[");
+                for (int i = 0; i < executions.size(); i++) {
+                    Execution execution = executions.get(i);
+                    out.write((i == 0) ? "" : ",");
+                    out.write("{\"files\":[" + execution.files.stream().map(AnsibleLintReport::toJson).collect(Collectors.joining(",")) + "]" +
+                            ",\"spawnMs\":" + toMillis(execution.spawnNanos) +
+                            ",\"wallMs\":" + toMillis(execution.wallNanos) +
+                            ",\"parseMs\":" + toMillis(execution.parseNanos) +
+                            ",\"outputBytes\":" + execution.outputBytes +
+                            ",\"issues\":" + execution.issues + "}");
+                }
+                out.write("]}");
+                out.write(System.lineSeparator());
+            }
+            LOGGER.info("ansible-lint performance report written to {}", file);
+        } catch (IOException e) {
+            LOGGER.warn("Cannot write ansible-lint performance report {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the slowest executions
+     *
+     * @param count the maximum number of executions to return
+     * @return the executions sorted by decreasing wall time
+     */
+    List<Execution> getSlowest(int count) {
+        return executions.stream()
+                .sorted(Comparator.comparingLong((Execution e) -> e.wallNanos).reversed())
+                .limit(count)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the percentile of the passed values with the nearest-rank method
+     *
+     * @param sortedValues values sorted in ascending order
+     * @param percentile the percentile, between 0 and 100
+     * @return the value at the percentile, 0 if there is no value
+     */
+    static long percentile(long[] sortedValues, int percentile) {
+        if (sortedValues.length == 0) {
+            return 0;
+        }
+        int rank = (int)Math.ceil(percentile / 100.0 * sortedValues.length);
+        return sortedValues[Math.max(0, Math.min(sortedValues.length, rank) - 1)];
+    }
+
+
+    private long[] getSortedWallTimes() {
+        long[] wallTimes = executions.stream().mapToLong(e -> e.wallNanos).toArray();
+        Arrays.sort(wallTimes);
+        return wallTimes;
+    }
+
+    private int getFileCount() {
+        return executions.stream().mapToInt(e -> e.files.size()).sum();
+    }
+
+    private long sum(ToLongFunction<Execution> value) {
+        return executions.stream().mapToLong(value).sum();
+    }
+
+    private static String toMillis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+    }
+
+    private static String toJson(String value) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int)c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+
+    /**
+     * Measures of an {@code ansible-lint} execution
+     */
+    static final class Execution {
+        private final List<String> files;
+        private final long spawnNanos;
+        private final long wallNanos;
+        private final long parseNanos;
+        private final long outputBytes;
+        private final int issues;
+
+        private Execution(List<String> files, long spawnNanos, long wallNanos, long parseNanos, long outputBytes, int issues) {
+            this.files = files;
+            this.spawnNanos = spawnNanos;
+            this.wallNanos = wallNanos;
+            this.parseNanos = parseNanos;
+            this.outputBytes = outputBytes;
+            this.issues = issues;
+        }
+
+        List<String> getFiles() {
+            return files;
+        }
+
+        long getWallNanos() {
+            return wallNanos;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright (c) 2018-2021, Sylvain Baudoin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.sbaudoin.sonar.plugins.ansible.rules;
+
+import com.github.sbaudoin.sonar.plugins.ansible.rules.AbstractAnsibleSensor.AnsibleLintIssue;
+import com.github.sbaudoin.sonar.plugins.ansible.rules.AbstractAnsibleSensor.ReportedIssue;
+
+import java.net.URI;
+import java.util.function.Function;
+
+/**
+ * The parseable text formats ({@code -p} option) of the successive generations of {@code ansible-lint}. Each format
+ * parses a line of output with hand-written matching, equivalent to the regular expressions given for each constant
+ * but without regular expression compilation nor backtracking.
+ */
+enum AnsibleLintTextFormat {
+    /**
+     * Format of ansible-lint before 4.3 (also used by the ansible-lint worker): {@code ^(.*):([0-9]+): \[E([^\[]+)\] (.*)$}
+     */
+    LEGACY {
+        @Override
+        ReportedIssue parse(String line, Function<String, URI> fileResolver) {
+            // The path is greedy: try the rightmost colons first
+            for (int colon = line.lastIndexOf(':'); colon >= 0; colon = line.lastIndexOf(':', colon - 1)) {
+                int digitsEnd = skipDigits(line, colon + 1);
+                if (digitsEnd == colon + 1 || !line.startsWith(": [E", digitsEnd)) {
+                    continue;
+                }
+                // The id cannot contain '[' and is greedy: take the last "] " before the next '['
+                int idStart = digitsEnd + 4;
+                int idLimit = line.indexOf('[', idStart);
+                int idEnd = line.lastIndexOf("] ", (idLimit < 0) ? line.length() : idLimit - 1);
+                if (idEnd <= idStart) {
+                    continue;
+                }
+                Integer lineNumber = parseLineNumber(line, colon + 1, digitsEnd);
+                if (lineNumber == null) {
+                    continue;
+                }
+                return new ReportedIssue(fileResolver.apply(line.substring(0, colon)),
+                        new AnsibleLintIssue(lineNumber, line.substring(idStart, idEnd), line.substring(idEnd + 2)));
+            }
+            return null;
+        }
+    },
+
+    /**
+     * Format of ansible-lint 4.3 and 4.x: {@code ^([^ ]+) (.+):([0-9]+)$}
+     */
+    V4_3 {
+        @Override
+        ReportedIssue parse(String line, Function<String, URI> fileResolver) {
+            int space = line.indexOf(' ');
+            int colon = line.lastIndexOf(':');
+            if (space <= 0 || colon <= space + 1 || colon == line.length() - 1 || skipDigits(line, colon + 1) != line.length()) {
+                return null;
+            }
+            Integer lineNumber = parseLineNumber(line, colon + 1, line.length());
+            if (lineNumber == null) {
+                return null;
+            }
+            return new ReportedIssue(fileResolver.apply(line.substring(space + 1, colon)),
+                    new AnsibleLintIssue(lineNumber, line.substring(0, space)));
+        }
+    },
+
+    /**
+     * Format of ansible-lint 5 and later: {@code ^(.*):([0-9]+): ([^ ]+)$}
+     */
+    V5 {
+        @Override
+        ReportedIssue parse(String line, Function<String, URI> fileResolver) {
+            int space = line.lastIndexOf(' ');
+            if (space < 2 || space == line.length() - 1 || line.charAt(space - 1) != ':') {
+                return null;
+            }
+            int digitsStart = space - 1;
+            while (digitsStart > 0 && isDigit(line.charAt(digitsStart - 1))) {
+                digitsStart--;
+            }
+            if (digitsStart == space - 1 || digitsStart == 0 || line.charAt(digitsStart - 1) != ':') {
+                return null;
+            }
+            Integer lineNumber = parseLineNumber(line, digitsStart, space - 1);
+            if (lineNumber == null) {
+                return null;
+            }
+            return new ReportedIssue(fileResolver.apply(line.substring(0, digitsStart - 1)),
+                    new AnsibleLintIssue(lineNumber, line.substring(space + 1)));
+        }
+    };
+
+
+    /**
+     * Parses a line of {@code ansible-lint} output
+     *
+     * @param line a line of output
+     * @param fileResolver the function that returns the URI of a file from the path reported by {@code ansible-lint}
+     * @return the issue or {@code null} if the line does not match this format
+     */
+    abstract ReportedIssue parse(String line, Function<String, URI> fileResolver);
+
+    /**
+     * Returns the format produced by the passed version of {@code ansible-lint}
+     *
+     * @param major the major version of {@code ansible-lint}
+     * @param minor the minor version of {@code ansible-lint}
+     * @return the format of the parseable output of this version
+     */
+    static AnsibleLintTextFormat forVersion(int major, int minor) {
+        if (major >= 5) {
+            return V5;
+        }
+        return (major == 4 && minor >= 3) ? V4_3 : LEGACY;
+    }
+
+
+    private static int skipDigits(String line, int start) {
+        int i = start;
+        while (i < line.length() && isDigit(line.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static Integer parseLineNumber(String line, int start, int end) {
+        try {
+            return Integer.parseInt(line.substring(start, end));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
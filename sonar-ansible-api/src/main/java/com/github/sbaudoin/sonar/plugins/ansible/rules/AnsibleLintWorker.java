@@ -0,0 +1,209 @@
+/**
+ * Copyright (c) 2018-2021, Sylvain Baudoin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.sbaudoin.sonar.plugins.ansible.rules;
+
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Long-lived {@code ansible-lint} process that loads ansible-lint and its rules once and then analyzes files on demand.
+ * The process runs the Python shim {@value #SHIM_RESOURCE} shipped with this plugin: file paths are sent to its standard
+ * input, one tab-separated request per line, and the issues are read from its standard output (with the same format as
+ * {@code ansible-lint -p}) until an end marker line is met.
+ */
+public final class AnsibleLintWorker implements Closeable {
+    private static final Logger LOGGER = Loggers.get(AnsibleLintWorker.class);
+
+    /**
+     * Name of the Python shim resource, located in the same package as this class
+     */
+    public static final String SHIM_RESOURCE = "ansible-lint-worker.py";
+
+    /**
+     * Line printed by the shim when it is ready to process requests
+     */
+    public static final String READY = "READY";
+
+    /**
+     * Line printed by the shim after the last issue of a request
+     */
+    public static final String END_MARKER = "__ANSIBLE_LINT_WORKER_END__";
+
+
+    private final Process process;
+    private final BufferedWriter input;
+    private final BufferedReader output;
+    private final List<String> error = new ArrayList<>();
+    private final String version;
+
+
+    /**
+     * Starts a worker and waits for it to be ready, without time limit
+     *
+     * @param command the command that starts the shim (Python executable, shim path and ansible-lint options)
+     * @param directory the working directory of the worker
+     * @throws IOException if the worker cannot be started or if it does not support the installed ansible-lint
+     */
+    public AnsibleLintWorker(List<String> command, File directory) throws IOException {
+        this(command, directory, 0);
+    }
+
+    /**
+     * Starts a worker and waits for it to be ready
+     *
+     * @param command the command that starts the shim (Python executable, shim path and ansible-lint options)
+     * @param directory the working directory of the worker
+     * @param timeoutMillis the maximum time to wait for the worker to be ready, in milliseconds. 0 means no limit.
+     * @throws IOException if the worker cannot be started, if it does not support the installed ansible-lint or if it
+     * is not ready in time
+     */
+    public AnsibleLintWorker(List<String> command, File directory, long timeoutMillis) throws IOException {
+        LOGGER.debug("Starting ansible-lint worker: {}", command);
+        process = new ProcessBuilder(command).directory(directory).start();
+        input = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+        output = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+
+        Thread errorReader = new Thread(this::readError, "ansible-lint-worker-stderr");
+        errorReader.setDaemon(true);
+        errorReader.start();
+
+        // A shim that hangs at startup is killed, which ends its output
+        AtomicBoolean timedOut = new AtomicBoolean(false);
+        ScheduledFuture<?> watchdog = (timeoutMillis > 0) ? AbstractAnsibleSensor.WATCHDOG.schedule(() -> {
+            timedOut.set(true);
+            AbstractAnsibleSensor.destroyProcessTree(process);
+        }, timeoutMillis, TimeUnit.MILLISECONDS) : null;
+        String line = output.readLine();
+        if (watchdog != null && !watchdog.cancel(false) || timedOut.get()) {
+            close();
+            throw new IOException("ansible-lint worker not ready after " + timeoutMillis + " ms");
+        }
+        if (line == null || !line.startsWith(READY)) {
+            close();
+            throw new IOException("ansible-lint worker not supported: " + ((line == null) ? "no answer" : line));
+        }
+        version = line.substring(READY.length()).trim();
+        LOGGER.debug("ansible-lint worker ready, ansible-lint version {}", version);
+    }
+
+
+    /**
+     * Returns the version of ansible-lint as reported by the worker
+     *
+     * @return the version of ansible-lint loaded by the worker
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * Analyzes the passed files
+     *
+     * @param paths the paths of the files to be analyzed
+     * @param stdOut where the issues are written to, line by line
+     * @param errOut where the error output of the worker is written to
+     * @throws IOException if the request cannot be sent or if the worker stopped before answering
+     */
+    public synchronized void lint(List<String> paths, List<String> stdOut, List<String> errOut) throws IOException {
+        input.write(String.join("\t", paths));
+        input.newLine();
+        input.flush();
+
+        String line;
+        while ((line = output.readLine()) != null && !END_MARKER.equals(line)) {
+            LOGGER.trace("Read from worker: {}", line);
+            stdOut.add(line);
+        }
+        synchronized (error) {
+            errOut.addAll(error);
+            error.clear();
+        }
+        if (line == null) {
+            throw new IOException("ansible-lint worker terminated unexpectedly");
+        }
+    }
+
+    /**
+     * Stops the worker. The worker and its child processes are killed if it does not stop by itself.
+     */
+    @Override
+    public void close() {
+        try {
+            input.close();
+        } catch (IOException e) {
+            LOGGER.debug("Cannot close worker input: {}", e.getMessage());
+        }
+        try {
+            if (!process.waitFor(5, TimeUnit.SECONDS)) {
+                AbstractAnsibleSensor.destroyProcessTree(process);
+            }
+        } catch (InterruptedException e) {
+            AbstractAnsibleSensor.destroyProcessTree(process);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Kills the worker and its child processes at once, without waiting for the worker to stop by itself
+     */
+    public void kill() {
+        AbstractAnsibleSensor.destroyProcessTree(process);
+    }
+
+    /**
+     * Copies the Python shim to the passed directory
+     *
+     * @param directory the directory where the shim is written
+     * @return the path to the shim
+     * @throws IOException if the shim cannot be written
+     */
+    public static Path extractShim(Path directory) throws IOException {
+        Path shim = directory.resolve(SHIM_RESOURCE);
+        try (InputStream in = AnsibleLintWorker.class.getResourceAsStream(SHIM_RESOURCE)) {
+            if (in == null) {
+                throw new FileNotFoundException(SHIM_RESOURCE);
+            }
+            Files.createDirectories(directory);
+            Files.copy(in, shim, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return shim;
+    }
+
+
+    private void readError() {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                synchronized (error) {
+                    error.add(line);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Cannot read worker error output: {}", e.getMessage());
+        }
+    }
+}
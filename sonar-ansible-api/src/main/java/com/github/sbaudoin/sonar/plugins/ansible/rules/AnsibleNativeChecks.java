@@ -0,0 +1,508 @@
+/**
+ * Copyright (c) 2018-2021, Sylvain Baudoin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.sbaudoin.sonar.plugins.ansible.rules;
+
+import com.github.sbaudoin.sonar.plugins.ansible.rules.AbstractAnsibleSensor.AnsibleLintIssue;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.error.YAMLException;
+import org.yaml.snakeyaml.nodes.MappingNode;
+import org.yaml.snakeyaml.nodes.Node;
+import org.yaml.snakeyaml.nodes.NodeTuple;
+import org.yaml.snakeyaml.nodes.ScalarNode;
+import org.yaml.snakeyaml.nodes.SequenceNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URI;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * In-process implementation of some {@code ansible-lint} rules that only need the task tree of a file. The YAML
+ * document is composed (not constructed) with SnakeYAML, the YAML library of the sonar-yaml plugin, so that the line
+ * of each task is known, and every task of the file is visited once by all the enabled checks. The checks follow the
+ * behavior of the {@code ansible-lint} 5 rules of the same name and report the same line, that of the task.
+ * <p>
+ * As {@code ansible-lint} does, the kind of a file is told from its path: the files of a {@code tasks} or
+ * {@code handlers} directory are task lists, requirements, vars, meta and Molecule files have no task, and the plays of
+ * any other file are checked.
+ * </p>
+ */
+final class AnsibleNativeChecks {
+    private static final Logger LOGGER = Loggers.get(AnsibleNativeChecks.class);
+
+    private static final List<String> PLAY_TASK_LISTS = Arrays.asList("pre_tasks", "tasks", "post_tasks");
+    private static final List<String> TASK_BLOCKS = Arrays.asList("block", "rescue", "always");
+    private static final List<String> MODULE_PREFIXES = Arrays.asList("ansible.builtin.", "ansible.legacy.");
+
+    /**
+     * Directories whose files have no task
+     */
+    private static final Set<String> TASKLESS_DIRECTORIES = new HashSet<>(Arrays.asList(
+            "defaults", "group_vars", "host_vars", "meta", "molecule", "vars"));
+
+    /**
+     * Task keywords, i.e. the keys of a task that are not its module
+     */
+    private static final Set<String> TASK_KEYWORDS = new HashSet<>(Arrays.asList(
+            "action", "any_errors_fatal", "args", "async", "become", "become_exe", "become_flags", "become_method",
+            "become_user", "changed_when", "check_mode", "collections", "connection", "debugger", "delay",
+            "delegate_facts", "delegate_to", "diff", "environment", "failed_when", "ignore_errors", "ignore_unreachable",
+            "listen", "local_action", "loop", "loop_control", "module_defaults", "name", "no_log", "notify", "poll",
+            "port", "register", "remote_user", "retries", "run_once", "tags", "throttle", "timeout", "until", "vars",
+            "when"));
+
+    /**
+     * Options of the {@code command} and {@code shell} modules that may be passed as {@code key=value} in the free form
+     */
+    private static final Set<String> COMMAND_OPTIONS = new HashSet<>(Arrays.asList(
+            "chdir", "creates", "executable", "removes", "stdin", "stdin_add_newline", "strip_empty_ends", "warn"));
+
+
+    /**
+     * Rules implemented in Java. Each rule is identified by its {@code ansible-lint} 5 name, followed by the ids the
+     * previous versions of {@code ansible-lint} gave to it.
+     */
+    enum Check {
+        COMMAND_INSTEAD_OF_MODULE("command-instead-of-module", "E303", "ANSIBLE0006") {
+            private final Map<String, String> modules = createModules();
+            private final Map<String, List<String>> executableOptions = createExecutableOptions();
+
+            @Override
+            String check(Task task) {
+                if (!task.isCommand() || !task.isWarn()) {
+                    return null;
+                }
+                List<String> args = task.getCommandArgs();
+                if (args.isEmpty()) {
+                    return null;
+                }
+                String executable = args.get(0).substring(args.get(0).lastIndexOf('/') + 1);
+                if (args.size() > 1 && executableOptions.getOrDefault(executable, Collections.emptyList()).contains(args.get(1))) {
+                    return null;
+                }
+                return modules.containsKey(executable) ? executable + " used in place of " + modules.get(executable) + " module" : null;
+            }
+
+            private Map<String, String> createModules() {
+                Map<String, String> map = new HashMap<>();
+                map.put("apt-get", "apt-get");
+                map.put("chkconfig", "service");
+                map.put("curl", "get_url or uri");
+                map.put("git", "git");
+                map.put("hg", "hg");
+                map.put("letsencrypt", "acme_certificate");
+                map.put("mktemp", "tempfile");
+                map.put("mount", "mount");
+                map.put("patch", "patch");
+                map.put("rpm", "yum or rpm_key");
+                map.put("rsync", "synchronize");
+                map.put("sed", "template, replace or lineinfile");
+                map.put("service", "service");
+                map.put("supervisorctl", "supervisorctl");
+                map.put("svn", "subversion");
+                map.put("systemctl", "systemd");
+                map.put("tar", "unarchive");
+                map.put("unzip", "unarchive");
+                map.put("wget", "get_url or uri");
+                map.put("yum", "yum");
+                return map;
+            }
+
+            private Map<String, List<String>> createExecutableOptions() {
+                Map<String, List<String>> map = new HashMap<>();
+                map.put("git", Arrays.asList("branch", "log"));
+                map.put("systemctl", Arrays.asList("set-default", "show-environment", "status"));
+                return map;
+            }
+        },
+        PACKAGE_LATEST("package-latest", "E403", "ANSIBLE0010") {
+            private final Set<String> packageManagers = new HashSet<>(Arrays.asList(
+                    "apk", "apt", "bower", "bundler", "dnf", "easy_install", "gem", "homebrew", "jenkins_plugin", "npm",
+                    "openbsd_package", "openbsd_pkg", "package", "pacman", "pear", "pip", "pkg5", "pkgutil", "portage",
+                    "slackpkg", "sorcery", "swdepot", "win_chocolatey", "yarn", "yum", "zypper"));
+
+            @Override
+            String check(Task task) {
+                return (packageManagers.contains(task.module) && "latest".equals(task.getArg("state")) &&
+                        task.getArg("version") == null && !isTrue(task.getArg("update_only"))) ? "Package installs should not use latest" : null;
+            }
+        },
+        NO_CHANGED_WHEN("no-changed-when", "E301", "ANSIBLE0012") {
+            @Override
+            String check(Task task) {
+                return (!task.handler && (task.isCommand() || "raw".equals(task.module)) && !task.keys.containsKey("changed_when") &&
+                        !task.keys.containsKey("when") && task.getArg("creates") == null && task.getArg("removes") == null) ?
+                        "Commands should not change things if nothing needs doing" : null;
+            }
+        },
+        RISKY_SHELL_PIPE("risky-shell-pipe", "E306") {
+            private final Pattern jinja = Pattern.compile("\\{\\{.*?}}|\\{%.*?%}|\\{#.*?#}", Pattern.DOTALL);
+            private final Pattern pipe = Pattern.compile("(?<!\\|)\\|(?!\\|)");
+            private final Pattern pipefail = Pattern.compile("^\\s*set.*[+-][A-Za-z]*o\\s*pipefail", Pattern.MULTILINE);
+
+            @Override
+            String check(Task task) {
+                if (task.handler || !"shell".equals(task.module) || isTrue(task.keys.get("ignore_errors"))) {
+                    return null;
+                }
+                String command = jinja.matcher(String.join(" ", task.getCommandArgs())).replaceAll("JINJA");
+                return (pipe.matcher(command).find() && !pipefail.matcher(command).find()) ?
+                        "Shells that use pipes should set the pipefail option" : null;
+            }
+        },
+        LITERAL_COMPARE("literal-compare", "E601") {
+            private final Pattern literalBoolCompare = Pattern.compile("[=!]= ?(True|true|False|false)");
+
+            @Override
+            String check(Task task) {
+                Node when = task.keys.get("when");
+                List<Node> conditions = (when instanceof SequenceNode) ? ((SequenceNode)when).getValue() : Collections.singletonList(when);
+                for (Node condition : conditions) {
+                    String value = getString(condition);
+                    if (value != null && literalBoolCompare.matcher(value).find()) {
+                        return "Don't compare to literal True/False";
+                    }
+                }
+                return null;
+            }
+        },
+        UNNAMED_TASK("unnamed-task", "E502", "ANSIBLE0011") {
+            private final Set<String> namelessTasks = new HashSet<>(Arrays.asList(
+                    "meta", "debug", "include_role", "import_role", "include_tasks", "import_tasks", "include_vars", "include"));
+
+            @Override
+            String check(Task task) {
+                String name = getString(task.keys.get("name"));
+                return ((name == null || name.isEmpty()) && !namelessTasks.contains(task.module)) ? "All tasks should be named" : null;
+            }
+        };
+
+        private final List<String> ids;
+
+        Check(String... ids) {
+            this.ids = Arrays.asList(ids);
+        }
+
+        /**
+         * Returns the ids of the rule: its name then its legacy ids
+         *
+         * @return the ids of the rule
+         */
+        List<String> getIds() {
+            return ids;
+        }
+
+        /**
+         * Checks a task
+         *
+         * @param task a task
+         * @return the message of the issue, {@code null} if the task complies with the rule
+         */
+        abstract String check(Task task);
+    }
+
+
+    /**
+     * Kinds of files that have tasks
+     */
+    enum Kind {
+        /**
+         * Playbook: only the tasks of its plays are checked
+         */
+        PLAYBOOK,
+        /**
+         * Task list of a {@code tasks} directory
+         */
+        TASKS,
+        /**
+         * Handler list of a {@code handlers} directory
+         */
+        HANDLERS
+    }
+
+
+    private final URI baseDir;
+    private final Map<Check, String> checks;
+
+
+    /**
+     * Constructor
+     *
+     * @param baseDir the project base directory, against which the file paths are evaluated
+     * @param checks the checks to be run and the id with which the issues of each check are reported
+     */
+    AnsibleNativeChecks(File baseDir, Map<Check, String> checks) {
+        this.baseDir = baseDir.toURI();
+        this.checks = new EnumMap<>(Check.class);
+        this.checks.putAll(checks);
+    }
+
+
+    /**
+     * Tells if no check is enabled
+     *
+     * @return {@code true} if there is no check to run
+     */
+    boolean isEmpty() {
+        return checks.isEmpty();
+    }
+
+    /**
+     * Returns the enabled checks
+     *
+     * @return the checks to be run
+     */
+    Set<Check> getChecks() {
+        return checks.keySet();
+    }
+
+    /**
+     * Returns the ids with which the issues are reported
+     *
+     * @return the ids of the enabled checks
+     */
+    Collection<String> getIds() {
+        return checks.values();
+    }
+
+    /**
+     * Runs the checks on a file. A file that cannot be read or parsed, or that has no task, gets no issue.
+     *
+     * @param inputFile the file to be checked
+     * @return the issues found
+     */
+    List<AnsibleLintIssue> check(InputFile inputFile) {
+        Kind kind = getKind(baseDir.relativize(inputFile.uri()).getPath());
+        if (kind == null) {
+            return Collections.emptyList();
+        }
+        try (Reader reader = new InputStreamReader(inputFile.inputStream(), inputFile.charset())) {
+            return check(reader, kind);
+        } catch (IOException|YAMLException e) {
+            LOGGER.debug("Cannot check {}: {}", inputFile.uri(), e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Runs the checks on a YAML document
+     *
+     * @param reader the YAML content
+     * @param kind the kind of the file
+     * @return the issues found
+     */
+    List<AnsibleLintIssue> check(Reader reader, Kind kind) {
+        List<AnsibleLintIssue> issues = new ArrayList<>();
+        for (Node document : new Yaml().composeAll(reader)) {
+            if (!(document instanceof SequenceNode)) {
+                // Vars, meta or non-Ansible file
+                continue;
+            }
+            for (Node item : ((SequenceNode)document).getValue()) {
+                if (kind != Kind.PLAYBOOK) {
+                    visitTask(item, kind == Kind.HANDLERS, issues);
+                    continue;
+                }
+                Map<String, Node> keys = getKeys(item);
+                if (keys.containsKey("hosts") || keys.containsKey("import_playbook") || keys.containsKey("ansible.builtin.import_playbook")) {
+                    PLAY_TASK_LISTS.forEach(key -> visitTasks(keys.get(key), false, issues));
+                    visitTasks(keys.get("handlers"), true, issues);
+                }
+            }
+        }
+        return issues;
+    }
+
+    /**
+     * Tells the kind of a file from its path, as {@code ansible-lint} does
+     *
+     * @param path the path of the file relative to the project base directory
+     * @return the kind of the file, {@code null} if the file has no task
+     */
+    static Kind getKind(String path) {
+        List<String> segments = Arrays.asList(path.split("/"));
+        List<String> directories = segments.subList(0, segments.size() - 1);
+        if (segments.get(segments.size() - 1).matches("requirements\\.ya?ml") || directories.stream().anyMatch(TASKLESS_DIRECTORIES::contains)) {
+            return null;
+        }
+        for (int i = directories.size() - 1; i >= 0; i--) {
+            String directory = directories.get(i);
+            if ("tasks".equals(directory)) {
+                return Kind.TASKS;
+            }
+            if ("handlers".equals(directory)) {
+                return Kind.HANDLERS;
+            }
+        }
+        return Kind.PLAYBOOK;
+    }
+
+
+    private void visitTasks(Node tasks, boolean handlers, List<AnsibleLintIssue> issues) {
+        if (tasks instanceof SequenceNode) {
+            ((SequenceNode)tasks).getValue().forEach(task -> visitTask(task, handlers, issues));
+        }
+    }
+
+    private void visitTask(Node node, boolean handler, List<AnsibleLintIssue> issues) {
+        if (!(node instanceof MappingNode)) {
+            return;
+        }
+        Map<String, Node> keys = getKeys(node);
+        if (TASK_BLOCKS.stream().anyMatch(keys::containsKey)) {
+            TASK_BLOCKS.forEach(key -> visitTasks(keys.get(key), handler, issues));
+            return;
+        }
+        Task task = new Task(keys, handler);
+        int line = node.getStartMark().getLine() + 1;
+        for (Map.Entry<Check, String> entry : checks.entrySet()) {
+            String message = entry.getKey().check(task);
+            if (message != null) {
+                issues.add(new AnsibleLintIssue(line, entry.getValue(), message));
+            }
+        }
+    }
+
+    private static Map<String, Node> getKeys(Node node) {
+        Map<String, Node> keys = new LinkedHashMap<>();
+        if (node instanceof MappingNode) {
+            for (NodeTuple tuple : ((MappingNode)node).getValue()) {
+                String key = getString(tuple.getKeyNode());
+                if (key != null) {
+                    keys.put(key, tuple.getValueNode());
+                }
+            }
+        }
+        return keys;
+    }
+
+    private static String getString(Node node) {
+        return (node instanceof ScalarNode) ? ((ScalarNode)node).getValue() : null;
+    }
+
+    private static boolean isTrue(Node node) {
+        return isTrue(getString(node));
+    }
+
+    private static boolean isTrue(String value) {
+        return value != null && Arrays.asList("true", "yes", "on", "y", "1").contains(value.toLowerCase(Locale.ENGLISH));
+    }
+
+    private static String normalizeModule(String module) {
+        for (String prefix : MODULE_PREFIXES) {
+            if (module.startsWith(prefix)) {
+                return module.substring(prefix.length());
+            }
+        }
+        return module;
+    }
+
+
+    /**
+     * Task normalized as {@code ansible-lint} does: its module, the arguments of the module (those of the module key,
+     * of {@code args} and the {@code key=value} of the free form) and the rest of the free form
+     */
+    static final class Task {
+        private final Map<String, Node> keys;
+        private final boolean handler;
+        private final String module;
+        private final Map<String, String> args = new HashMap<>();
+        private final List<String> freeForm = new ArrayList<>();
+
+        private Task(Map<String, Node> keys, boolean handler) {
+            this.keys = keys;
+            this.handler = handler;
+
+            String moduleName = null;
+            Node moduleArgs = null;
+            String actionArgs = null;
+            for (Map.Entry<String, Node> entry : keys.entrySet()) {
+                if ("action".equals(entry.getKey()) || "local_action".equals(entry.getKey())) {
+                    // Module and free form in a string, or module in the "module" key of a map
+                    String action = getString(entry.getValue());
+                    if (action != null) {
+                        String[] parts = action.trim().split("\\s+", 2);
+                        moduleName = parts[0];
+                        actionArgs = (parts.length > 1) ? parts[1] : null;
+                    } else {
+                        Map<String, Node> actionKeys = getKeys(entry.getValue());
+                        moduleName = getString(actionKeys.get("module"));
+                        moduleArgs = entry.getValue();
+                    }
+                    break;
+                }
+                if (!TASK_KEYWORDS.contains(entry.getKey()) && !entry.getKey().startsWith("with_")) {
+                    moduleName = entry.getKey();
+                    moduleArgs = entry.getValue();
+                    break;
+                }
+            }
+            this.module = (moduleName == null) ? "" : normalizeModule(moduleName);
+            if (actionArgs != null) {
+                addFreeForm(actionArgs);
+            }
+            addArgs(moduleArgs);
+            addArgs(keys.get("args"));
+        }
+
+        private void addArgs(Node node) {
+            if (node instanceof MappingNode) {
+                getKeys(node).forEach((key, value) -> {
+                    if (!"module".equals(key)) {
+                        args.put(key, (value instanceof ScalarNode) ? ((ScalarNode)value).getValue() : "");
+                    }
+                });
+            } else if (node instanceof ScalarNode) {
+                addFreeForm(((ScalarNode)node).getValue());
+            }
+        }
+
+        private void addFreeForm(String value) {
+            for (String word : value.trim().split("\\s+")) {
+                int equals = word.indexOf('=');
+                if (freeForm.isEmpty() && equals > 0 && (!isCommand() || COMMAND_OPTIONS.contains(word.substring(0, equals)))) {
+                    args.put(word.substring(0, equals), word.substring(equals + 1));
+                } else if (!word.isEmpty()) {
+                    freeForm.add(word);
+                }
+            }
+        }
+
+        private boolean isCommand() {
+            return "command".equals(module) || "shell".equals(module);
+        }
+
+        private boolean isWarn() {
+            String warn = args.get("warn");
+            return warn == null || isTrue(warn);
+        }
+
+        private String getArg(String name) {
+            return args.get(name);
+        }
+
+        private List<String> getCommandArgs() {
+            String cmd = args.get("cmd");
+            return (cmd == null) ? freeForm : Arrays.asList(cmd.trim().split("\\s+"));
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/**
+ * Copyright (c) 2018-2021, Sylvain Baudoin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.sbaudoin.sonar.plugins.ansible.rules;
+
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Persistent cache of the outputs of the {@code --version} option of the executables ({@code ansible},
+ * {@code ansible-lint}). An entry is keyed by the real path of the executable, its size and its modification time, so
+ * that it is invalidated when the executable is updated.
+ */
+final class AnsibleVersionCache {
+    private static final Logger LOGGER = Loggers.get(AnsibleVersionCache.class);
+
+    private static final int FORMAT_VERSION = 1;
+
+
+    private final Path file;
+    private final Map<String, List<String>> entries = new HashMap<>();
+
+
+    /**
+     * Constructor. The cache is loaded from the passed file if it exists.
+     *
+     * @param file the file where the cache is persisted
+     */
+    AnsibleVersionCache(Path file) {
+        this.file = file;
+        load();
+    }
+
+
+    /**
+     * Returns the cache key of the passed executable
+     *
+     * @param executable an executable, either a path or a name searched in the {@code PATH}
+     * @return the cache key of the executable or {@code null} if the executable cannot be found, in which case its
+     * version must not be cached
+     */
+    String getKey(String executable) {
+        Path path = resolveExecutable(executable);
+        if (path == null) {
+            return null;
+        }
+        try {
+            Path realPath = path.toRealPath();
+            return realPath + "|" + Files.size(realPath) + "|" + Files.getLastModifiedTime(realPath).toMillis();
+        } catch (IOException e) {
+            LOGGER.debug("Cannot get the attributes of {}: {}", path, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Returns the cached version output of an executable
+     *
+     * @param key the key of the executable as returned by {@link #getKey(String)}
+     * @return the output of the {@code --version} option or {@code null} if not cached
+     */
+    synchronized List<String> get(String key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Stores the version output of an executable and saves the cache
+     *
+     * @param key the key of the executable as returned by {@link #getKey(String)}
+     * @param output the output of the {@code --version} option
+     */
+    synchronized void put(String key, List<String> output) {
+        entries.put(key, new ArrayList<>(output));
+        save();
+    }
+
+
+    private void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                return;
+            }
+            Map<String, List<String>> loaded = new HashMap<>();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                int lineCount = in.readInt();
+                List<String> lines = new ArrayList<>(lineCount);
+                for (int j = 0; j < lineCount; j++) {
+                    lines.add(in.readUTF());
+                }
+                loaded.put(key, lines);
+            }
+            entries.putAll(loaded);
+        } catch (IOException e) {
+            LOGGER.warn("Cannot read version cache {}, ignoring it: {}", file, e.getMessage());
+        }
+    }
+
+    private void save() {
+        try {
+            Files.createDirectories(file.getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(entries.size());
+                for (Map.Entry<String, List<String>> entry : entries.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(entry.getValue().size());
+                    for (String line : entry.getValue()) {
+                        out.writeUTF(line);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Cannot write version cache {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the path of an executable. Names are searched in the directories of the {@code PATH} environment variable
+     * as the operating system does; relative paths are not resolved since they depend on the command working directory.
+     */
+    private static Path resolveExecutable(String executable) {
+        try {
+            Path path = Paths.get(executable);
+            if (path.isAbsolute()) {
+                return Files.isRegularFile(path) ? path : null;
+            }
+            String searchPath = System.getenv("PATH");
+            if (path.getNameCount() > 1 || searchPath == null) {
+                return null;
+            }
+            List<String> extensions = System.getProperty("os.name").toLowerCase(Locale.ENGLISH).contains("windows") ?
+                    Arrays.asList("", ".exe", ".cmd", ".bat") : Collections.singletonList("");
+            for (String directory : searchPath.split(File.pathSeparator)) {
+                for (String extension : extensions) {
+                    Path candidate = Paths.get(directory, executable + extension);
+                    if (Files.isRegularFile(candidate) && Files.isExecutable(candidate)) {
+                        return candidate.toAbsolutePath();
+                    }
+                }
+            }
+        } catch (InvalidPathException e) {
+            LOGGER.debug("Invalid executable path {}: {}", executable, e.getMessage());
+        }
+        return null;
+    }
+}
@@ -0,0 +1,282 @@
+/**
+ * Copyright (c) 2018-2021, Sylvain Baudoin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.sbaudoin.sonar.plugins.ansible.rules;
+
+import com.github.sbaudoin.sonar.plugins.ansible.rules.AbstractAnsibleSensor.AnsibleLintIssue;
+
+import java.net.URI;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Compact store of the issues found by {@code ansible-lint}, seen as a map of the issues per file. Rule ids
+ * and messages are interned into dictionaries shared by all the files, and the issues of a file are packed into a
+ * primitive array: no object is kept per issue. As with a {@code Set<AnsibleLintIssue>}, an issue is only stored once
+ * per file for a given line and rule id (the first one registered is kept).
+ * <p>
+ * The issue sets returned by the map are views of the issues of a file, backed by the store: issues added to them are
+ * stored, but they cannot be removed one by one. Sets passed to {@link #put(URI, Set)} are copied into the store. Entries
+ * may be removed, and the store may be cleared.
+ * </p>
+ */
+final class IssueStore extends AbstractMap<URI, Set<AnsibleLintIssue>> {
+    private static final int NO_MESSAGE = -1;
+
+
+    private final Map<URI, FileIssues> files = new LinkedHashMap<>();
+    private final Dictionary ids = new Dictionary();
+    private final Dictionary messages = new Dictionary();
+
+
+    /**
+     * Adds an issue found on a file
+     *
+     * @param file the URI of the file
+     * @param issue the issue
+     * @return {@code true} if the issue was added, {@code false} if the file already had an issue on the same line with
+     * the same rule id
+     */
+    boolean add(URI file, AnsibleLintIssue issue) {
+        long key = ((long)issue.getLine() << 32) | (ids.intern(issue.getId()) & 0xffffffffL);
+        FileIssues fileIssues = files.computeIfAbsent(file, f -> new FileIssues());
+        if (fileIssues.contains(key)) {
+            return false;
+        }
+        int message = (issue.getMessage() == null) ? NO_MESSAGE : messages.intern(issue.getMessage());
+        fileIssues.add(key, ((long)issue.getColumn() << 32) | (message & 0xffffffffL));
+        return true;
+    }
+
+    @Override
+    public Set<AnsibleLintIssue> get(Object file) {
+        return files.containsKey(file) ? new FileView((URI)file) : null;
+    }
+
+    /**
+     * Replaces the issues of a file with the passed ones
+     *
+     * @param file the URI of the file
+     * @param issues the issues of the file
+     * @return a snapshot of the previous issues of the file, {@code null} if the file had no entry
+     */
+    @Override
+    public Set<AnsibleLintIssue> put(URI file, Set<AnsibleLintIssue> issues) {
+        FileIssues previous = files.put(file, new FileIssues());
+        issues.forEach(issue -> add(file, issue));
+        return (previous == null) ? null : toSet(previous);
+    }
+
+    @Override
+    public Set<AnsibleLintIssue> computeIfAbsent(URI file, Function<? super URI, ? extends Set<AnsibleLintIssue>> mappingFunction) {
+        if (!files.containsKey(file)) {
+            Set<AnsibleLintIssue> issues = mappingFunction.apply(file);
+            if (issues == null) {
+                return null;
+            }
+            put(file, issues);
+        }
+        return new FileView(file);
+    }
+
+    @Override
+    public boolean containsKey(Object file) {
+        return files.containsKey(file);
+    }
+
+    @Override
+    public Set<AnsibleLintIssue> remove(Object file) {
+        FileIssues fileIssues = files.remove(file);
+        return (fileIssues == null) ? null : toSet(fileIssues);
+    }
+
+    @Override
+    public int size() {
+        return files.size();
+    }
+
+    /**
+     * Removes all the issues and empties the dictionaries
+     */
+    @Override
+    public void clear() {
+        files.clear();
+        ids.clear();
+        messages.clear();
+    }
+
+    @Override
+    public Set<Entry<URI, Set<AnsibleLintIssue>>> entrySet() {
+        return new AbstractSet<Entry<URI, Set<AnsibleLintIssue>>>() {
+            @Override
+            public Iterator<Entry<URI, Set<AnsibleLintIssue>>> iterator() {
+                Iterator<Entry<URI, FileIssues>> iterator = files.entrySet().iterator();
+                return new Iterator<Entry<URI, Set<AnsibleLintIssue>>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public Entry<URI, Set<AnsibleLintIssue>> next() {
+                        Entry<URI, FileIssues> entry = iterator.next();
+                        return new SimpleImmutableEntry<>(entry.getKey(), new FileView(entry.getKey()));
+                    }
+
+                    @Override
+                    public void remove() {
+                        iterator.remove();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return files.size();
+            }
+        };
+    }
+
+    /**
+     * Returns the total number of issues
+     *
+     * @return the number of issues of all the files
+     */
+    int getIssueCount() {
+        return files.values().stream().mapToInt(fileIssues -> fileIssues.size).sum();
+    }
+
+
+    private Set<AnsibleLintIssue> toSet(FileIssues fileIssues) {
+        Set<AnsibleLintIssue> set = new LinkedHashSet<>();
+        for (int i = 0; i < fileIssues.size; i++) {
+            long key = fileIssues.records[2 * i];
+            long value = fileIssues.records[2 * i + 1];
+            int message = (int)value;
+            set.add(new AnsibleLintIssue((int)(key >>> 32), (int)(value >>> 32), ids.get((int)key),
+                    (message == NO_MESSAGE) ? null : messages.get(message)));
+        }
+        return Collections.unmodifiableSet(set);
+    }
+
+
+    /**
+     * Issues of a file, backed by the store
+     */
+    private final class FileView extends AbstractSet<AnsibleLintIssue> {
+        private final URI file;
+
+        FileView(URI file) {
+            this.file = file;
+        }
+
+        @Override
+        public boolean add(AnsibleLintIssue issue) {
+            return IssueStore.this.add(file, issue);
+        }
+
+        @Override
+        public Iterator<AnsibleLintIssue> iterator() {
+            FileIssues fileIssues = files.get(file);
+            return (fileIssues == null) ? Collections.emptyIterator() : toSet(fileIssues).iterator();
+        }
+
+        @Override
+        public int size() {
+            FileIssues fileIssues = files.get(file);
+            return (fileIssues == null) ? 0 : fileIssues.size;
+        }
+    }
+
+
+    /**
+     * Dictionary of strings, each string being identified by its index
+     */
+    private static final class Dictionary {
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int intern(String value) {
+            Integer index = indexes.get(value);
+            if (index == null) {
+                index = values.size();
+                values.add(value);
+                indexes.put(value, index);
+            }
+            return index;
+        }
+
+        String get(int index) {
+            return values.get(index);
+        }
+
+        void clear() {
+            indexes.clear();
+            values.clear();
+        }
+    }
+
+
+    /**
+     * Issues of a file. Each issue is a record of two longs: the line and the rule id index, that identify the issue,
+     * then the column and the message index. An open-addressing table of record indexes detects duplicates.
+     */
+    private static final class FileIssues {
+        private long[] records = new long[8];
+        private int[] table = new int[16];
+        private int size = 0;
+
+        boolean contains(long key) {
+            int mask = table.length - 1;
+            for (int slot = hash(key) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+                if (records[2 * (table[slot] - 1)] == key) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void add(long key, long value) {
+            if (2 * (size + 1) > records.length) {
+                records = Arrays.copyOf(records, 2 * records.length);
+            }
+            records[2 * size] = key;
+            records[2 * size + 1] = value;
+            size++;
+            if (2 * size > table.length) {
+                table = new int[2 * table.length];
+                for (int i = 0; i < size; i++) {
+                    insert(i);
+                }
+            } else {
+                insert(size - 1);
+            }
+        }
+
+        private void insert(int index) {
+            int mask = table.length - 1;
+            int slot = hash(records[2 * index]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = index + 1;
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9e3779b97f4a7c15L;
+            return (int)(h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2018-2021, Sylvain Baudoin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.sbaudoin.sonar.plugins.ansible.rules;
+
+import org.sonar.api.batch.fs.InputFile;
+
+import java.net.URI;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Tracks the {@code ansible-lint} executions that have not completed yet and the files on which each of them may report
+ * issues, i.e. the files of the execution and the files they depend on according to the dependency graph. A file
+ * whose issues are not expected from any pending execution anymore can be saved and released.
+ */
+final class PendingExecutions {
+    private final AnsibleDependencyGraph graph;
+    private final Map<Object, Set<Path>> executions = new IdentityHashMap<>();
+    private final Map<Path, Integer> pendingFiles = new HashMap<>();
+
+
+    /**
+     * Constructor
+     *
+     * @param graph the dependency graph of the analyzed files
+     */
+    PendingExecutions(AnsibleDependencyGraph graph) {
+        this.graph = graph;
+    }
+
+
+    /**
+     * Registers a pending execution
+     *
+     * @param execution the execution, identified by the identity of the object (typically its batch of files)
+     * @param files the files passed to the execution
+     */
+    void add(Object execution, Collection<InputFile> files) {
+        Set<Path> reached = new HashSet<>();
+        for (InputFile inputFile : files) {
+            reached.addAll(graph.getDependencies(getPath(inputFile.uri())));
+        }
+        executions.put(execution, reached);
+        reached.forEach(path -> pendingFiles.merge(path, 1, Integer::sum));
+    }
+
+    /**
+     * Marks an execution as completed. Nothing is done if the execution is unknown or already completed.
+     *
+     * @param execution an execution previously registered with {@link #add(Object, Collection)}
+     */
+    void complete(Object execution) {
+        Set<Path> reached = executions.remove(execution);
+        if (reached == null) {
+            return;
+        }
+        for (Path path : reached) {
+            pendingFiles.computeIfPresent(path, (p, count) -> (count > 1) ? count - 1 : null);
+        }
+    }
+
+    /**
+     * Tells if a pending execution may still report issues on the passed file
+     *
+     * @param file the URI of a file
+     * @return {@code true} if issues on this file may still be reported
+     */
+    boolean isPending(URI file) {
+        Path path = getPath(file);
+        return path != null && pendingFiles.containsKey(path);
+    }
+
+    /**
+     * Returns the number of pending executions
+     *
+     * @return the number of registered executions that have not completed yet
+     */
+    int size() {
+        return executions.size();
+    }
+
+
+    private static Path getPath(URI file) {
+        try {
+            return Paths.get(file).toAbsolutePath().normalize();
+        } catch (IllegalArgumentException|FileSystemNotFoundException e) {
+            // Not a file
+            return null;
+        }
+    }
+}
@@ -30,6 +30,46 @@ public class AnsibleSettings {
     public static final String ANSIBLE_LINT_CONF_PATH_DEFAULT_VALUE = "";
     public static final String ANSIBLE_LINT_DISABLE_WARNINGS_KEY = "sonar.ansible.ansiblelint.disable_warnings";
     public static final String ANSIBLE_LINT_DISABLE_WARNINGS_DEFAULT_VALUE = "false";
+    public static final String ANSIBLE_LINT_BATCH_SIZE_KEY = "sonar.ansible.ansiblelint.batch_size";
+    public static final String ANSIBLE_LINT_BATCH_SIZE_DEFAULT_VALUE = "1";
+    public static final String ANSIBLE_LINT_THREADS_KEY = "sonar.ansible.ansiblelint.threads";
+    public static final String ANSIBLE_LINT_THREADS_DEFAULT_VALUE = "1";
+    public static final String ANSIBLE_LINT_WORKER_KEY = "sonar.ansible.ansiblelint.worker";
+    public static final String ANSIBLE_LINT_WORKER_DEFAULT_VALUE = "false";
+    public static final String PYTHON_PATH_KEY = "sonar.ansible.python.path";
+    public static final String PYTHON_PATH_DEFAULT_VALUE = "";
+    public static final String ANSIBLE_LINT_CACHE_KEY = "sonar.ansible.ansiblelint.cache";
+    public static final String ANSIBLE_LINT_CACHE_DEFAULT_VALUE = "false";
+    public static final String ANSIBLE_LINT_CHANGED_FILES_ONLY_KEY = "sonar.ansible.ansiblelint.changed_files_only";
+    public static final String ANSIBLE_LINT_CHANGED_FILES_ONLY_DEFAULT_VALUE = "false";
+    public static final String DEPENDENCY_GRAPH_KEY = "sonar.ansible.dependency_graph";
+    public static final String DEPENDENCY_GRAPH_DEFAULT_VALUE = "false";
+    public static final String ANSIBLE_LINT_SKIP_COVERED_FILES_KEY = "sonar.ansible.ansiblelint.skip_covered_files";
+    public static final String ANSIBLE_LINT_SKIP_COVERED_FILES_DEFAULT_VALUE = "false";
+    public static final String ANSIBLE_LINT_OUTPUT_FORMAT_KEY = "sonar.ansible.ansiblelint.output_format";
+    public static final String ANSIBLE_LINT_OUTPUT_FORMAT_DEFAULT_VALUE = "parseable";
+    public static final String ANSIBLE_LINT_COMBINED_KEY = "sonar.ansible.ansiblelint.combined";
+    public static final String ANSIBLE_LINT_COMBINED_DEFAULT_VALUE = "false";
+    public static final String ANSIBLE_LINT_STREAMING_KEY = "sonar.ansible.ansiblelint.streaming";
+    public static final String ANSIBLE_LINT_STREAMING_DEFAULT_VALUE = "false";
+    public static final String ANSIBLE_LINT_PERFORMANCE_REPORT_KEY = "sonar.ansible.ansiblelint.performance_report";
+    public static final String ANSIBLE_LINT_PERFORMANCE_REPORT_DEFAULT_VALUE = "false";
+    public static final String ANSIBLE_LINT_TIMEOUT_KEY = "sonar.ansible.ansiblelint.timeout";
+    public static final String ANSIBLE_LINT_TIMEOUT_DEFAULT_VALUE = "0";
+    public static final String ANSIBLE_LINT_TIMEOUT_RETRIES_KEY = "sonar.ansible.ansiblelint.timeout_retries";
+    public static final String ANSIBLE_LINT_TIMEOUT_RETRIES_DEFAULT_VALUE = "1";
+    public static final String NON_ANSIBLE_FILES_SKIP_KEY = "sonar.ansible.non_ansible_files.skip";
+    public static final String NON_ANSIBLE_FILES_SKIP_DEFAULT_VALUE = "";
+    public static final String ANSIBLE_LINT_ENTRY_POINTS_KEY = "sonar.ansible.ansiblelint.entry_points";
+    public static final String ANSIBLE_LINT_ENTRY_POINTS_DEFAULT_VALUE = "false";
+    public static final String RULE_ENGINE_KEY = "sonar.ansible.rule_engine";
+    public static final String RULE_ENGINE_DEFAULT_VALUE = "ansible-lint";
+    public static final String RULE_ENGINE_NATIVE = "native";
+    public static final String RULE_ENGINE_HYBRID = "hybrid";
+    public static final String ANSIBLE_LINT_ACTIVE_RULES_ONLY_KEY = "sonar.ansible.ansiblelint.active_rules_only";
+    public static final String ANSIBLE_LINT_ACTIVE_RULES_ONLY_DEFAULT_VALUE = "false";
+    public static final String ANSIBLE_LINT_PROJECT_MODE_KEY = "sonar.ansible.ansiblelint.project_mode";
+    public static final String ANSIBLE_LINT_PROJECT_MODE_DEFAULT_VALUE = "false";
     public static final String CATEGORY = "Ansible";
 
 
@@ -60,6 +100,160 @@ public class AnsibleSettings {
                         .defaultValue(ANSIBLE_LINT_DISABLE_WARNINGS_DEFAULT_VALUE)
                         .category(CATEGORY)
                         .onQualifiers(Qualifiers.PROJECT)
+                        .build(),
+                PropertyDefinition.builder(ANSIBLE_LINT_BATCH_SIZE_KEY)
+                        .name("Number of files per ansible-lint execution")
+                        .description("Maximum number of files passed to a single ansible-lint execution. Increase it to save the Python and Ansible startup time on large projects; batches are also cut so that the command line stays within the system limits.")
+                        .type(PropertyType.INTEGER)
+                        .defaultValue(ANSIBLE_LINT_BATCH_SIZE_DEFAULT_VALUE)
+                        .category(CATEGORY)
+                        .onQualifiers(Qualifiers.PROJECT)
+                        .build(),
+                PropertyDefinition.builder(ANSIBLE_LINT_THREADS_KEY)
+                        .name("Number of concurrent ansible-lint executions")
+                        .description("Number of ansible-lint executions that can run at the same time. Issues are still reported in the same order as with a single thread.")
+                        .type(PropertyType.INTEGER)
+                        .defaultValue(ANSIBLE_LINT_THREADS_DEFAULT_VALUE)
+                        .category(CATEGORY)
+                        .onQualifiers(Qualifiers.PROJECT)
+                        .build(),
+                PropertyDefinition.builder(ANSIBLE_LINT_WORKER_KEY)
+                        .name("Use a long-lived ansible-lint worker")
+                        .description("Load ansible-lint once in a Python process that analyzes all the files, instead of starting one ansible-lint process per execution. If the installed ansible-lint is not compatible with the worker, the plugin falls back to one process per execution.")
+                        .type(PropertyType.BOOLEAN)
+                        .defaultValue(ANSIBLE_LINT_WORKER_DEFAULT_VALUE)
+                        .category(CATEGORY)
+                        .onQualifiers(Qualifiers.PROJECT)
+                        .build(),
+                PropertyDefinition.builder(PYTHON_PATH_KEY)
+                        .name("Path to Python")
+                        .description("Path to the Python interpreter with which ansible-lint is installed, used to run the ansible-lint worker. Leave it empty if python3 is in the system path.")
+                        .defaultValue(PYTHON_PATH_DEFAULT_VALUE)
+                        .category(CATEGORY)
+                        .onQualifiers(Qualifiers.PROJECT)
+                        .build(),
+                PropertyDefinition.builder(ANSIBLE_LINT_CACHE_KEY)
+                        .name("Cache ansible-lint results")
+                        .description("Keep the ansible-lint results in the SonarQube user home and do not analyze again the files that did not change since the previous analysis, with the same ansible-lint version and configuration. Issues reported on the roles of an unchanged playbook are taken from the cache too, unless these roles changed (this setting enables the dependency graph).")
+                        .type(PropertyType.BOOLEAN)
+                        .defaultValue(ANSIBLE_LINT_CACHE_DEFAULT_VALUE)
+                        .category(CATEGORY)
+                        .onQualifiers(Qualifiers.PROJECT)
+                        .build(),
+                PropertyDefinition.builder(ANSIBLE_LINT_CHANGED_FILES_ONLY_KEY)
+                        .name("Analyze changed files only")
+                        .description("Only pass the changed and added files to ansible-lint in pull request analyses (sonar.pullrequest.key set). This speeds up the analysis but the issues that an unchanged playbook would report on a changed role are not raised.")
+                        .type(PropertyType.BOOLEAN)
+                        .defaultValue(ANSIBLE_LINT_CHANGED_FILES_ONLY_DEFAULT_VALUE)
+                        .category(CATEGORY)
+                        .onQualifiers(Qualifiers.PROJECT)
+                        .build(),
+                PropertyDefinition.builder(DEPENDENCY_GRAPH_KEY)
+                        .name("Track dependencies between Ansible files")
+                        .description("Build the graph of the playbooks, roles, task files, handlers and vars files that reference each other. With the changed files only option, the playbooks that use a changed file are analyzed again; with the cache, a playbook is analyzed again when one of the files it uses changed.")
+                        .type(PropertyType.BOOLEAN)
+                        .defaultValue(DEPENDENCY_GRAPH_DEFAULT_VALUE)
+                        .category(CATEGORY)
+                        .onQualifiers(Qualifiers.PROJECT)
+                        .build(),
+                PropertyDefinition.builder(ANSIBLE_LINT_SKIP_COVERED_FILES_KEY)
+                        .name("Skip files covered by playbook analyses")
+                        .description("Analyze the playbooks first and do not analyze again the role files for which ansible-lint already reported results when analyzing a playbook. With the dependency graph, all the files used by an analyzed playbook are skipped.")
+                        .type(PropertyType.BOOLEAN)
+                        .defaultValue(ANSIBLE_LINT_SKIP_COVERED_FILES_DEFAULT_VALUE)
+                        .category(CATEGORY)
+                        .onQualifiers(Qualifiers.PROJECT)
+                        .build(),
+                PropertyDefinition.builder(ANSIBLE_LINT_OUTPUT_FORMAT_KEY)
+                        .name("ansible-lint output format")
+                        .description("Output format requested to ansible-lint. The structured formats (json, codeclimate and sarif) keep the full messages and the columns of the issues; they require ansible-lint 5 or later (6 or later for sarif), otherwise the parseable format is used.")
+                        .type(PropertyType.SINGLE_SELECT_LIST)
+                        .options(ANSIBLE_LINT_OUTPUT_FORMAT_DEFAULT_VALUE, "json", "codeclimate", "sarif")
+                        .defaultValue(ANSIBLE_LINT_OUTPUT_FORMAT_DEFAULT_VALUE)
+                        .category(CATEGORY)
+                        .onQualifiers(Qualifiers.PROJECT)
+                        .build(),
+                PropertyDefinition.builder(ANSIBLE_LINT_COMBINED_KEY)
+                        .name("Combined ansible-lint execution")
+                        .description("When extra rules plugins are installed, execute ansible-lint once with the default rules and the extra rules of all the plugins, instead of once per plugin.")
+                        .type(PropertyType.BOOLEAN)
+                        .defaultValue(ANSIBLE_LINT_COMBINED_DEFAULT_VALUE)
+                        .category(CATEGORY)
+                        .onQualifiers(Qualifiers.PROJECT)
+                        .build(),
+                PropertyDefinition.builder(ANSIBLE_LINT_STREAMING_KEY)
+                        .name("Save issues while ansible-lint is running")
+                        .description("Save the issues of a file as soon as no pending ansible-lint execution can report issues on it anymore, according to the dependency graph (built even if not enabled), instead of keeping all the issues in memory until the end of the analysis.")
+                        .type(PropertyType.BOOLEAN)
+                        .defaultValue(ANSIBLE_LINT_STREAMING_DEFAULT_VALUE)
+                        .category(CATEGORY)
+                        .onQualifiers(Qualifiers.PROJECT)
+                        .build(),
+                PropertyDefinition.builder(ANSIBLE_LINT_PERFORMANCE_REPORT_KEY)
+                        .name("ansible-lint performance report")
+                        .description("Log a summary of the time spent in the ansible-lint executions (totals, percentiles and slowest files) and write the measures of every execution to the JSON file ansible-lint-performance.json of the scanner working directory.")
+                        .type(PropertyType.BOOLEAN)
+                        .defaultValue(ANSIBLE_LINT_PERFORMANCE_REPORT_DEFAULT_VALUE)
+                        .category(CATEGORY)
+                        .onQualifiers(Qualifiers.PROJECT)
+                        .build(),
+                PropertyDefinition.builder(ANSIBLE_LINT_TIMEOUT_KEY)
+                        .name("ansible-lint timeout")
+                        .description("Maximum duration in seconds of an ansible-lint execution. An execution that takes longer is killed and retried; if it still times out, its files are skipped and reported at the end of the analysis. 0 means no limit.")
+                        .type(PropertyType.INTEGER)
+                        .defaultValue(ANSIBLE_LINT_TIMEOUT_DEFAULT_VALUE)
+                        .category(CATEGORY)
+                        .onQualifiers(Qualifiers.PROJECT)
+                        .build(),
+                PropertyDefinition.builder(ANSIBLE_LINT_TIMEOUT_RETRIES_KEY)
+                        .name("ansible-lint retries on timeout")
+                        .description("Number of times an ansible-lint execution that timed out is retried before its files are skipped.")
+                        .type(PropertyType.INTEGER)
+                        .defaultValue(ANSIBLE_LINT_TIMEOUT_RETRIES_DEFAULT_VALUE)
+                        .category(CATEGORY)
+                        .onQualifiers(Qualifiers.PROJECT)
+                        .build(),
+                PropertyDefinition.builder(NON_ANSIBLE_FILES_SKIP_KEY)
+                        .name("Skipped non-Ansible files")
+                        .description("Kinds of YAML files that are not analyzed with ansible-lint because they are clearly not Ansible content: vault (Ansible Vault encrypted files), kubernetes (manifests), helm (charts), openapi (OpenAPI and Swagger specifications) and ci (CI pipelines). Files in the Ansible directory layout (roles, playbooks, group_vars, host_vars) and playbooks are always analyzed.")
+                        .type(PropertyType.STRING)
+                        .multiValues(true)
+                        .defaultValue(NON_ANSIBLE_FILES_SKIP_DEFAULT_VALUE)
+                        .category(CATEGORY)
+                        .onQualifiers(Qualifiers.PROJECT)
+                        .build(),
+                PropertyDefinition.builder(ANSIBLE_LINT_ENTRY_POINTS_KEY)
+                        .name("Analyze entry-point playbooks only")
+                        .description("Pass only the entry-point playbooks (playbooks with plays that no other playbook imports) to ansible-lint, which follows their roles and includes. The files that no entry-point playbook reaches are analyzed on their own. Enables the dependency graph.")
+                        .type(PropertyType.BOOLEAN)
+                        .defaultValue(ANSIBLE_LINT_ENTRY_POINTS_DEFAULT_VALUE)
+                        .category(CATEGORY)
+                        .onQualifiers(Qualifiers.PROJECT)
+                        .build(),
+                PropertyDefinition.builder(RULE_ENGINE_KEY)
+                        .name("Rule engine")
+                        .description("Engine that checks the rules. With native, the rules implemented in Java (command-instead-of-module, package-latest, no-changed-when, risky-shell-pipe, literal-compare and unnamed-task, or their legacy ids) are checked in-process and ansible-lint is not executed: the other active rules are not checked. With hybrid, these rules are checked in-process and skipped by ansible-lint (-x option), that checks the other active rules; ansible-lint is not executed if all the active rules have a native implementation.")
+                        .type(PropertyType.SINGLE_SELECT_LIST)
+                        .options(RULE_ENGINE_DEFAULT_VALUE, RULE_ENGINE_NATIVE, RULE_ENGINE_HYBRID)
+                        .defaultValue(RULE_ENGINE_DEFAULT_VALUE)
+                        .category(CATEGORY)
+                        .onQualifiers(Qualifiers.PROJECT)
+                        .build(),
+                PropertyDefinition.builder(ANSIBLE_LINT_ACTIVE_RULES_ONLY_KEY)
+                        .name("Check active rules only")
+                        .description("If true, ansible-lint is restricted to the rules active in the quality profile: an effective configuration that selects these rules (tags, and enable_list as of ansible-lint 5) is generated in the SonarQube user home and merged with the ansible-lint configuration file (or the default .ansible-lint file of the project); tags already set in that file are kept, in which case ansible-lint is not restricted. The configuration is only generated again when the quality profile or the configuration file change.")
+                        .type(PropertyType.BOOLEAN)
+                        .defaultValue(ANSIBLE_LINT_ACTIVE_RULES_ONLY_DEFAULT_VALUE)
+                        .category(CATEGORY)
+                        .onQualifiers(Qualifiers.PROJECT)
+                        .build(),
+                PropertyDefinition.builder(ANSIBLE_LINT_PROJECT_MODE_KEY)
+                        .name("Project mode")
+                        .description("If true, ansible-lint is executed once from the project base directory, without file arguments, so that it discovers the files to lint by itself (ansible-lint 5 or later). The output is parsed while it is read but the issues are only registered once ansible-lint has completed, so that an execution that times out saves none; issues on files that are not analyzed by SonarQube are dropped. This mode takes precedence over the batch, worker, cache, changed-files-only, coverage-aware and entry-point settings.")
+                        .type(PropertyType.BOOLEAN)
+                        .defaultValue(ANSIBLE_LINT_PROJECT_MODE_DEFAULT_VALUE)
+                        .category(CATEGORY)
+                        .onQualifiers(Qualifiers.PROJECT)
                         .build()
         );
     }
@@ -21,10 +21,15 @@ import org.sonar.api.utils.log.Loggers;
 import java.io.Closeable;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
@@ -85,4 +90,34 @@ public final class FileSystem implements Closeable {
             return paths.stream();
         }
     }
+
+    /**
+     * Returns a hash of the 1st-level content of the passed directory described as a URI: the names and the contents of
+     * its files. The hash changes as soon as a file is added, removed, renamed or modified.
+     *
+     * @param uri an URI to a directory
+     * @return the SHA-256 hash of the directory content, in hexadecimal
+     * @throws IOException if an I/O error occurs
+     * @see #readDirectory(URI)
+     */
+    public String getContentHash(URI uri) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not supported", e);
+        }
+        List<Path> entries = readDirectory(uri).filter(Files::isRegularFile).sorted(Comparator.comparing(path -> path.getFileName().toString())).collect(Collectors.toList());
+        for (Path entry : entries) {
+            digest.update(entry.getFileName().toString().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte)0);
+            digest.update(Files.readAllBytes(entry));
+            digest.update((byte)0);
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
 }
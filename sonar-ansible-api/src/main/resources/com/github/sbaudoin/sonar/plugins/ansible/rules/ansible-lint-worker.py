@@ -0,0 +1,112 @@
+#
+# Copyright (c) 2018-2021, Sylvain Baudoin
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#     http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+"""
+Long-lived ansible-lint worker used by the SonarQube Ansible plugin.
+
+The worker is started with the same options as the ansible-lint command line (without the files to be analyzed). It
+loads ansible-lint and its rules once, then prints "READY <version>" (or "UNSUPPORTED <reason>" before exiting if the
+installed ansible-lint cannot be driven this way). Each line then read from the standard input is a request made of
+tab-separated file paths; the issues found are written to the standard output with the parseable format
+"path:line: [E<rule id>] message", followed by an end marker line.
+"""
+import os
+import sys
+
+END_MARKER = "__ANSIBLE_LINT_WORKER_END__"
+
+
+def write(line):
+    sys.stdout.write(line + "\n")
+    sys.stdout.flush()
+
+
+def get_version():
+    try:
+        from ansiblelint.version import __version__
+        return __version__
+    except ImportError:
+        return "unknown"
+
+
+def get_rules_dirs(options):
+    import ansiblelint
+    for module in ("ansiblelint.rules", "ansiblelint.utils"):
+        try:
+            return __import__(module, fromlist=["get_rules_dirs"]).get_rules_dirs(
+                [str(rulesdir) for rulesdir in options.rulesdir], options.use_default_rules)
+        except (ImportError, AttributeError):
+            pass
+    default_rulesdir = os.path.join(os.path.dirname(ansiblelint.__file__), "rules")
+    if options.use_default_rules:
+        return list(options.rulesdir) + [default_rulesdir]
+    return list(options.rulesdir) or [default_rulesdir]
+
+
+def load(args):
+    from ansiblelint.cli import get_config
+    from ansiblelint.rules import RulesCollection
+    from ansiblelint.runner import Runner
+
+    options = get_config(args)
+    rulesdirs = get_rules_dirs(options)
+    try:
+        rules = RulesCollection(rulesdirs, options=options)
+    except TypeError:
+        rules = RulesCollection(rulesdirs)
+
+    def lint(paths):
+        checked_files = set()
+        try:
+            # ansible-lint 5+
+            matches = Runner(*paths, rules=rules, tags=options.tags, skip_list=options.skip_list,
+                             exclude_paths=options.exclude_paths, verbosity=options.verbosity,
+                             checked_files=checked_files).run()
+        except TypeError:
+            # ansible-lint 4
+            matches = []
+            for path in paths:
+                matches.extend(Runner(rules, path, options.tags, options.skip_list, options.exclude_paths,
+                                      options.verbosity, checked_files).run())
+        for match in matches:
+            line = getattr(match, "linenumber", None) or getattr(match, "lineno", None) or 1
+            yield "%s:%d: [E%s] %s" % (match.filename, line, match.rule.id, match.message)
+
+    return lint
+
+
+def main(args):
+    try:
+        lint = load(args)
+    except Exception as e:  # pylint: disable=broad-except
+        write("UNSUPPORTED %r" % e)
+        return 1
+    write("READY %s" % get_version())
+
+    for request in iter(sys.stdin.readline, ""):
+        request = request.rstrip("\r\n")
+        if request:
+            try:
+                for issue in lint(request.split("\t")):
+                    write(issue)
+            except Exception as e:  # pylint: disable=broad-except
+                sys.stderr.write("Error analyzing %s: %r\n" % (request, e))
+                sys.stderr.flush()
+        write(END_MARKER)
+    return 0
+
+
+if __name__ == "__main__":
+    sys.exit(main(sys.argv[1:]))
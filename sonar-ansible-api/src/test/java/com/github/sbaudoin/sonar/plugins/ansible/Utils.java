@@ -45,11 +45,16 @@ public class Utils {
 
 
     public static InputFile getInputFile(String relativePath) throws IOException {
+        return getInputFile(relativePath, null);
+    }
+
+    public static InputFile getInputFile(String relativePath, InputFile.Status status) throws IOException {
         return TestInputFileBuilder.create(MODULE_KEY, relativePath)
                 .setModuleBaseDir(BASE_DIR)
                 .setContents(new String(Files.readAllBytes(BASE_DIR.resolve(relativePath))))
                 .setLanguage(YamlLanguage.KEY)
                 .setCharset(StandardCharsets.UTF_8)
+                .setStatus(status)
                 .build();
     }
 
@@ -17,6 +17,8 @@ package com.github.sbaudoin.sonar.plugins.ansible.extras.rules;
 
 import com.github.sbaudoin.sonar.plugins.ansible.Utils;
 import com.github.sbaudoin.sonar.plugins.ansible.checks.AnsibleCheckRepository;
+import com.github.sbaudoin.sonar.plugins.ansible.rules.AnsibleLintRegistry;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -35,12 +37,13 @@ import org.sonar.api.measures.FileLinesContextFactory;
 import org.sonar.api.rule.RuleKey;
 
 import java.io.IOException;
+import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.URISyntaxException;
 import java.nio.file.*;
 
-import static com.github.sbaudoin.sonar.plugins.ansible.extras.rules.AnsibleExtraSensor.EXTRA_RULES_TEMP_DIR;
+import static com.github.sbaudoin.sonar.plugins.ansible.extras.rules.AnsibleExtraSensor.EXTRA_RULES_CACHE_DIR;
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.any;
 import static org.powermock.api.mockito.PowerMockito.mock;
@@ -106,7 +109,7 @@ public class AnsibleExtraSensorAdvancedTest {
         method.setAccessible(true);
 
         // Create a temporary directory and copy some files
-        Path tempDir = Files.createTempDirectory(EXTRA_RULES_TEMP_DIR);
+        Path tempDir = Files.createTempDirectory(EXTRA_RULES_CACHE_DIR);
         Path copyFile = tempDir.resolve(Paths.get("extra-rule1.sh"));
         Files.copy(Paths.get("src/test/resources/extra-rules/extra-rule1.sh"), copyFile);
 
@@ -125,7 +128,7 @@ public class AnsibleExtraSensorAdvancedTest {
         method.setAccessible(true);
 
         // Create a temporary directory and copy some files
-        Path tempDir = Files.createTempDirectory(EXTRA_RULES_TEMP_DIR);
+        Path tempDir = Files.createTempDirectory(EXTRA_RULES_CACHE_DIR);
         Path copyFile = tempDir.resolve(Paths.get("extra-rule1.sh"));
         Files.copy(Paths.get("src/test/resources/extra-rules/extra-rule1.sh"), copyFile);
 
@@ -134,6 +137,12 @@ public class AnsibleExtraSensorAdvancedTest {
     }
 
 
+    @After
+    public void tearDown() {
+        System.clearProperty(AnsibleLintRegistry.DEFAULT_RULES_PROPERTY);
+        System.clearProperty(AnsibleLintRegistry.EXTRA_RULES_PROPERTY);
+    }
+
     @Before
     public void init() throws Exception {
         context = Utils.getSensorContext();
@@ -154,5 +163,12 @@ public class AnsibleExtraSensorAdvancedTest {
         when(fileLinesContextFactory.createFor(any(InputFile.class))).thenReturn(mock(FileLinesContext.class));
 
         sensor = new AnsibleExtraSensor(context.fileSystem());
+
+        // Do not extract the rules to the user home
+        Path userHome = temporaryFolder.newFolder("sonar").toPath();
+        context.settings().setProperty("sonar.userHome", userHome.toString());
+        Field extractionDir = AnsibleExtraSensor.class.getDeclaredField("extractionDir");
+        extractionDir.setAccessible(true);
+        extractionDir.set(sensor, userHome.resolve(EXTRA_RULES_CACHE_DIR));
     }
 }
@@ -17,8 +17,10 @@ package com.github.sbaudoin.sonar.plugins.ansible.extras.rules;
 
 import com.github.sbaudoin.sonar.plugins.ansible.Utils;
 import com.github.sbaudoin.sonar.plugins.ansible.checks.AnsibleCheckRepository;
+import com.github.sbaudoin.sonar.plugins.ansible.rules.AnsibleLintRegistry;
 import com.github.sbaudoin.sonar.plugins.ansible.settings.AnsibleSettings;
 import com.github.sbaudoin.sonar.plugins.yaml.languages.YamlLanguage;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -34,9 +36,12 @@ import org.sonar.api.config.Configuration;
 import org.sonar.api.measures.FileLinesContext;
 import org.sonar.api.measures.FileLinesContextFactory;
 import org.sonar.api.rule.RuleKey;
+import org.sonar.api.utils.log.LogTester;
+import org.sonar.api.utils.log.LoggerLevel;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.URISyntaxException;
@@ -46,7 +51,7 @@ import java.util.function.Predicate;
 
 import static com.github.sbaudoin.sonar.plugins.ansible.Utils.issueExists;
 import static com.github.sbaudoin.sonar.plugins.ansible.Utils.setShellRights;
-import static com.github.sbaudoin.sonar.plugins.ansible.extras.rules.AnsibleExtraSensor.EXTRA_RULES_TEMP_DIR;
+import static com.github.sbaudoin.sonar.plugins.ansible.extras.rules.AnsibleExtraSensor.EXTRA_RULES_CACHE_DIR;
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.when;
@@ -63,6 +68,9 @@ public class AnsibleExtraSensorSimpleTest {
     @Rule
     public final TemporaryFolder temporaryFolder = new TemporaryFolder();
 
+    @Rule
+    public LogTester logTester = new LogTester();
+
 
     @Test
     public void testExecute() throws IOException {
@@ -94,6 +102,61 @@ public class AnsibleExtraSensorSimpleTest {
         assertTrue(issueExists(issues, ruleKey1, playbook1, 4, null));
         assertTrue(issueExists(issues, ruleKey2, playbook1, 5, "Another error --nocolor"));
         assertTrue(issueExists(issues, ruleKey2, playbook2, 3, "Another error -q"));
+
+        // The rules are extracted to the project data directory
+        Path dataDir = Paths.get(context.config().get("sonar.userHome").get(), "ansible-lint-data");
+        assertEquals(1, dataDir.toFile().list().length);
+        assertTrue(Files.isDirectory(dataDir.resolve(dataDir.toFile().list()[0]).resolve(EXTRA_RULES_CACHE_DIR)));
+    }
+
+    @Test
+    public void testExecuteCombined() throws IOException {
+        InputFile playbook1 = Utils.getInputFile("playbooks/playbook1.yml");
+        InputFile playbook2 = Utils.getInputFile("playbooks/playbook2.yml");
+        context.fileSystem().add(playbook1).add(playbook2);
+
+        if (System.getProperty("os.name").toLowerCase().contains("windows")) {
+            context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY,
+                    new File(getClass().getResource("/scripts/ansible-lint4.cmd").getFile()).getAbsolutePath());
+        } else {
+            String path = new File(getClass().getResource("/scripts/ansible-lint4.sh").getFile()).getAbsolutePath();
+            context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY, path);
+            setShellRights(path);
+        }
+        context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_COMBINED_KEY, "true");
+
+        assertTrue(AnsibleLintRegistry.getExtraRules().stream().anyMatch(uri -> uri.toString().endsWith(AnsibleExtraSensor.EXTRA_RULES_DIR)));
+        sensor.execute(context);
+        assertEquals(4, context.allIssues().size());
+
+        // Another extra rules sensor of the same module does not execute ansible-lint again
+        new AnsibleExtraSensor(context.fileSystem()).execute(context);
+        assertEquals(4, context.allIssues().size());
+    }
+
+    @Test
+    public void testExecuteCombinedExtractionFailure() throws IOException, IllegalAccessException, NoSuchFieldException {
+        InputFile playbook1 = Utils.getInputFile("playbooks/playbook1.yml");
+        context.fileSystem().add(playbook1);
+
+        if (System.getProperty("os.name").toLowerCase().contains("windows")) {
+            context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY,
+                    new File(getClass().getResource("/scripts/ansible-lint3.cmd").getFile()).getAbsolutePath());
+        } else {
+            String path = new File(getClass().getResource("/scripts/ansible-lint3.sh").getFile()).getAbsolutePath();
+            context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY, path);
+            setShellRights(path);
+        }
+        context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_COMBINED_KEY, "true");
+        AnsibleLintRegistry.registerDefaultRules();
+
+        // The extraction directory cannot be created: the default rules are executed anyway
+        Path userHome = temporaryFolder.newFile("not-a-directory").toPath();
+        context.settings().setProperty("sonar.userHome", userHome.toString());
+        logTester.clear();
+        sensor.execute(context);
+        assertTrue(logTester.logs(LoggerLevel.WARN).contains("No extra rules could be extracted, executing the default rules only"));
+        assertTrue(issueExists(context.allIssues(), ruleKey1, playbook1, 3, "An error -p"));
     }
 
     @Test
@@ -102,7 +165,7 @@ public class AnsibleExtraSensorSimpleTest {
         Method method = AnsibleExtraSensor.class.getDeclaredMethod("copyExtraRule", Path.class, Path.class);
         method.setAccessible(true);
 
-        Path tempDir = Files.createTempDirectory(EXTRA_RULES_TEMP_DIR);
+        Path tempDir = Files.createTempDirectory(EXTRA_RULES_CACHE_DIR);
 
         assertFalse((Boolean)method.invoke(sensor, Paths.get("src/test/resources/extra-rules/extra-rule1.foo"), tempDir));
         Path file = Paths.get(getClass().getResource("/extra-rules/extra-rule1.cmd").toURI());
@@ -132,6 +195,20 @@ public class AnsibleExtraSensorSimpleTest {
         assertTrue(tempDir.resolve("extra-rule1.sh").toFile().exists());
         assertTrue(tempDir.resolve("extra-rule2.cmd").toFile().exists());
         assertTrue(tempDir.resolve("extra-rule2.sh").toFile().exists());
+        assertEquals(64, tempDir.getFileName().toString().length());
+        assertEquals(EXTRA_RULES_CACHE_DIR, tempDir.getParent().getFileName().toString());
+
+        // The rules are extracted once: the same directory is reused and no temporary directory is left
+        tempDir.resolve("extra-rule1.sh").toFile().setLastModified(0);
+        assertEquals(tempDir, method.invoke(sensor, AnsibleExtraSensor.EXTRA_RULES_DIR));
+        assertEquals(0, tempDir.resolve("extra-rule1.sh").toFile().lastModified());
+        assertEquals(1, tempDir.getParent().toFile().list().length);
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty(AnsibleLintRegistry.DEFAULT_RULES_PROPERTY);
+        System.clearProperty(AnsibleLintRegistry.EXTRA_RULES_PROPERTY);
     }
 
     @Before
@@ -154,6 +231,13 @@ public class AnsibleExtraSensorSimpleTest {
         when(fileLinesContextFactory.createFor(any(InputFile.class))).thenReturn(mock(FileLinesContext.class));
 
         sensor = new AnsibleExtraSensor(context.fileSystem());
+
+        // Do not extract the rules to the user home
+        Path userHome = temporaryFolder.newFolder("sonar").toPath();
+        context.settings().setProperty("sonar.userHome", userHome.toString());
+        Field extractionDir = AnsibleExtraSensor.class.getDeclaredField("extractionDir");
+        extractionDir.setAccessible(true);
+        extractionDir.set(sensor, userHome.resolve(EXTRA_RULES_CACHE_DIR));
     }
 
 
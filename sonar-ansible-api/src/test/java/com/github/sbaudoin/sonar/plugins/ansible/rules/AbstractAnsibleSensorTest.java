@@ -37,16 +37,26 @@ import org.sonar.api.measures.FileLinesContextFactory;
 import org.sonar.api.rule.RuleKey;
 import org.sonar.api.utils.log.LogTester;
 import org.sonar.api.utils.log.LoggerLevel;
+import org.yaml.snakeyaml.Yaml;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 import static com.github.sbaudoin.sonar.plugins.ansible.Utils.issueExists;
 import static com.github.sbaudoin.sonar.plugins.ansible.Utils.setShellRights;
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.powermock.api.mockito.PowerMockito.*;
 
 public class AbstractAnsibleSensorTest {
@@ -68,7 +78,8 @@ public class AbstractAnsibleSensorTest {
 
 
     @Test
-    public void testExecuteWithAnsibleLintVersions() throws IOException {
+    public void testExecuteWithAnsibleLintVersions() throws IOException, InterruptedException {
+        context.fileSystem().add(Utils.getInputFile("playbooks/playbook1.yml"));
         if (System.getProperty("os.name").toLowerCase().contains("windows")) {
             context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY,
                     new File(getClass().getResource("/scripts/ansible-lint-version.cmd").getFile()).getAbsolutePath());
@@ -80,12 +91,37 @@ public class AbstractAnsibleSensorTest {
 
         logTester.clear();
         sensor.executeWithAnsibleLint(context, null);
-        assertEquals(1, logTester.logs(LoggerLevel.WARN).size());
         assertEquals("Cannot get ansible version", logTester.logs(LoggerLevel.WARN).get(0));
-        List<String> l = logTester.logs(LoggerLevel.INFO);
         assertEquals(2, logTester.logs(LoggerLevel.INFO).size());
         assertEquals("ansible-lint version:", logTester.logs(LoggerLevel.INFO).get(0));
         assertEquals("ansible-lint 1.2.3", logTester.logs(LoggerLevel.INFO).get(1));
+        assertEquals("ansible-lint 1.2.3", sensor.getAnsibleLintVersion());
+
+        // Second analysis, with a new working directory as the scanner empties it: the version of ansible-lint is taken
+        // from the cache
+        DefaultFileSystem fs2 = Utils.getFileSystem();
+        fs2.setWorkDir(temporaryFolder.newFolder("temp2").toPath());
+        fs2.add(Utils.getInputFile("playbooks/playbook1.yml"));
+        SensorContextTester context2 = Utils.getSensorContext();
+        context2.setFileSystem(fs2);
+        context2.setSettings(context.settings());
+        context2.setActiveRules(context.activeRules());
+        MySensor sensor2 = spy(new MySensor(fs2));
+        logTester.clear();
+        sensor2.executeWithAnsibleLint(context2, null);
+        assertEquals("ansible-lint 1.2.3", logTester.logs(LoggerLevel.INFO).get(1));
+        assertEquals("ansible-lint 1.2.3", sensor2.getAnsibleLintVersion());
+        verify(sensor2, never()).executeCommand(eq(Arrays.asList(sensor.getAnsibleLintPath(context2), "--version")), any(), any());
+    }
+
+    @Test
+    public void testExecuteWithAnsibleLintNoFile() throws IOException, InterruptedException {
+        MySensor theSensor = spy(sensor);
+        logTester.clear();
+        theSensor.executeWithAnsibleLint(context, null);
+        verify(theSensor, never()).executeCommand(any(), any(), any());
+        assertEquals(0, logTester.logs(LoggerLevel.INFO).size());
+        assertNull(theSensor.getAnsibleLintVersion());
     }
 
     @Test
@@ -256,6 +292,941 @@ public class AbstractAnsibleSensorTest {
         assertTrue(issueExists(issues, ruleKey1, playbook1, 2, "-p --nocolor -q -c /path/to/ansible-lint\\.conf " + Pattern.quote(new File(playbook1.uri()).getAbsolutePath())));
     }
 
+    @Test
+    public void testExecuteWithAnsibleLintBatches() throws IOException {
+        InputFile playbook1 = Utils.getInputFile("playbooks/playbook1.yml");
+        InputFile playbook2 = Utils.getInputFile("playbooks/playbook2.yml");
+        InputFile playbook3 = Utils.getInputFile("playbooks/playbook3.yml");
+        context.fileSystem().add(playbook1).add(playbook2).add(playbook3);
+
+        if (System.getProperty("os.name").toLowerCase().contains("windows")) {
+            context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY,
+                    new File(getClass().getResource("/scripts/ansible-lint-batch.cmd").getFile()).getAbsolutePath());
+        } else {
+            String path = new File(getClass().getResource("/scripts/ansible-lint-batch.sh").getFile()).getAbsolutePath();
+            context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY, path);
+            setShellRights(path);
+        }
+        context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_BATCH_SIZE_KEY, "2");
+
+        sensor.executeWithAnsibleLint(context, null);
+        assertEquals(3, sensor.scannedFiles.size());
+
+        Collection<Issue> issues = context.allIssues();
+        assertEquals(3, issues.size());
+        int twoFiles = 0;
+        int oneFile = 0;
+        for (InputFile playbook : Arrays.asList(playbook1, playbook2, playbook3)) {
+            if (issueExists(issues, ruleKey1, playbook, 2, "2 file\\(s\\)")) {
+                twoFiles++;
+            } else if (issueExists(issues, ruleKey1, playbook, 2, "1 file\\(s\\)")) {
+                oneFile++;
+            }
+        }
+        assertEquals(2, twoFiles);
+        assertEquals(1, oneFile);
+    }
+
+    @Test
+    public void testExecuteWithAnsibleLintPerformanceReport() throws IOException {
+        InputFile playbook1 = Utils.getInputFile("playbooks/playbook1.yml");
+        InputFile playbook2 = Utils.getInputFile("playbooks/playbook2.yml");
+        InputFile playbook3 = Utils.getInputFile("playbooks/playbook3.yml");
+        context.fileSystem().add(playbook1).add(playbook2).add(playbook3);
+
+        if (System.getProperty("os.name").toLowerCase().contains("windows")) {
+            context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY,
+                    new File(getClass().getResource("/scripts/ansible-lint-batch.cmd").getFile()).getAbsolutePath());
+        } else {
+            String path = new File(getClass().getResource("/scripts/ansible-lint-batch.sh").getFile()).getAbsolutePath();
+            context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY, path);
+            setShellRights(path);
+        }
+        context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_BATCH_SIZE_KEY, "2");
+        context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PERFORMANCE_REPORT_KEY, "true");
+
+        sensor.executeWithAnsibleLint(context, null);
+        assertEquals(3, context.allIssues().size());
+        assertTrue(logTester.logs(LoggerLevel.INFO).stream().anyMatch(log -> log.matches("ansible-lint performance: 2 execution\\(s\\) on 3 file\\(s\\), .*, [1-9][0-9]* byte\\(s\\) of output, 3 issue\\(s\\)")));
+        assertTrue(logTester.logs(LoggerLevel.INFO).stream().anyMatch(log -> log.startsWith("ansible-lint wall time per execution: p50 ")));
+        assertTrue(logTester.logs(LoggerLevel.INFO).stream().anyMatch(log -> log.startsWith("Slowest ansible-lint executions:") && log.contains("playbook3.yml")));
+        Path reportFile = context.fileSystem().workDir().toPath().resolve(AbstractAnsibleSensor.PERFORMANCE_REPORT_FILE);
+        assertTrue(Files.exists(reportFile));
+        String report = new String(Files.readAllBytes(reportFile), StandardCharsets.UTF_8);
+        assertTrue(report.startsWith("{\"executions\":2,\"files\":3,\"totals\":{"));
+        assertTrue(report.contains("\"issues\":3}"));
+        assertTrue(report.contains("\"wallMsPercentiles\":{\"p50\":"));
+    }
+
+    @Test
+    public void testExecuteWithAnsibleLintFailureSavesExecutionData() throws IOException {
+        InputFile playbook1 = Utils.getInputFile("playbooks/playbook1.yml");
+        InputFile playbook2 = Utils.getInputFile("playbooks/playbook2.yml");
+        InputFile playbook3 = Utils.getInputFile("playbooks/playbook3.yml");
+        context.fileSystem().add(playbook1).add(playbook2).add(playbook3);
+
+        if (System.getProperty("os.name").toLowerCase().contains("windows")) {
+            context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY,
+                    new File(getClass().getResource("/scripts/ansible-lint-batch.cmd").getFile()).getAbsolutePath());
+        } else {
+            String path = new File(getClass().getResource("/scripts/ansible-lint-batch.sh").getFile()).getAbsolutePath();
+            context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY, path);
+            setShellRights(path);
+        }
+        context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_BATCH_SIZE_KEY, "1");
+        context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_THREADS_KEY, "2");
+        context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_CACHE_KEY, "true");
+        context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PERFORMANCE_REPORT_KEY, "true");
+
+        // The execution on playbook3.yml fails: the analysis is aborted but the completed executions are recorded
+        MySensor theSensor = new MySensor(context.fileSystem()) {
+            @Override
+            protected int executeCommand(List<String> command, List<String> stdOut, List<String> errOut) throws InterruptedException, IOException {
+                if (command.stream().anyMatch(arg -> arg.endsWith("playbook3.yml"))) {
+                    throw new IOException("Boom!");
+                }
+                return super.executeCommand(command, stdOut, errOut);
+            }
+        };
+
+        logTester.clear();
+        theSensor.executeWithAnsibleLint(context, null);
+        assertEquals(0, context.allIssues().size());
+        assertTrue(logTester.logs(LoggerLevel.INFO).stream().anyMatch(log -> log.startsWith("ansible-lint cache: 0 hit(s), ")));
+        assertTrue(Files.isDirectory(theSensor.getDataDir(context).resolve(AbstractAnsibleSensor.CACHE_DIR)));
+        assertTrue(Files.exists(theSensor.getDataDir(context).resolve(AbstractAnsibleSensor.DURATIONS_FILE)));
+        assertTrue(logTester.logs(LoggerLevel.INFO).stream().anyMatch(log -> log.startsWith("ansible-lint performance: ")));
+        assertTrue(Files.exists(context.fileSystem().workDir().toPath().resolve(AbstractAnsibleSensor.PERFORMANCE_REPORT_FILE)));
+    }
+
+    @Test
+    public void testExecuteWithAnsibleLintTimeout() throws IOException {
+        InputFile playbook1 = Utils.getInputFile("playbooks/playbook1.yml");
+        InputFile playbook2 = Utils.getInputFile("playbooks/playbook2.yml");
+        InputFile playbook3 = Utils.getInputFile("playbooks/playbook3.yml");
+        context.fileSystem().add(playbook1).add(playbook2).add(playbook3);
+
+        if (System.getProperty("os.name").toLowerCase().contains("windows")) {
+            context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY,
+                    new File(getClass().getResource("/scripts/ansible-lint-timeout.cmd").getFile()).getAbsolutePath());
+        } else {
+            String path = new File(getClass().getResource("/scripts/ansible-lint-timeout.sh").getFile()).getAbsolutePath();
+            context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY, path);
+            setShellRights(path);
+        }
+        context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_TIMEOUT_KEY, "1");
+
+        // The file that hangs is retried once, then skipped; the other files are analyzed
+        sensor.executeWithAnsibleLint(context, null);
+        assertTrue(logTester.logs(LoggerLevel.WARN).contains("ansible-lint timed out after 1 s on playbooks/playbook2.yml (attempt 1/2)"));
+        assertTrue(logTester.logs(LoggerLevel.WARN).contains("ansible-lint timed out after 1 s on playbooks/playbook2.yml (attempt 2/2)"));
+        assertTrue(logTester.logs(LoggerLevel.WARN).contains("ansible-lint timed out on 1 file(s), skipped: playbooks/playbook2.yml"));
+        assertEquals(new HashSet<>(Arrays.asList(playbook1, playbook3)), sensor.scannedFiles);
+        Collection<Issue> issues = context.allIssues();
+        assertEquals(2, issues.size());
+        assertTrue(issueExists(issues, ruleKey1, playbook1, 2, "analyzed"));
+        assertTrue(issueExists(issues, ruleKey1, playbook3, 2, "analyzed"));
+    }
+
+    @Test
+    public void testExecuteWithAnsibleLintThreads() throws IOException {
+        InputFile playbook1 = Utils.getInputFile("playbooks/playbook1.yml");
+        InputFile playbook2 = Utils.getInputFile("playbooks/playbook2.yml");
+        InputFile playbook3 = Utils.getInputFile("playbooks/playbook3.yml");
+        context.fileSystem().add(playbook1).add(playbook2).add(playbook3);
+
+        if (System.getProperty("os.name").toLowerCase().contains("windows")) {
+            context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY,
+                    new File(getClass().getResource("/scripts/ansible-lint3.cmd").getFile()).getAbsolutePath());
+        } else {
+            String path = new File(getClass().getResource("/scripts/ansible-lint3.sh").getFile()).getAbsolutePath();
+            context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY, path);
+            setShellRights(path);
+        }
+        context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_THREADS_KEY, "3");
+
+        // Same result as a sequential execution (see testExecuteWithAnsibleLintStdOutput)
+        sensor.executeWithAnsibleLint(context, Arrays.asList("foo", "bar"));
+        assertEquals(3, sensor.scannedFiles.size());
+
+        Collection<Issue> issues = context.allIssues();
+        assertEquals(5, issues.size());
+        assertTrue(issueExists(issues, ruleKey1, playbook1, 2, "A first error"));
+        assertTrue(issueExists(issues, ruleKey2, playbook1, 3, "An error -p"));
+        assertTrue(issueExists(issues, ruleKey2, playbook1, 4, null));
+        assertTrue(issueExists(issues, ruleKey3, playbook1, 5, "Another error foo"));
+        assertTrue(issueExists(issues, ruleKey3, playbook2, 3, "Another error bar"));
+
+        // The durations of the files are kept to schedule the next analysis
+        assertTrue(Files.exists(sensor.getDataDir(context).resolve(AbstractAnsibleSensor.DURATIONS_FILE)));
+    }
+
+    @Test
+    public void testExecuteWithAnsibleLintThreadsIOException() throws IOException, InterruptedException {
+        InputFile playbook1 = Utils.getInputFile("playbooks/playbook1.yml");
+        InputFile playbook2 = Utils.getInputFile("playbooks/playbook2.yml");
+        InputFile playbook3 = Utils.getInputFile("playbooks/playbook3.yml");
+        context.fileSystem().add(playbook1).add(playbook2).add(playbook3);
+        context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_THREADS_KEY, "2");
+
+        MySensor theSensor = spy(sensor);
+        doThrow(new IOException("Boom!")).when(theSensor).executeCommand(any(), any(), any());
+
+        theSensor.executeWithAnsibleLint(context, Arrays.asList("foo", "bar"));
+        assertEquals(1, theSensor.scannedFiles.size());
+        assertEquals(0, context.allIssues().size());
+    }
+
+    @Test
+    public void testExecuteWithAnsibleLintWorker() throws IOException {
+        InputFile playbook1 = Utils.getInputFile("playbooks/playbook1.yml");
+        InputFile playbook2 = Utils.getInputFile("playbooks/playbook2.yml");
+        InputFile playbook3 = Utils.getInputFile("playbooks/playbook3.yml");
+        context.fileSystem().add(playbook1).add(playbook2).add(playbook3);
+
+        // The "Python interpreter" is a fake worker that ignores the shim
+        if (System.getProperty("os.name").toLowerCase().contains("windows")) {
+            context.settings().appendProperty(AnsibleSettings.PYTHON_PATH_KEY,
+                    new File(getClass().getResource("/scripts/ansible-lint-worker.cmd").getFile()).getAbsolutePath());
+        } else {
+            String path = new File(getClass().getResource("/scripts/ansible-lint-worker.sh").getFile()).getAbsolutePath();
+            context.settings().appendProperty(AnsibleSettings.PYTHON_PATH_KEY, path);
+            setShellRights(path);
+        }
+        context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_WORKER_KEY, "true");
+
+        sensor.executeWithAnsibleLint(context, null);
+        assertEquals(3, sensor.scannedFiles.size());
+
+        // All files analyzed by the same worker
+        Collection<Issue> issues = context.allIssues();
+        assertEquals(3, issues.size());
+        Set<String> messages = new HashSet<>();
+        issues.forEach(issue -> messages.add(issue.primaryLocation().message()));
+        assertEquals(1, messages.size());
+        assertTrue(messages.iterator().next().startsWith("From worker "));
+        assertTrue(issueExists(issues, ruleKey1, playbook1, 2, "From worker .*"));
+        assertTrue(issueExists(issues, ruleKey1, playbook2, 2, "From worker .*"));
+        assertTrue(issueExists(issues, ruleKey1, playbook3, 2, "From worker .*"));
+    }
+
+    @Test
+    public void testExecuteWithAnsibleLintWorkerTimeout() throws IOException {
+        InputFile playbook1 = Utils.getInputFile("playbooks/playbook1.yml");
+        InputFile playbook2 = Utils.getInputFile("playbooks/playbook2.yml");
+        InputFile playbook3 = Utils.getInputFile("playbooks/playbook3.yml");
+        context.fileSystem().add(playbook1).add(playbook2).add(playbook3);
+
+        // The worker hangs on playbook2.yml, as does the ansible-lint process the file is retried with
+        if (System.getProperty("os.name").toLowerCase().contains("windows")) {
+            context.settings().appendProperty(AnsibleSettings.PYTHON_PATH_KEY,
+                    new File(getClass().getResource("/scripts/ansible-lint-worker-timeout.cmd").getFile()).getAbsolutePath());
+            context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY,
+                    new File(getClass().getResource("/scripts/ansible-lint-timeout.cmd").getFile()).getAbsolutePath());
+        } else {
+            String path = new File(getClass().getResource("/scripts/ansible-lint-worker-timeout.sh").getFile()).getAbsolutePath();
+            context.settings().appendProperty(AnsibleSettings.PYTHON_PATH_KEY, path);
+            setShellRights(path);
+            path = new File(getClass().getResource("/scripts/ansible-lint-timeout.sh").getFile()).getAbsolutePath();
+            context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY, path);
+            setShellRights(path);
+        }
+        context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_WORKER_KEY, "true");
+        context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_TIMEOUT_KEY, "1");
+
+        AtomicInteger processes = new AtomicInteger();
+        MySensor theSensor = new MySensor(context.fileSystem()) {
+            @Override
+            protected int executeCommand(List<String> command, List<String> stdOut, List<String> errOut) throws InterruptedException, IOException {
+                if (command.stream().anyMatch(arg -> arg.endsWith("playbook2.yml"))) {
+                    processes.incrementAndGet();
+                }
+                return super.executeCommand(command, stdOut, errOut);
+            }
+        };
+
+        // The worker attempt is one of the two allowed attempts: the file is retried with a single process
+        logTester.clear();
+        theSensor.executeWithAnsibleLint(context, null);
+        assertEquals(1, processes.get());
+        assertTrue(logTester.logs(LoggerLevel.WARN).contains("ansible-lint timed out after 1 s on playbooks/playbook2.yml (attempt 1/2)"));
+        assertTrue(logTester.logs(LoggerLevel.WARN).contains("ansible-lint timed out after 1 s on playbooks/playbook2.yml (attempt 2/2)"));
+        assertEquals(2, logTester.logs(LoggerLevel.WARN).stream().filter(log -> log.startsWith("ansible-lint timed out after")).count());
+        assertTrue(logTester.logs(LoggerLevel.WARN).contains("ansible-lint timed out on 1 file(s), skipped: playbooks/playbook2.yml"));
+        // The killed worker is not given back to the pool: the next file is analyzed by a new process
+        assertFalse(logTester.logs(LoggerLevel.WARN).stream().anyMatch(log -> log.startsWith("ansible-lint worker failed")));
+        assertEquals(new HashSet<>(Arrays.asList(playbook1, playbook3)), theSensor.scannedFiles);
+        assertTrue(issueExists(context.allIssues(), ruleKey1, playbook3, 2, "analyzed"));
+    }
+
+    @Test
+    public void testExecuteWithAnsibleLintWorkerFallback() throws IOException {
+        InputFile playbook1 = Utils.getInputFile("playbooks/playbook1.yml");
+        InputFile playbook2 = Utils.getInputFile("playbooks/playbook2.yml");
+        context.fileSystem().add(playbook1).add(playbook2);
+
+        // The "Python interpreter" does not answer as expected
+        if (System.getProperty("os.name").toLowerCase().contains("windows")) {
+            context.settings().appendProperty(AnsibleSettings.PYTHON_PATH_KEY,
+                    new File(getClass().getResource("/scripts/echo.cmd").getFile()).getAbsolutePath());
+            context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY,
+                    new File(getClass().getResource("/scripts/ansible-lint-batch.cmd").getFile()).getAbsolutePath());
+        } else {
+            String path = new File(getClass().getResource("/scripts/echo.sh").getFile()).getAbsolutePath();
+            context.settings().appendProperty(AnsibleSettings.PYTHON_PATH_KEY, path);
+            setShellRights(path);
+            path = new File(getClass().getResource("/scripts/ansible-lint-batch.sh").getFile()).getAbsolutePath();
+            context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY, path);
+            setShellRights(path);
+        }
+        context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_WORKER_KEY, "true");
+
+        logTester.clear();
+        sensor.executeWithAnsibleLint(context, null);
+        assertTrue(logTester.logs(LoggerLevel.WARN).stream().anyMatch(log -> log.startsWith("Cannot use the ansible-lint worker, falling back")));
+
+        Collection<Issue> issues = context.allIssues();
+        assertEquals(2, issues.size());
+        assertTrue(issueExists(issues, ruleKey1, playbook1, 2, "1 file\\(s\\)"));
+        assertTrue(issueExists(issues, ruleKey1, playbook2, 2, "1 file\\(s\\)"));
+    }
+
+    @Test
+    public void testGetDataDir() throws IOException {
+        Path dataDir = sensor.getDataDir(context);
+        assertEquals(Paths.get(context.config().get(AbstractAnsibleSensor.USER_HOME_KEY).get(), AbstractAnsibleSensor.DATA_DIR), dataDir.getParent());
+        assertEquals(dataDir, sensor.getDataDir(context));
+
+        // One directory per project
+        context.settings().setProperty("sonar.projectKey", "other");
+        assertNotEquals(dataDir, sensor.getDataDir(context));
+    }
+
+    @Test
+    public void testGetPythonPath() {
+        assertEquals("python3", sensor.getPythonPath(context));
+        context.settings().appendProperty(AnsibleSettings.PYTHON_PATH_KEY, "/usr/bin/python");
+        assertEquals("/usr/bin/python", sensor.getPythonPath(context));
+    }
+
+    @Test
+    public void testExecuteWithAnsibleLintCache() throws IOException, InterruptedException {
+        InputFile playbook1 = Utils.getInputFile("playbooks/playbook1.yml");
+        InputFile playbook2 = Utils.getInputFile("playbooks/playbook2.yml");
+        InputFile playbook3 = Utils.getInputFile("playbooks/playbook3.yml");
+        context.fileSystem().add(playbook1).add(playbook2).add(playbook3);
+
+        if (System.getProperty("os.name").toLowerCase().contains("windows")) {
+            context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY,
+                    new File(getClass().getResource("/scripts/ansible-lint3.cmd").getFile()).getAbsolutePath());
+        } else {
+            String path = new File(getClass().getResource("/scripts/ansible-lint3.sh").getFile()).getAbsolutePath();
+            context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY, path);
+            setShellRights(path);
+        }
+        context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_CACHE_KEY, "true");
+
+        logTester.clear();
+        sensor.executeWithAnsibleLint(context, Arrays.asList("foo", "bar"));
+        assertTrue(logTester.logs(LoggerLevel.INFO).contains("ansible-lint cache: 0 hit(s), 3 miss(es)"));
+        // The graph is needed to invalidate the issues reported on the files used by an analyzed file
+        assertTrue(logTester.logs(LoggerLevel.INFO).contains("Dependency graph: 3 file(s), 3 parsed"));
+        assertEquals(5, context.allIssues().size());
+        assertTrue(Files.isDirectory(sensor.getDataDir(context).resolve(AbstractAnsibleSensor.CACHE_DIR)));
+
+        // Second analysis with a new working directory, as the scanner empties it: ansible-lint is not executed anymore
+        DefaultFileSystem fs2 = Utils.getFileSystem();
+        fs2.setWorkDir(temporaryFolder.newFolder("temp2").toPath());
+        fs2.add(playbook1).add(playbook2).add(playbook3);
+        SensorContextTester context2 = Utils.getSensorContext();
+        context2.setFileSystem(fs2);
+        context2.setSettings(context.settings());
+        context2.setActiveRules(context.activeRules());
+        MySensor sensor2 = spy(new MySensor(fs2));
+        logTester.clear();
+        sensor2.executeWithAnsibleLint(context2, Arrays.asList("foo", "bar"));
+        assertTrue(logTester.logs(LoggerLevel.INFO).contains("ansible-lint cache: 3 hit(s), 0 miss(es)"));
+        List<String> command = Arrays.asList(sensor.getAnsibleLintPath(context2), "-p", "--nocolor", "-q", "foo", "bar",
+                new File(playbook1.uri()).getAbsolutePath());
+        verify(sensor2, never()).executeCommand(eq(command), any(), any());
+        assertEquals(3, sensor2.scannedFiles.size());
+
+        Collection<Issue> issues = context2.allIssues();
+        assertEquals(5, issues.size());
+        assertTrue(issueExists(issues, ruleKey1, playbook1, 2, "A first error"));
+        assertTrue(issueExists(issues, ruleKey2, playbook1, 3, "An error -p"));
+        assertTrue(issueExists(issues, ruleKey2, playbook1, 4, null));
+        assertTrue(issueExists(issues, ruleKey3, playbook1, 5, "Another error foo"));
+        assertTrue(issueExists(issues, ruleKey3, playbook2, 3, "Another error bar"));
+
+        // A different command line invalidates the cache
+        SensorContextTester context3 = Utils.getSensorContext();
+        context3.setFileSystem(context.fileSystem());
+        context3.setSettings(context.settings());
+        context3.setActiveRules(context.activeRules());
+        logTester.clear();
+        new MySensor(context.fileSystem()).executeWithAnsibleLint(context3, Arrays.asList("foo", "baz"));
+        assertTrue(logTester.logs(LoggerLevel.INFO).contains("ansible-lint cache: 0 hit(s), 3 miss(es)"));
+    }
+
+    @Test
+    public void testExecuteWithAnsibleLintChangedFilesOnly() throws IOException {
+        InputFile playbook1 = Utils.getInputFile("playbooks/playbook1.yml", InputFile.Status.SAME);
+        InputFile playbook2 = Utils.getInputFile("playbooks/playbook2.yml", InputFile.Status.CHANGED);
+        InputFile playbook3 = Utils.getInputFile("playbooks/playbook3.yml", InputFile.Status.ADDED);
+        context.fileSystem().add(playbook1).add(playbook2).add(playbook3);
+
+        if (System.getProperty("os.name").toLowerCase().contains("windows")) {
+            context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY,
+                    new File(getClass().getResource("/scripts/ansible-lint-batch.cmd").getFile()).getAbsolutePath());
+        } else {
+            String path = new File(getClass().getResource("/scripts/ansible-lint-batch.sh").getFile()).getAbsolutePath();
+            context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY, path);
+            setShellRights(path);
+        }
+
+        // Disabled by default
+        sensor.executeWithAnsibleLint(context, null);
+        assertEquals(3, sensor.scannedFiles.size());
+        assertEquals(3, context.allIssues().size());
+
+        SensorContextTester context2 = Utils.getSensorContext();
+        context2.setFileSystem(context.fileSystem());
+        context2.setSettings(context.settings());
+        context2.setActiveRules(context.activeRules());
+        context2.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_CHANGED_FILES_ONLY_KEY, "true");
+        MySensor sensor2 = new MySensor(context.fileSystem());
+
+        // Branch analyses analyze all files, otherwise the issues of the unchanged files would be closed
+        sensor2.executeWithAnsibleLint(context2, null);
+        assertEquals(3, sensor2.scannedFiles.size());
+
+        context2 = Utils.getSensorContext();
+        context2.setFileSystem(context.fileSystem());
+        context2.setSettings(context.settings());
+        context2.setActiveRules(context.activeRules());
+        context2.settings().setProperty(AbstractAnsibleSensor.PULL_REQUEST_KEY, "42");
+        sensor2 = new MySensor(context.fileSystem());
+        logTester.clear();
+        sensor2.executeWithAnsibleLint(context2, null);
+        assertTrue(logTester.logs(LoggerLevel.INFO).contains("Changed files only: 1 unchanged file(s) skipped"));
+        assertEquals(2, sensor2.scannedFiles.size());
+        assertFalse(sensor2.scannedFiles.contains(playbook1));
+        Collection<Issue> issues = context2.allIssues();
+        assertEquals(2, issues.size());
+        assertTrue(issueExists(issues, ruleKey1, playbook2, 2, "1 file\\(s\\)"));
+        assertTrue(issueExists(issues, ruleKey1, playbook3, 2, "1 file\\(s\\)"));
+    }
+
+    @Test
+    public void testExecuteWithAnsibleLintDependencyGraph() throws IOException {
+        InputFile site = Utils.getInputFile("graph/site.yml", InputFile.Status.SAME);
+        InputFile standalone = Utils.getInputFile("graph/standalone.yml", InputFile.Status.SAME);
+        InputFile roleMain = Utils.getInputFile("graph/roles/web/tasks/main.yml", InputFile.Status.SAME);
+        InputFile roleInstall = Utils.getInputFile("graph/roles/web/tasks/install.yml", InputFile.Status.CHANGED);
+        context.fileSystem().add(site).add(standalone).add(roleMain).add(roleInstall);
+
+        if (System.getProperty("os.name").toLowerCase().contains("windows")) {
+            context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY,
+                    new File(getClass().getResource("/scripts/ansible-lint-batch.cmd").getFile()).getAbsolutePath());
+        } else {
+            String path = new File(getClass().getResource("/scripts/ansible-lint-batch.sh").getFile()).getAbsolutePath();
+            context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY, path);
+            setShellRights(path);
+        }
+        context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_CHANGED_FILES_ONLY_KEY, "true");
+        context.settings().setProperty(AbstractAnsibleSensor.PULL_REQUEST_KEY, "42");
+        context.settings().appendProperty(AnsibleSettings.DEPENDENCY_GRAPH_KEY, "true");
+
+        // The playbook that uses the changed task file is analyzed again
+        sensor.executeWithAnsibleLint(context, null);
+        assertTrue(logTester.logs(LoggerLevel.INFO).contains("Dependency graph: 10 file(s), 10 parsed"));
+        assertTrue(logTester.logs(LoggerLevel.INFO).contains("Changed files only: 1 unchanged file(s) skipped"));
+        assertEquals(new HashSet<>(Arrays.asList(site, roleMain, roleInstall)), sensor.scannedFiles);
+        assertTrue(Files.exists(sensor.getDataDir(context).resolve(AbstractAnsibleSensor.DEPENDENCY_GRAPH_FILE)));
+
+        // The graph is reused by the next analysis, with a new working directory as the scanner empties it
+        DefaultFileSystem fs2 = Utils.getFileSystem();
+        fs2.setWorkDir(temporaryFolder.newFolder("temp2").toPath());
+        fs2.add(site).add(standalone).add(roleMain).add(roleInstall);
+        SensorContextTester context2 = Utils.getSensorContext();
+        context2.setFileSystem(fs2);
+        context2.setSettings(context.settings());
+        context2.setActiveRules(context.activeRules());
+        logTester.clear();
+        new MySensor(fs2).executeWithAnsibleLint(context2, null);
+        assertTrue(logTester.logs(LoggerLevel.INFO).contains("Dependency graph: 10 file(s), 0 parsed"));
+    }
+
+    @Test
+    public void testExecuteWithAnsibleLintSkipCoveredFiles() throws IOException {
+        InputFile roleMain = Utils.getInputFile("graph/roles/web/tasks/main.yml");
+        InputFile roleInstall = Utils.getInputFile("graph/roles/web/tasks/install.yml");
+        InputFile site = Utils.getInputFile("graph/site.yml");
+        InputFile standalone = Utils.getInputFile("graph/standalone.yml");
+        context.fileSystem().add(roleMain).add(roleInstall).add(site).add(standalone);
+
+        if (System.getProperty("os.name").toLowerCase().contains("windows")) {
+            context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY,
+                    new File(getClass().getResource("/scripts/ansible-lint-roles.cmd").getFile()).getAbsolutePath());
+        } else {
+            String path = new File(getClass().getResource("/scripts/ansible-lint-roles.sh").getFile()).getAbsolutePath();
+            context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY, path);
+            setShellRights(path);
+        }
+        context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_SKIP_COVERED_FILES_KEY, "true");
+
+        // Without dependency graph: only the role files that received issues are covered
+        sensor.executeWithAnsibleLint(context, null);
+        assertTrue(logTester.logs(LoggerLevel.INFO).contains("Coverage-aware mode: 1 file(s) already covered, 1 ansible-lint execution(s) avoided"));
+        assertEquals(4, sensor.scannedFiles.size());
+        Collection<Issue> issues = context.allIssues();
+        assertEquals(4, issues.size());
+        assertTrue(issueExists(issues, ruleKey1, roleMain, 3, "used by playbook"));
+        assertFalse(issueExists(issues, ruleKey1, roleMain, 2, "analyzed"));
+        assertTrue(issueExists(issues, ruleKey1, roleInstall, 2, "analyzed"));
+
+        // With dependency graph: all the files used by the playbook are covered
+        SensorContextTester context2 = Utils.getSensorContext();
+        context2.setFileSystem(context.fileSystem());
+        context2.setSettings(context.settings());
+        context2.setActiveRules(context.activeRules());
+        context2.settings().appendProperty(AnsibleSettings.DEPENDENCY_GRAPH_KEY, "true");
+        MySensor sensor2 = new MySensor(context.fileSystem());
+        logTester.clear();
+        sensor2.executeWithAnsibleLint(context2, null);
+        assertTrue(logTester.logs(LoggerLevel.INFO).contains("Coverage-aware mode: 2 file(s) already covered, 2 ansible-lint execution(s) avoided"));
+        assertEquals(4, sensor2.scannedFiles.size());
+        issues = context2.allIssues();
+        assertEquals(3, issues.size());
+        assertTrue(issueExists(issues, ruleKey1, roleMain, 3, "used by playbook"));
+        assertTrue(issueExists(issues, ruleKey1, site, 2, "analyzed"));
+        assertTrue(issueExists(issues, ruleKey1, standalone, 2, "analyzed"));
+    }
+
+    @Test
+    public void testExecuteWithAnsibleLintEntryPoints() throws IOException {
+        InputFile roleMain = Utils.getInputFile("graph/roles/web/tasks/main.yml");
+        InputFile roleInstall = Utils.getInputFile("graph/roles/web/tasks/install.yml");
+        InputFile site = Utils.getInputFile("graph/site.yml");
+        InputFile db = Utils.getInputFile("graph/db.yml");
+        InputFile dbTasks = Utils.getInputFile("graph/tasks/db.yml");
+        InputFile orphan = Utils.getInputFile("graph/tasks/orphan.yml");
+        InputFile standalone = Utils.getInputFile("graph/standalone.yml");
+        context.fileSystem().add(roleMain).add(roleInstall).add(site).add(db).add(dbTasks).add(orphan).add(standalone);
+
+        if (System.getProperty("os.name").toLowerCase().contains("windows")) {
+            context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY,
+                    new File(getClass().getResource("/scripts/ansible-lint-roles.cmd").getFile()).getAbsolutePath());
+        } else {
+            String path = new File(getClass().getResource("/scripts/ansible-lint-roles.sh").getFile()).getAbsolutePath();
+            context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY, path);
+            setShellRights(path);
+        }
+        context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_BATCH_SIZE_KEY, "1");
+        context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_ENTRY_POINTS_KEY, "true");
+
+        // Only the top-level playbooks and the orphan task file are passed to ansible-lint
+        sensor.executeWithAnsibleLint(context, null);
+        assertTrue(logTester.logs(LoggerLevel.INFO).contains("Entry-point mode: 2 entry-point playbook(s), 5 other file(s) deferred"));
+        assertTrue(logTester.logs(LoggerLevel.INFO).contains("Entry-point mode: 4 file(s) already covered, 4 ansible-lint execution(s) avoided"));
+        assertTrue(logTester.logs(LoggerLevel.INFO).contains("Entry-point mode: 1 orphan file(s) analyzed on their own"));
+        assertEquals(7, sensor.scannedFiles.size());
+        Collection<Issue> issues = context.allIssues();
+        assertEquals(4, issues.size());
+        assertTrue(issueExists(issues, ruleKey1, site, 2, "analyzed"));
+        assertTrue(issueExists(issues, ruleKey1, roleMain, 3, "used by playbook"));
+        assertTrue(issueExists(issues, ruleKey1, standalone, 2, "analyzed"));
+        assertTrue(issueExists(issues, ruleKey1, orphan, 2, "analyzed"));
+    }
+
+    @Test
+    public void testExecuteWithAnsibleLintStreaming() throws IOException {
+        InputFile roleMain = Utils.getInputFile("graph/roles/web/tasks/main.yml");
+        InputFile roleInstall = Utils.getInputFile("graph/roles/web/tasks/install.yml");
+        InputFile site = Utils.getInputFile("graph/site.yml");
+        InputFile standalone = Utils.getInputFile("graph/standalone.yml");
+        context.fileSystem().add(roleMain).add(roleInstall).add(site).add(standalone);
+
+        if (System.getProperty("os.name").toLowerCase().contains("windows")) {
+            context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY,
+                    new File(getClass().getResource("/scripts/ansible-lint-roles.cmd").getFile()).getAbsolutePath());
+        } else {
+            String path = new File(getClass().getResource("/scripts/ansible-lint-roles.sh").getFile()).getAbsolutePath();
+            context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY, path);
+            setShellRights(path);
+        }
+        context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_BATCH_SIZE_KEY, "1");
+        context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_STREAMING_KEY, "true");
+
+        // The issues of the role files are saved once the playbook that uses them has been analyzed
+        sensor.executeWithAnsibleLint(context, null);
+        assertTrue(logTester.logs(LoggerLevel.INFO).contains("Streaming mode: 4 file(s) saved while ansible-lint was running"));
+        assertTrue(sensor.issueStore.isEmpty());
+        Collection<Issue> issues = context.allIssues();
+        assertEquals(5, issues.size());
+        assertTrue(issueExists(issues, ruleKey1, roleMain, 2, "analyzed"));
+        assertTrue(issueExists(issues, ruleKey1, roleMain, 3, "used by playbook"));
+        assertTrue(issueExists(issues, ruleKey1, roleInstall, 2, "analyzed"));
+        assertTrue(issueExists(issues, ruleKey1, site, 2, "analyzed"));
+        assertTrue(issueExists(issues, ruleKey1, standalone, 2, "analyzed"));
+    }
+
+    @Test
+    public void testExecuteWithAnsibleLintSkipNonAnsibleFiles() throws IOException {
+        InputFile playbook = Utils.getInputFile("classifier/playbook.yml");
+        InputFile roleTasks = Utils.getInputFile("classifier/roles/deploy/tasks/main.yml");
+        InputFile manifest = Utils.getInputFile("classifier/k8s/deployment.yml");
+        InputFile vault = Utils.getInputFile("classifier/secrets.yml");
+        InputFile openapi = Utils.getInputFile("classifier/openapi.yml");
+        context.fileSystem().add(playbook).add(roleTasks).add(manifest).add(vault).add(openapi);
+
+        if (System.getProperty("os.name").toLowerCase().contains("windows")) {
+            context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY,
+                    new File(getClass().getResource("/scripts/ansible-lint1.cmd").getFile()).getAbsolutePath());
+        } else {
+            String path = new File(getClass().getResource("/scripts/ansible-lint1.sh").getFile()).getAbsolutePath();
+            context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY, path);
+            setShellRights(path);
+        }
+        context.settings().setProperty(AnsibleSettings.NON_ANSIBLE_FILES_SKIP_KEY, "vault,kubernetes");
+
+        sensor.executeWithAnsibleLint(context, null);
+        assertEquals(3, sensor.scannedFiles.size());
+        assertTrue(sensor.scannedFiles.contains(playbook));
+        assertTrue(sensor.scannedFiles.contains(roleTasks));
+        assertTrue(sensor.scannedFiles.contains(openapi));
+        assertTrue(logTester.logs(LoggerLevel.INFO).contains("Non-Ansible files: 2 file(s) skipped (vault: 1, kubernetes: 1)"));
+    }
+
+    @Test
+    public void testExecuteWithNativeChecks() throws IOException, InterruptedException {
+        InputFile playbook = Utils.getInputFile("native/playbook.yml");
+        context.fileSystem().add(playbook);
+        RuleKey packageLatest = RuleKey.of(AnsibleCheckRepository.REPOSITORY_KEY, "package-latest");
+        RuleKey commandInsteadOfModule = RuleKey.of(AnsibleCheckRepository.REPOSITORY_KEY, "E303");
+        context.setActiveRules(new ActiveRulesBuilder()
+                .create(ruleKey1)
+                .activate()
+                .create(packageLatest)
+                .activate()
+                .create(commandInsteadOfModule)
+                .activate()
+                .build());
+        context.settings().appendProperty(AnsibleSettings.RULE_ENGINE_KEY, AnsibleSettings.RULE_ENGINE_NATIVE);
+
+        // The active rules are checked under their own ids and no process is started
+        MySensor theSensor = spy(sensor);
+        theSensor.executeWithAnsibleLint(context, null);
+        verify(theSensor, never()).executeCommand(any(), any(), any());
+        assertTrue(logTester.logs(LoggerLevel.INFO).contains("Native checks: 1 file(s) analyzed in-process with 2 rule(s), 1 active rule(s) without native implementation not checked"));
+        assertTrue(theSensor.scannedFiles.contains(playbook));
+        Collection<Issue> issues = context.allIssues();
+        assertEquals(3, issues.size());
+        assertTrue(issueExists(issues, packageLatest, playbook, 4, "Package installs should not use latest"));
+        assertTrue(issueExists(issues, commandInsteadOfModule, playbook, 12, "curl used in place of get_url or uri module"));
+        assertTrue(issueExists(issues, commandInsteadOfModule, playbook, 54, "systemctl used in place of systemd module"));
+    }
+
+    @Test
+    public void testExecuteWithHybridRuleEngine() throws IOException {
+        InputFile playbook = Utils.getInputFile("native/playbook.yml");
+        InputFile handlers = Utils.getInputFile("native/roles/app/handlers/main.yml");
+        context.fileSystem().add(playbook).add(handlers);
+        ActiveRulesBuilder activeRules = new ActiveRulesBuilder();
+        for (AnsibleNativeChecks.Check check : AnsibleNativeChecks.Check.values()) {
+            activeRules.create(RuleKey.of(AnsibleCheckRepository.REPOSITORY_KEY, check.getIds().get(0))).activate();
+        }
+        activeRules.create(RuleKey.of(AnsibleCheckRepository.REPOSITORY_KEY, "yaml")).activate();
+        context.setActiveRules(activeRules.build());
+
+        if (System.getProperty("os.name").toLowerCase().contains("windows")) {
+            context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY,
+                    new File(getClass().getResource("/scripts/ansible-lint-native.cmd").getFile()).getAbsolutePath());
+        } else {
+            String path = new File(getClass().getResource("/scripts/ansible-lint-native.sh").getFile()).getAbsolutePath();
+            context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY, path);
+            setShellRights(path);
+        }
+
+        // Reference: ansible-lint only
+        sensor.executeWithAnsibleLint(context, null);
+        Set<String> expected = toStrings(context.allIssues());
+        assertEquals(11, expected.size());
+
+        // Hybrid: same issues, ansible-lint only reports the rules without native implementation
+        SensorContextTester context2 = Utils.getSensorContext();
+        context2.setFileSystem(context.fileSystem());
+        context2.setSettings(context.settings());
+        context2.setActiveRules(context.activeRules());
+        context2.settings().setProperty(AnsibleSettings.RULE_ENGINE_KEY, AnsibleSettings.RULE_ENGINE_HYBRID);
+        MySensor sensor2 = new MySensor(context.fileSystem());
+        sensor2.executeWithAnsibleLint(context2, null);
+        assertTrue(logTester.logs(LoggerLevel.INFO).contains("Hybrid rule engine: 6 rule(s) checked in-process and skipped by ansible-lint: " +
+                "command-instead-of-module, 303, ANSIBLE0006, package-latest, 403, ANSIBLE0010, no-changed-when, 301, ANSIBLE0012, " +
+                "risky-shell-pipe, 306, literal-compare, 601, unnamed-task, 502, ANSIBLE0011"));
+        assertEquals(2, sensor2.scannedFiles.size());
+        assertEquals(expected, toStrings(context2.allIssues()));
+    }
+
+    @Test
+    public void testExecuteWithHybridRuleEngineSkipCoveredFiles() throws IOException {
+        InputFile playbook = Utils.getInputFile("native/playbook.yml");
+        InputFile handlers = Utils.getInputFile("native/roles/app/handlers/main.yml");
+        context.fileSystem().add(playbook).add(handlers);
+        ActiveRulesBuilder activeRules = new ActiveRulesBuilder();
+        for (AnsibleNativeChecks.Check check : AnsibleNativeChecks.Check.values()) {
+            activeRules.create(RuleKey.of(AnsibleCheckRepository.REPOSITORY_KEY, check.getIds().get(0))).activate();
+        }
+        activeRules.create(RuleKey.of(AnsibleCheckRepository.REPOSITORY_KEY, "yaml")).activate();
+        context.setActiveRules(activeRules.build());
+
+        if (System.getProperty("os.name").toLowerCase().contains("windows")) {
+            context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY,
+                    new File(getClass().getResource("/scripts/ansible-lint-native.cmd").getFile()).getAbsolutePath());
+        } else {
+            String path = new File(getClass().getResource("/scripts/ansible-lint-native.sh").getFile()).getAbsolutePath();
+            context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY, path);
+            setShellRights(path);
+        }
+        context.settings().setProperty(AnsibleSettings.ANSIBLE_LINT_SKIP_COVERED_FILES_KEY, "true");
+
+        // Reference: ansible-lint only. The playbook does not use the role, whose handlers are analyzed on their own.
+        logTester.clear();
+        sensor.executeWithAnsibleLint(context, null);
+        Set<String> expected = toStrings(context.allIssues());
+        assertEquals(11, expected.size());
+        assertTrue(logTester.logs(LoggerLevel.INFO).contains("Coverage-aware mode: 0 file(s) already covered, 0 ansible-lint execution(s) avoided"));
+
+        // Hybrid: the issues of the native checks do not make the handlers look covered
+        SensorContextTester context2 = Utils.getSensorContext();
+        context2.setFileSystem(context.fileSystem());
+        context2.setSettings(context.settings());
+        context2.setActiveRules(context.activeRules());
+        context2.settings().setProperty(AnsibleSettings.RULE_ENGINE_KEY, AnsibleSettings.RULE_ENGINE_HYBRID);
+        MySensor sensor2 = new MySensor(context.fileSystem());
+        logTester.clear();
+        sensor2.executeWithAnsibleLint(context2, null);
+        assertTrue(logTester.logs(LoggerLevel.INFO).contains("Coverage-aware mode: 0 file(s) already covered, 0 ansible-lint execution(s) avoided"));
+        assertEquals(2, sensor2.scannedFiles.size());
+        assertEquals(expected, toStrings(context2.allIssues()));
+    }
+
+    @Test
+    public void testExecuteWithHybridRuleEngineNativeRulesOnly() throws IOException, InterruptedException {
+        InputFile playbook = Utils.getInputFile("native/playbook.yml");
+        context.fileSystem().add(playbook);
+        context.setActiveRules(new ActiveRulesBuilder()
+                .create(RuleKey.of(AnsibleCheckRepository.REPOSITORY_KEY, "E403"))
+                .activate()
+                .create(RuleKey.of(AnsibleCheckRepository.REPOSITORY_KEY, "unnamed-task"))
+                .activate()
+                .build());
+        context.settings().appendProperty(AnsibleSettings.RULE_ENGINE_KEY, AnsibleSettings.RULE_ENGINE_HYBRID);
+
+        // All the active rules are native: ansible-lint is not executed
+        MySensor theSensor = spy(sensor);
+        theSensor.executeWithAnsibleLint(context, null);
+        verify(theSensor, never()).executeCommand(any(), any(), any());
+        assertTrue(theSensor.scannedFiles.contains(playbook));
+        Collection<Issue> issues = context.allIssues();
+        assertEquals(2, issues.size());
+        assertTrue(issueExists(issues, RuleKey.of(AnsibleCheckRepository.REPOSITORY_KEY, "E403"), playbook, 4, "Package installs should not use latest"));
+        assertTrue(issueExists(issues, RuleKey.of(AnsibleCheckRepository.REPOSITORY_KEY, "unnamed-task"), playbook, 46, "All tasks should be named"));
+    }
+
+    @Test
+    public void testExecuteWithAnsibleLintProjectMode() throws IOException, InterruptedException {
+        InputFile playbook1 = Utils.getInputFile("playbooks/playbook1.yml");
+        InputFile playbook2 = Utils.getInputFile("playbooks/playbook2.yml");
+        context.fileSystem().add(playbook1);
+        context.fileSystem().add(playbook2);
+
+        String path;
+        if (System.getProperty("os.name").toLowerCase().contains("windows")) {
+            path = new File(getClass().getResource("/scripts/ansible-lint-project.cmd").getFile()).getAbsolutePath();
+        } else {
+            path = new File(getClass().getResource("/scripts/ansible-lint-project.sh").getFile()).getAbsolutePath();
+            setShellRights(path);
+        }
+        context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY, path);
+        context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PROJECT_MODE_KEY, "true");
+
+        // ansible-lint is executed once, without file arguments
+        MySensor theSensor = spy(sensor);
+        logTester.clear();
+        theSensor.executeWithAnsibleLint(context, null);
+        verify(theSensor).executeStreamingCommand(eq(Arrays.asList(path, "-p", "--nocolor", "-q")), any(), any());
+        verify(theSensor, never()).executeCommand(eq(Arrays.asList(path, "-p", "--nocolor", "-q", playbook1.file().getAbsolutePath())), any(), any());
+        assertTrue(logTester.logs(LoggerLevel.INFO).contains("Project mode: 2 issue(s) found on 2 analyzed file(s), 1 issue(s) on other files dropped"));
+
+        // Issues of files that are not indexed are dropped
+        Collection<Issue> issues = context.allIssues();
+        assertEquals(2, issues.size());
+        assertTrue(issueExists(issues, ruleKey1, playbook1, 2, null));
+        assertTrue(issueExists(issues, ruleKey2, playbook2, 3, null));
+
+        // Not supported by old versions of ansible-lint: the files are passed
+        if (System.getProperty("os.name").toLowerCase().contains("windows")) {
+            context.settings().setProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY,
+                    new File(getClass().getResource("/scripts/ansible-lint-version.cmd").getFile()).getAbsolutePath());
+        } else {
+            path = new File(getClass().getResource("/scripts/ansible-lint-version.sh").getFile()).getAbsolutePath();
+            context.settings().setProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY, path);
+            setShellRights(path);
+        }
+        logTester.clear();
+        sensor.executeWithAnsibleLint(context, null);
+        assertTrue(logTester.logs(LoggerLevel.WARN).contains("Project mode not supported by ansible-lint 1, passing the files to analyze"));
+    }
+
+    @Test
+    public void testExecuteWithAnsibleLintProjectModeTimeout() throws IOException {
+        InputFile playbook1 = Utils.getInputFile("playbooks/playbook1.yml");
+        InputFile playbook2 = Utils.getInputFile("playbooks/playbook2.yml");
+        context.fileSystem().add(playbook1);
+        context.fileSystem().add(playbook2);
+
+        if (System.getProperty("os.name").toLowerCase().contains("windows")) {
+            context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY,
+                    new File(getClass().getResource("/scripts/ansible-lint-project-timeout.cmd").getFile()).getAbsolutePath());
+        } else {
+            String path = new File(getClass().getResource("/scripts/ansible-lint-project-timeout.sh").getFile()).getAbsolutePath();
+            context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY, path);
+            setShellRights(path);
+        }
+        context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PROJECT_MODE_KEY, "true");
+        context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_TIMEOUT_KEY, "1");
+
+        // The issue read before the timeout is not registered
+        MySensor theSensor = spy(sensor);
+        logTester.clear();
+        theSensor.executeWithAnsibleLint(context, null);
+        assertTrue(logTester.logs(LoggerLevel.WARN).contains("ansible-lint timed out after 1 s in project mode, no issue saved"));
+        verify(theSensor, never()).registerIssue(any(AbstractAnsibleSensor.ReportedIssue.class));
+        assertEquals(0, context.allIssues().size());
+    }
+
+    @Test
+    public void testExecuteWithAnsibleLintJsonOutput() throws IOException {
+        InputFile playbook1 = Utils.getInputFile("playbooks/playbook1.yml");
+        context.fileSystem().add(playbook1);
+
+        if (System.getProperty("os.name").toLowerCase().contains("windows")) {
+            context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY,
+                    new File(getClass().getResource("/scripts/ansible-lint-json.cmd").getFile()).getAbsolutePath());
+        } else {
+            String path = new File(getClass().getResource("/scripts/ansible-lint-json.sh").getFile()).getAbsolutePath();
+            context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY, path);
+            setShellRights(path);
+        }
+        context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_OUTPUT_FORMAT_KEY, "json");
+
+        sensor.executeWithAnsibleLint(context, null);
+        assertEquals(Arrays.asList(sensor.getAnsibleLintPath(context), "-f", "json", "--nocolor", "-q"), sensor.getAnsibleLintCommand(context, null));
+
+        Collection<Issue> issues = context.allIssues();
+        assertEquals(2, issues.size());
+        assertTrue(issueExists(issues, ruleKey1, playbook1, 2, "A first error, with a \"long\" message"));
+        assertTrue(issueExists(issues, ruleKey2, playbook1, 3, "An error"));
+        for (Issue issue : issues) {
+            if (issue.ruleKey().equals(ruleKey2)) {
+                assertEquals(4, issue.primaryLocation().textRange().start().lineOffset());
+            } else {
+                assertEquals(0, issue.primaryLocation().textRange().start().lineOffset());
+            }
+        }
+    }
+
+    @Test
+    public void testGetOutputFormat() throws IOException {
+        assertNull(sensor.getOutputFormat(context));
+        context.settings().setProperty(AnsibleSettings.ANSIBLE_LINT_OUTPUT_FORMAT_KEY, "foo");
+        assertNull(sensor.getOutputFormat(context));
+        context.settings().setProperty(AnsibleSettings.ANSIBLE_LINT_OUTPUT_FORMAT_KEY, "sarif");
+        assertEquals("sarif", sensor.getOutputFormat(context));
+
+        // Not supported by old versions of ansible-lint
+        if (System.getProperty("os.name").toLowerCase().contains("windows")) {
+            context.settings().setProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY,
+                    new File(getClass().getResource("/scripts/ansible-lint-version.cmd").getFile()).getAbsolutePath());
+        } else {
+            String path = new File(getClass().getResource("/scripts/ansible-lint-version.sh").getFile()).getAbsolutePath();
+            context.settings().setProperty(AnsibleSettings.ANSIBLE_LINT_PATH_KEY, path);
+            setShellRights(path);
+        }
+        context.fileSystem().add(Utils.getInputFile("playbooks/playbook1.yml"));
+        logTester.clear();
+        sensor.executeWithAnsibleLint(context, null);
+        assertTrue(logTester.logs(LoggerLevel.WARN).contains("Output format sarif not supported by ansible-lint 1, using the parseable format"));
+        assertEquals("-p", sensor.getAnsibleLintCommand(context, null).get(1));
+    }
+
+    @Test
+    public void testGetAnsibleLintCommandActiveRulesOnly() throws IOException {
+        Path conf = temporaryFolder.newFile("ansible-lint.yml").toPath();
+        Files.write(conf, Arrays.asList("skip_list:", "  - yaml", "rulesdir: my-rules"), StandardCharsets.UTF_8);
+        context.settings().setProperty(AnsibleSettings.ANSIBLE_LINT_CONF_PATH_KEY, conf.toString());
+        assertEquals(Arrays.asList(sensor.getAnsibleLintPath(context), "-p", "--nocolor", "-q", "-c", conf.toString()),
+                sensor.getAnsibleLintCommand(context, null));
+
+        context.settings().setProperty(AnsibleSettings.ANSIBLE_LINT_ACTIVE_RULES_ONLY_KEY, true);
+        logTester.clear();
+        List<String> command = sensor.getAnsibleLintCommand(context, null);
+        assertEquals(6, command.size());
+        Path effective = sensor.getDataDir(context).resolve(AbstractAnsibleSensor.EFFECTIVE_CONFIGURATION_DIR);
+        assertEquals(effective, Paths.get(command.get(5)).getParent());
+        assertTrue(logTester.logs(LoggerLevel.INFO).contains("ansible-lint restricted to the 3 active rule(s)"));
+        Map<String, Object> configuration;
+        try (Reader reader = Files.newBufferedReader(Paths.get(command.get(5)), StandardCharsets.UTF_8)) {
+            configuration = new Yaml().load(reader);
+        }
+        assertEquals(Collections.singletonList("yaml"), configuration.get("skip_list"));
+        assertEquals(Collections.singletonList(conf.getParent().resolve("my-rules").toString()), configuration.get("rulesdir"));
+        assertEquals(Arrays.asList(RULE_ID1, RULE_ID2, RULE_ID3), configuration.get("tags"));
+        assertEquals(Arrays.asList(RULE_ID1, RULE_ID2, RULE_ID3), configuration.get("enable_list"));
+
+        // The configuration is generated once per profile
+        assertEquals(command, sensor.getAnsibleLintCommand(context, null));
+        context.setActiveRules(new ActiveRulesBuilder().create(ruleKey1).activate().build());
+        assertNotEquals(command.get(5), sensor.getAnsibleLintCommand(context, null).get(5));
+        assertEquals(2, effective.toFile().list().length);
+
+        // The tags of the user configuration are kept: ansible-lint is not restricted
+        Files.write(conf, Collections.singletonList("tags: [yaml]"), StandardCharsets.UTF_8);
+        logTester.clear();
+        sensor.getAnsibleLintCommand(context, null);
+        assertTrue(logTester.logs(LoggerLevel.WARN).contains("Tags set in the ansible-lint configuration " + conf + ", ansible-lint is not restricted to the active rules"));
+        assertFalse(logTester.logs(LoggerLevel.INFO).stream().anyMatch(log -> log.startsWith("ansible-lint restricted")));
+    }
+
+    @Test
+    public void testCreateBatches() throws IOException {
+        InputFile playbook1 = Utils.getInputFile("playbooks/playbook1.yml");
+        InputFile playbook2 = Utils.getInputFile("playbooks/playbook2.yml");
+        InputFile playbook3 = Utils.getInputFile("playbooks/playbook3.yml");
+        List<InputFile> files = Arrays.asList(playbook1, playbook2, playbook3);
+
+        List<List<InputFile>> batches = sensor.createBatches(Collections.singletonList("ansible-lint"), files, 1);
+        assertEquals(3, batches.size());
+        batches = sensor.createBatches(Collections.singletonList("ansible-lint"), files, 0);
+        assertEquals(3, batches.size());
+        batches = sensor.createBatches(Collections.singletonList("ansible-lint"), files, 2);
+        assertEquals(2, batches.size());
+        assertEquals(Arrays.asList(playbook1, playbook2), batches.get(0));
+        assertEquals(Collections.singletonList(playbook3), batches.get(1));
+        batches = sensor.createBatches(Collections.singletonList("ansible-lint"), files, 10);
+        assertEquals(1, batches.size());
+        assertEquals(files, batches.get(0));
+
+        // Batches are also cut when the command line gets too long
+        char[] longArg = new char[AbstractAnsibleSensor.MAX_COMMAND_LINE_LENGTH - new File(playbook1.uri()).getAbsolutePath().length() - 10];
+        Arrays.fill(longArg, 'x');
+        batches = sensor.createBatches(Collections.singletonList(new String(longArg)), files, 10);
+        assertEquals(3, batches.size());
+        assertTrue(sensor.createBatches(Collections.singletonList("ansible-lint"), Collections.emptyList(), 10).isEmpty());
+    }
+
     @Test
     public void testGetAnsibleLintPath() {
         assertEquals("ansible-lint", sensor.getAnsibleLintPath(context));
@@ -309,6 +1280,29 @@ public class AbstractAnsibleSensorTest {
         }
     }
 
+    @Test
+    public void testExecuteCommandReusesReaders() throws IOException, InterruptedException {
+        ArrayList<String> command = new ArrayList<>();
+        if (System.getProperty("os.name").toLowerCase().contains("windows")) {
+            command.add(new File(getClass().getResource("/scripts/echo.cmd").getFile()).getAbsolutePath());
+        } else {
+            String path = new File(getClass().getResource("/scripts/echo.sh").getFile()).getAbsolutePath();
+            command.add(path);
+            setShellRights(path);
+        }
+        command.add("foo");
+
+        for (int i = 0; i < 20; i++) {
+            List<String> stdOut = new ArrayList<>();
+            List<String> stdErr = new ArrayList<>();
+            assertEquals(0, sensor.executeCommand(command, stdOut, stdErr));
+            assertEquals(Collections.singletonList("foo"), stdOut);
+            assertEquals(0, stdErr.size());
+        }
+        // The output readers are pooled threads, not one or two new threads per command
+        assertTrue(Thread.getAllStackTraces().keySet().stream().filter(thread -> thread.getName().startsWith("ansible-lint-output-")).count() < 20);
+    }
+
     @Test
     public void testRegisterIssue() {
         // Test invalid syntax first
@@ -348,16 +1342,16 @@ public class AbstractAnsibleSensorTest {
         // New syntax flavour
         assertTrue(sensor.registerIssue("xxx " + file2.getPath() + ":3"));
         assertTrue(sensor.registerIssue(file2.getPath() + ":3: xxx"));
-        assertEquals(2, sensor.allIssues.size());
-        assertEquals(5, sensor.allIssues.get(file1.toURI()).size());
-        assertTrue(sensor.allIssues.get(file1.toURI()).contains(new AbstractAnsibleSensor.AnsibleLintIssue(2, "xxx", "there is a problem")));
-        assertTrue(sensor.allIssues.get(file1.toURI()).contains(new AbstractAnsibleSensor.AnsibleLintIssue(3, "xxx")));
-        assertTrue(sensor.allIssues.get(file1.toURI()).contains(new AbstractAnsibleSensor.AnsibleLintIssue(4, "yyy")));
-        assertTrue(sensor.allIssues.get(file1.toURI()).contains(new AbstractAnsibleSensor.AnsibleLintIssue(5, "yyy")));
-        assertTrue(sensor.allIssues.get(file1.toURI()).contains(new AbstractAnsibleSensor.AnsibleLintIssue(5, "xxx")));
-        assertEquals(2, sensor.allIssues.get(file2Absolute.toURI()).size());
-        assertTrue(sensor.allIssues.get(file2Absolute.toURI()).contains(new AbstractAnsibleSensor.AnsibleLintIssue(2, "xxx", "there is a problem")));
-        assertTrue(sensor.allIssues.get(file2Absolute.toURI()).contains(new AbstractAnsibleSensor.AnsibleLintIssue(3, "xxx")));
+        assertEquals(2, sensor.issueStore.size());
+        assertEquals(5, sensor.issueStore.get(file1.toURI()).size());
+        assertTrue(sensor.issueStore.get(file1.toURI()).contains(new AbstractAnsibleSensor.AnsibleLintIssue(2, "xxx", "there is a problem")));
+        assertTrue(sensor.issueStore.get(file1.toURI()).contains(new AbstractAnsibleSensor.AnsibleLintIssue(3, "xxx")));
+        assertTrue(sensor.issueStore.get(file1.toURI()).contains(new AbstractAnsibleSensor.AnsibleLintIssue(4, "yyy")));
+        assertTrue(sensor.issueStore.get(file1.toURI()).contains(new AbstractAnsibleSensor.AnsibleLintIssue(5, "yyy")));
+        assertTrue(sensor.issueStore.get(file1.toURI()).contains(new AbstractAnsibleSensor.AnsibleLintIssue(5, "xxx")));
+        assertEquals(2, sensor.issueStore.get(file2Absolute.toURI()).size());
+        assertTrue(sensor.issueStore.get(file2Absolute.toURI()).contains(new AbstractAnsibleSensor.AnsibleLintIssue(2, "xxx", "there is a problem")));
+        assertTrue(sensor.issueStore.get(file2Absolute.toURI()).contains(new AbstractAnsibleSensor.AnsibleLintIssue(3, "xxx")));
     }
 
     @Test
@@ -417,6 +1411,40 @@ public class AbstractAnsibleSensorTest {
         assertNull(location2.message());
     }
 
+    @Test
+    public void testSaveIssueRuleIds() throws IOException {
+        InputFile playbook = Utils.getInputFile("playbooks/playbook1.yml");
+
+        // Ids are reported as is or without the heading E
+        sensor.saveIssue(context, playbook, new AbstractAnsibleSensor.AnsibleLintIssue(2, RULE_ID1));
+        sensor.saveIssue(context, playbook, new AbstractAnsibleSensor.AnsibleLintIssue(3, RULE_ID2.substring(1)));
+        sensor.saveIssue(context, playbook, new AbstractAnsibleSensor.AnsibleLintIssue(4, "E" + RULE_ID1));
+
+        Collection<Issue> issues = context.allIssues();
+        assertEquals(2, issues.size());
+        assertTrue(issueExists(issues, ruleKey1, playbook, 2, null));
+        assertTrue(issueExists(issues, ruleKey2, playbook, 3, null));
+    }
+
+    @Test
+    public void testSaveIssueGetRuleKeyOverride() throws IOException {
+        InputFile playbook = Utils.getInputFile("playbooks/playbook1.yml");
+        MySensor theSensor = new MySensor(context.fileSystem()) {
+            @Override
+            protected RuleKey getRuleKey(SensorContext context, String ruleId) {
+                return "legacy".equals(ruleId) ? ruleKey1 : super.getRuleKey(context, ruleId);
+            }
+        };
+
+        theSensor.saveIssue(context, playbook, new AbstractAnsibleSensor.AnsibleLintIssue(2, "legacy"));
+        theSensor.saveIssue(context, playbook, new AbstractAnsibleSensor.AnsibleLintIssue(3, RULE_ID2));
+
+        Collection<Issue> issues = context.allIssues();
+        assertEquals(2, issues.size());
+        assertTrue(issueExists(issues, ruleKey1, playbook, 2, null));
+        assertTrue(issueExists(issues, ruleKey2, playbook, 3, null));
+    }
+
     @Test
     public void testGetRuleKey() {
         assertNull(sensor.getRuleKey(context, "foo"));
@@ -431,6 +1459,7 @@ public class AbstractAnsibleSensorTest {
         DefaultFileSystem fs = Utils.getFileSystem();
         fs.setWorkDir(temporaryFolder.newFolder("temp").toPath());
         context.setFileSystem(fs);
+        context.settings().setProperty(AbstractAnsibleSensor.USER_HOME_KEY, temporaryFolder.newFolder("sonar").getAbsolutePath());
 
         ActiveRules activeRules = new ActiveRulesBuilder()
                 .create(ruleKey1)
@@ -449,6 +1478,16 @@ public class AbstractAnsibleSensorTest {
     }
 
 
+    private static Set<String> toStrings(Collection<Issue> issues) {
+        Set<String> strings = new HashSet<>();
+        for (Issue issue : issues) {
+            IssueLocation location = issue.primaryLocation();
+            strings.add(location.inputComponent().key() + ":" + location.textRange().start().line() + ": " + issue.ruleKey().rule());
+        }
+        return strings;
+    }
+
+
     private static class MySensor extends AbstractAnsibleSensor {
         protected MySensor(FileSystem fileSystem) {
             super(fileSystem);
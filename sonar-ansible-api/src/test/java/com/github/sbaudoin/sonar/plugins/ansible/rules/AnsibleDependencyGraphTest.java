@@ -0,0 +1,139 @@
+/**
+ * Copyright (c) 2018-2021, Sylvain Baudoin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.sbaudoin.sonar.plugins.ansible.rules;
+
+import com.github.sbaudoin.sonar.plugins.ansible.Utils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class AnsibleDependencyGraphTest {
+    private static final Path PROJECT = Utils.BASE_DIR.resolve("graph").toAbsolutePath();
+
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+
+    @Test
+    public void testUpdate() {
+        AnsibleDependencyGraph graph = new AnsibleDependencyGraph(PROJECT);
+        graph.update(Arrays.asList(PROJECT.resolve("site.yml"), PROJECT.resolve("standalone.yml")));
+
+        assertEquals(10, graph.size());
+        assertEquals(10, graph.getParsedFiles());
+        assertEquals(new HashSet<>(Arrays.asList(
+                project("site.yml"),
+                project("db.yml"),
+                project("tasks/db.yml"),
+                project("vars/main.yml"),
+                project("roles/web/tasks/main.yml"),
+                project("roles/web/tasks/install.yml"),
+                project("roles/web/handlers/main.yml"),
+                project("roles/web/meta/main.yml"),
+                project("roles/common/tasks/main.yml"))), graph.getDependencies(project("site.yml")));
+        assertEquals(Collections.singleton(project("standalone.yml")), graph.getDependencies(project("standalone.yml")));
+        assertTrue(graph.isPlaybook(project("site.yml")));
+        assertTrue(graph.isPlaybook(project("db.yml")));
+        assertFalse(graph.isPlaybook(project("tasks/db.yml")));
+        assertFalse(graph.isPlaybook(project("roles/web/meta/main.yml")));
+        assertFalse(graph.isPlaybook(project("unknown.yml")));
+    }
+
+    @Test
+    public void testGetDependents() {
+        AnsibleDependencyGraph graph = new AnsibleDependencyGraph(PROJECT);
+        graph.update(Arrays.asList(PROJECT.resolve("site.yml"), PROJECT.resolve("db.yml"), PROJECT.resolve("standalone.yml")));
+
+        assertEquals(new HashSet<>(Arrays.asList(
+                project("roles/web/tasks/install.yml"),
+                project("roles/web/tasks/main.yml"),
+                project("site.yml"))), graph.getDependents(Collections.singleton(project("roles/web/tasks/install.yml"))));
+        // The common role is used by db.yml and by the web role (meta dependency)
+        assertEquals(new HashSet<>(Arrays.asList(
+                project("roles/common/tasks/main.yml"),
+                project("roles/web/meta/main.yml"),
+                project("db.yml"),
+                project("site.yml"))), graph.getDependents(Collections.singleton(project("roles/common/tasks/main.yml"))));
+        assertEquals(Collections.singleton(project("standalone.yml")), graph.getDependents(Collections.singleton(project("standalone.yml"))));
+    }
+
+    @Test
+    public void testSaveLoad() throws IOException {
+        Path project = temporaryFolder.newFolder("project").toPath();
+        Path playbook = project.resolve("playbook.yml");
+        Path tasks = project.resolve("tasks.yml");
+        Path other = project.resolve("other.yml");
+        Files.write(playbook, "- hosts: all\n  tasks:\n    - import_tasks: tasks.yml\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(tasks, "- ping:\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(other, "- ping:\n".getBytes(StandardCharsets.UTF_8));
+        Path graphFile = temporaryFolder.getRoot().toPath().resolve("graph").resolve("dependencies");
+
+        AnsibleDependencyGraph graph = new AnsibleDependencyGraph(project);
+        graph.update(Collections.singleton(playbook));
+        String key = graph.getDependenciesKey(playbook);
+        graph.save(graphFile);
+        assertTrue(Files.exists(graphFile));
+
+        // Unchanged files are not parsed again
+        graph = new AnsibleDependencyGraph(project);
+        graph.load(graphFile);
+        graph.update(Collections.singleton(playbook));
+        assertEquals(0, graph.getParsedFiles());
+        assertEquals(2, graph.size());
+        assertTrue(graph.isPlaybook(playbook));
+        assertFalse(graph.isPlaybook(tasks));
+        assertEquals(key, graph.getDependenciesKey(playbook));
+
+        // A changed dependency changes the key of the playbook
+        Files.write(tasks, "- ping:\n- import_tasks: other.yml\n".getBytes(StandardCharsets.UTF_8));
+        graph = new AnsibleDependencyGraph(project);
+        graph.load(graphFile);
+        graph.update(Collections.singleton(playbook));
+        assertEquals(2, graph.getParsedFiles());
+        assertEquals(3, graph.size());
+        assertNotEquals(key, graph.getDependenciesKey(playbook));
+    }
+
+    @Test
+    public void testInvalidFiles() throws IOException {
+        Path project = temporaryFolder.newFolder("project").toPath();
+        Path playbook = project.resolve("playbook.yml");
+        Files.write(playbook, "- hosts: all\n  tasks: [\n".getBytes(StandardCharsets.UTF_8));
+
+        AnsibleDependencyGraph graph = new AnsibleDependencyGraph(project);
+        graph.update(Arrays.asList(playbook, project.resolve("missing.yml")));
+        assertEquals(2, graph.size());
+        assertEquals(Collections.singleton(playbook), graph.getDependencies(playbook));
+
+        graph.load(project.resolve("missing-graph"));
+        Files.write(project.resolve("bad-graph"), "bad".getBytes(StandardCharsets.UTF_8));
+        graph.load(project.resolve("bad-graph"));
+    }
+
+
+    private static Path project(String path) {
+        return PROJECT.resolve(path).normalize();
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright (c) 2018-2021, Sylvain Baudoin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.sbaudoin.sonar.plugins.ansible.rules;
+
+import com.github.sbaudoin.sonar.plugins.ansible.Utils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class AnsibleFileClassifierTest {
+    @Test
+    public void testClassify() throws IOException {
+        AnsibleFileClassifier classifier = new AnsibleFileClassifier(Utils.BASE_DIR.toFile(),
+                Arrays.asList("vault", "kubernetes", " HELM", "openapi", "ci"));
+        assertFalse(classifier.isEmpty());
+        assertEquals(AnsibleFileClassifier.Rule.KUBERNETES, classifier.classify(Utils.getInputFile("classifier/k8s/deployment.yml")));
+        assertEquals(AnsibleFileClassifier.Rule.OPENAPI, classifier.classify(Utils.getInputFile("classifier/openapi.yml")));
+        assertEquals(AnsibleFileClassifier.Rule.CI, classifier.classify(Utils.getInputFile("classifier/.gitlab-ci.yml")));
+        assertEquals(AnsibleFileClassifier.Rule.CI, classifier.classify(Utils.getInputFile("classifier/.github/workflows/build.yml")));
+        assertEquals(AnsibleFileClassifier.Rule.VAULT, classifier.classify(Utils.getInputFile("classifier/secrets.yml")));
+        assertEquals(AnsibleFileClassifier.Rule.HELM, classifier.classify(Utils.getInputFile("classifier/charts/app/Chart.yaml")));
+        assertEquals(AnsibleFileClassifier.Rule.HELM, classifier.classify(Utils.getInputFile("classifier/charts/app/values.yaml")));
+        assertEquals(AnsibleFileClassifier.Rule.HELM, classifier.classify(Utils.getInputFile("classifier/charts/app/templates/service.yaml")));
+
+        // Ansible content is kept
+        assertNull(classifier.classify(Utils.getInputFile("classifier/roles/deploy/tasks/main.yml")));
+        assertNull(classifier.classify(Utils.getInputFile("classifier/playbook.yml")));
+        assertNull(classifier.classify(Utils.getInputFile("classifier/vars.yml")));
+        assertNull(classifier.classify(Utils.getInputFile("playbooks/playbook1.yml")));
+    }
+
+    @Test
+    public void testDisabledRules() throws IOException {
+        AnsibleFileClassifier classifier = new AnsibleFileClassifier(Utils.BASE_DIR.toFile(), Collections.emptyList());
+        assertTrue(classifier.isEmpty());
+        assertNull(classifier.classify(Utils.getInputFile("classifier/k8s/deployment.yml")));
+
+        classifier = new AnsibleFileClassifier(Utils.BASE_DIR.toFile(), Arrays.asList("kubernetes", "unknown"));
+        assertEquals(AnsibleFileClassifier.Rule.KUBERNETES, classifier.classify(Utils.getInputFile("classifier/k8s/deployment.yml")));
+        assertNull(classifier.classify(Utils.getInputFile("classifier/secrets.yml")));
+        assertNull(classifier.classify(Utils.getInputFile("classifier/charts/app/Chart.yaml")));
+        assertNull(classifier.classify(Utils.getInputFile("classifier/openapi.yml")));
+        assertNull(classifier.classify(Utils.getInputFile("classifier/.gitlab-ci.yml")));
+        // Helm templates are Kubernetes manifests
+        assertEquals(AnsibleFileClassifier.Rule.KUBERNETES, classifier.classify(Utils.getInputFile("classifier/charts/app/templates/service.yaml")));
+    }
+}
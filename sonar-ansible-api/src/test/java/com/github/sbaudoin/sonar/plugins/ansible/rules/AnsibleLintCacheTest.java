@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2018-2021, Sylvain Baudoin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.sbaudoin.sonar.plugins.ansible.rules;
+
+import com.github.sbaudoin.sonar.plugins.ansible.Utils;
+import com.github.sbaudoin.sonar.plugins.ansible.rules.AbstractAnsibleSensor.AnsibleLintIssue;
+import com.github.sbaudoin.sonar.plugins.ansible.rules.AbstractAnsibleSensor.ReportedIssue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.fs.InputFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class AnsibleLintCacheTest {
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+
+    @Test
+    public void testPutGetSaveLoad() throws IOException {
+        File baseDir = Utils.BASE_DIR.toFile();
+        Path cacheFile = temporaryFolder.getRoot().toPath().resolve("cache").resolve("sensor");
+        InputFile playbook1 = Utils.getInputFile("playbooks/playbook1.yml");
+        InputFile playbook2 = Utils.getInputFile("playbooks/playbook2.yml");
+        InputFile playbook3 = Utils.getInputFile("playbooks/playbook3.yml");
+        ReportedIssue issue1 = new ReportedIssue(playbook1.uri(), new AnsibleLintIssue(2, "xxx", "A message"));
+        ReportedIssue issue2 = new ReportedIssue(playbook2.uri(), new AnsibleLintIssue(3, "yyy"));
+        ReportedIssue roleIssue = new ReportedIssue(new File(baseDir, "roles/foo/tasks/main.yml").toURI(), new AnsibleLintIssue(4, "zzz"));
+
+        AnsibleLintCache cache = new AnsibleLintCache(cacheFile, baseDir, "config");
+        cache.load();
+        Map<InputFile, String> keys = new HashMap<>();
+        for (InputFile playbook : Arrays.asList(playbook1, playbook2, playbook3)) {
+            keys.put(playbook, cache.getKey(playbook));
+            assertNull(cache.get(playbook, keys.get(playbook)));
+        }
+        assertEquals(0, cache.getHits());
+        assertEquals(3, cache.getMisses());
+        cache.put(Arrays.asList(playbook1, playbook2), keys, Arrays.asList(issue1, issue2, roleIssue));
+        cache.put(Collections.singletonList(playbook3), keys, Collections.emptyList());
+        cache.save();
+        assertTrue(Files.exists(cacheFile));
+
+        // Reload the cache
+        cache = new AnsibleLintCache(cacheFile, baseDir, "config");
+        cache.load();
+        List<ReportedIssue> issues = cache.get(playbook1, cache.getKey(playbook1));
+        assertEquals(2, issues.size());
+        assertEquals(playbook1.uri(), issues.get(0).getFile());
+        assertEquals(issue1.getIssue(), issues.get(0).getIssue());
+        assertEquals("A message", issues.get(0).getIssue().getMessage());
+        assertEquals(roleIssue.getFile(), issues.get(1).getFile());
+        assertEquals(roleIssue.getIssue(), issues.get(1).getIssue());
+        issues = cache.get(playbook2, cache.getKey(playbook2));
+        assertEquals(2, issues.size());
+        assertNull(issues.get(0).getIssue().getMessage());
+        assertTrue(cache.get(playbook3, cache.getKey(playbook3)).isEmpty());
+        assertEquals(3, cache.getHits());
+
+        // A different configuration invalidates the entries
+        cache = new AnsibleLintCache(cacheFile, baseDir, "another config");
+        cache.load();
+        assertNull(cache.get(playbook1, cache.getKey(playbook1)));
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testLoadInvalidFile() throws IOException {
+        Path cacheFile = temporaryFolder.newFile("cache").toPath();
+        Files.write(cacheFile, "invalid".getBytes());
+        AnsibleLintCache cache = new AnsibleLintCache(cacheFile, Utils.BASE_DIR.toFile(), "config");
+        cache.load();
+        InputFile playbook1 = Utils.getInputFile("playbooks/playbook1.yml");
+        assertNull(cache.get(playbook1, cache.getKey(playbook1)));
+    }
+
+    @Test
+    public void testGetConfigurationKey() throws IOException {
+        File baseDir = temporaryFolder.getRoot();
+        File rulesDir = temporaryFolder.newFolder("rules");
+        Files.write(rulesDir.toPath().resolve("rule.py"), "v1".getBytes());
+
+        String key1 = AnsibleLintCache.getConfigurationKey(baseDir, Arrays.asList("1.2.3", "ansible-lint", "-r", "rules"));
+        assertEquals(key1, AnsibleLintCache.getConfigurationKey(baseDir, Arrays.asList("1.2.3", "ansible-lint", "-r", "rules")));
+        assertNotEquals(key1, AnsibleLintCache.getConfigurationKey(baseDir, Arrays.asList("1.2.4", "ansible-lint", "-r", "rules")));
+
+        // Directories are identified by their content, not by their location
+        File otherRulesDir = temporaryFolder.newFolder("other-rules");
+        Files.write(otherRulesDir.toPath().resolve("rule.py"), "v1".getBytes());
+        assertEquals(key1, AnsibleLintCache.getConfigurationKey(baseDir, Arrays.asList("1.2.3", "ansible-lint", "-r", otherRulesDir.getAbsolutePath())));
+        Files.write(rulesDir.toPath().resolve("rule.py"), "v2".getBytes());
+        assertNotEquals(key1, AnsibleLintCache.getConfigurationKey(baseDir, Arrays.asList("1.2.3", "ansible-lint", "-r", "rules")));
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) 2018-2021, Sylvain Baudoin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.sbaudoin.sonar.plugins.ansible.rules;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class AnsibleLintConfigurationTest {
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+
+    @Test
+    public void testGet() throws IOException {
+        Path directory = temporaryFolder.getRoot().toPath().resolve("config");
+        Path conf = temporaryFolder.newFile(".ansible-lint").toPath();
+        Files.write(conf, Arrays.asList("exclude_paths:", "  - ./tests", "enable_list:", "  - yaml", "warn_list:", "  - experimental"), StandardCharsets.UTF_8);
+
+        Path file = AnsibleLintConfiguration.get(directory, conf, Arrays.asList("no-tabs", "E303", "command-instead-of-module"), new int[] { 5, 2 });
+        assertEquals(directory, file.getParent());
+        Map<String, Object> configuration = load(file);
+        assertEquals(Collections.singletonList(temporaryFolder.getRoot().toPath().resolve("tests").toString()), configuration.get("exclude_paths"));
+        assertEquals(Collections.singletonList("experimental"), configuration.get("warn_list"));
+        assertEquals(Arrays.asList("E303", "command-instead-of-module", "no-tabs"), configuration.get("tags"));
+        assertEquals(Arrays.asList("yaml", "E303", "command-instead-of-module", "no-tabs"), configuration.get("enable_list"));
+
+        // Same rules in another order: the configuration is not generated again
+        Files.write(file, Collections.singletonList("# unchanged"), StandardCharsets.UTF_8);
+        assertEquals(file, AnsibleLintConfiguration.get(directory, conf, Arrays.asList("command-instead-of-module", "no-tabs", "E303"), new int[] { 5, 2 }));
+        assertEquals(Collections.singletonList("# unchanged"), Files.readAllLines(file, StandardCharsets.UTF_8));
+
+        // Another user configuration
+        Files.write(conf, Collections.singletonList("tags: [yaml]"), StandardCharsets.UTF_8);
+        Path other = AnsibleLintConfiguration.get(directory, conf, Arrays.asList("command-instead-of-module", "no-tabs", "E303"), new int[] { 5, 2 });
+        assertNotEquals(file, other);
+        assertEquals(Collections.singletonList("yaml"), load(other).get("tags"));
+    }
+
+    @Test
+    public void testGetOldVersion() throws IOException {
+        Path directory = temporaryFolder.getRoot().toPath();
+
+        // ansible-lint 4 has no enable list and knows its rules without the heading E
+        Map<String, Object> configuration = load(AnsibleLintConfiguration.get(directory, null, Arrays.asList("E303", "ANSIBLE0002"), new int[] { 4, 3 }));
+        assertEquals(Arrays.asList("303", "ANSIBLE0002"), configuration.get("tags"));
+        assertFalse(configuration.containsKey("enable_list"));
+
+        // Unknown version: latest syntax
+        configuration = load(AnsibleLintConfiguration.get(directory, null, Collections.singletonList("E303"), null));
+        assertEquals(Collections.singletonList("E303"), configuration.get("tags"));
+        assertEquals(Collections.singletonList("E303"), configuration.get("enable_list"));
+    }
+
+    @Test
+    public void testGetInvalidUserConfiguration() throws IOException {
+        Path conf = temporaryFolder.newFile(".ansible-lint").toPath();
+        Files.write(conf, Collections.singletonList("foo: [bar"), StandardCharsets.UTF_8);
+        Map<String, Object> configuration = load(AnsibleLintConfiguration.get(temporaryFolder.getRoot().toPath(), conf, Collections.singletonList("no-tabs"), null));
+        assertEquals(2, configuration.size());
+        assertEquals(Collections.singletonList("no-tabs"), configuration.get("tags"));
+    }
+
+
+    private static Map<String, Object> load(Path file) throws IOException {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return new Yaml().load(reader);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2018-2021, Sylvain Baudoin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.sbaudoin.sonar.plugins.ansible.rules;
+
+import com.github.sbaudoin.sonar.plugins.ansible.Utils;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.api.batch.fs.InputFile;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class AnsibleLintCoverageTest {
+    private static final Path PROJECT = Utils.BASE_DIR.resolve("graph").toAbsolutePath();
+
+    private InputFile site;
+    private InputFile db;
+    private InputFile standalone;
+    private InputFile roleMain;
+    private List<InputFile> inputFiles;
+    private AnsibleDependencyGraph graph;
+
+
+    @Before
+    public void setUp() throws IOException {
+        site = Utils.getInputFile("graph/site.yml");
+        db = Utils.getInputFile("graph/db.yml");
+        standalone = Utils.getInputFile("graph/standalone.yml");
+        roleMain = Utils.getInputFile("graph/roles/web/tasks/main.yml");
+        inputFiles = Arrays.asList(site, db, standalone, roleMain);
+        graph = new AnsibleDependencyGraph(PROJECT);
+        graph.update(inputFiles.stream().map(inputFile -> Paths.get(inputFile.uri())).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testEntryPoints() {
+        AnsibleLintCoverage coverage = new AnsibleLintCoverage(graph, true);
+        List<InputFile> deferredFiles = coverage.getDeferredFiles(inputFiles, inputFiles);
+        assertEquals(Arrays.asList(db, roleMain), deferredFiles);
+
+        // The imported playbook and the role are covered by the entry point that uses them
+        Set<InputFile> covered = coverage.getCoveredFiles(deferredFiles, Arrays.asList(site, standalone), Collections.emptyMap());
+        assertEquals(new HashSet<>(Arrays.asList(db, roleMain)), covered);
+        covered = coverage.getCoveredFiles(deferredFiles, Collections.singletonList(standalone), Collections.emptyMap());
+        assertTrue(covered.isEmpty());
+    }
+
+    @Test
+    public void testSkipCoveredFiles() {
+        AnsibleLintCoverage coverage = new AnsibleLintCoverage(graph, false);
+        List<InputFile> deferredFiles = coverage.getDeferredFiles(inputFiles, inputFiles);
+        assertEquals(Arrays.asList(db, roleMain), deferredFiles);
+        assertEquals(Collections.singletonList(roleMain), coverage.getDeferredFiles(Arrays.asList(standalone, roleMain), inputFiles));
+    }
+
+    @Test
+    public void testSkipCoveredFilesWithoutGraph() {
+        AnsibleLintCoverage coverage = new AnsibleLintCoverage(null, false);
+        List<InputFile> deferredFiles = coverage.getDeferredFiles(inputFiles, inputFiles);
+        // Without a dependency graph, only the role files are deferred...
+        assertEquals(Collections.singletonList(roleMain), deferredFiles);
+
+        // ... and are covered as soon as an issue has been reported on them
+        Map<URI, Object> issues = new HashMap<>();
+        assertTrue(coverage.getCoveredFiles(deferredFiles, inputFiles, issues).isEmpty());
+        issues.put(roleMain.uri(), "issue");
+        assertEquals(Collections.singleton(roleMain), coverage.getCoveredFiles(deferredFiles, inputFiles, issues));
+    }
+}
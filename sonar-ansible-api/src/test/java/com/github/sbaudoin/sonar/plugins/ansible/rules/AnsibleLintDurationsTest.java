@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2018-2021, Sylvain Baudoin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.sbaudoin.sonar.plugins.ansible.rules;
+
+import com.github.sbaudoin.sonar.plugins.ansible.Utils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.fs.InputFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AnsibleLintDurationsTest {
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+
+    @Test
+    public void testSort() throws IOException {
+        InputFile playbook1 = Utils.getInputFile("playbooks/playbook1.yml");
+        InputFile playbook2 = Utils.getInputFile("playbooks/playbook2.yml");
+        InputFile playbook3 = Utils.getInputFile("playbooks/playbook3.yml");
+        Path file = temporaryFolder.getRoot().toPath().resolve("durations");
+
+        // Without known durations, the biggest files come first
+        AnsibleLintDurations durations = new AnsibleLintDurations(file, Utils.BASE_DIR.toFile());
+        List<InputFile> files = new ArrayList<>(Arrays.asList(playbook1, playbook2, playbook3));
+        durations.sort(files);
+        assertEquals(bySizeDescending(playbook1, playbook2, playbook3), files);
+
+        // Known durations come first, then the durations are persisted
+        durations.put(Collections.singletonList(playbook3), 3_000_000_000L);
+        durations.put(Arrays.asList(playbook1, playbook2), 2_000_000L);
+        durations.save();
+        assertTrue(Files.exists(file));
+        durations = new AnsibleLintDurations(file, Utils.BASE_DIR.toFile());
+        assertEquals(Long.valueOf(3_000_000_000L), durations.get(playbook3));
+        assertEquals(Long.valueOf(1_000_000L), durations.get(playbook1));
+        assertEquals(Long.valueOf(1_000_000L), durations.get(playbook2));
+        files = new ArrayList<>(Arrays.asList(playbook1, playbook2, playbook3));
+        durations.sort(files);
+        assertEquals(playbook3, files.get(0));
+    }
+
+    @Test
+    public void testSortUnknownFiles() throws IOException {
+        InputFile playbook1 = Utils.getInputFile("playbooks/playbook1.yml");
+        InputFile playbook2 = Utils.getInputFile("playbooks/playbook2.yml");
+        Path file = temporaryFolder.getRoot().toPath().resolve("durations");
+
+        // A new file is estimated from the duration per byte of the known files
+        AnsibleLintDurations durations = new AnsibleLintDurations(file, Utils.BASE_DIR.toFile());
+        long size1 = Files.size(Paths.get(playbook1.uri()));
+        durations.put(Collections.singletonList(playbook1), size1 * 10);
+        List<InputFile> files = new ArrayList<>(Arrays.asList(playbook1, playbook2));
+        durations.sort(files);
+        assertEquals(bySizeDescending(playbook1, playbook2), files);
+        assertNull(durations.get(playbook2));
+    }
+
+
+    private static List<InputFile> bySizeDescending(InputFile... inputFiles) {
+        List<InputFile> files = new ArrayList<>(Arrays.asList(inputFiles));
+        files.sort((f1, f2) -> Long.compare(size(f2), size(f1)));
+        return files;
+    }
+
+    private static long size(InputFile inputFile) {
+        try {
+            return Files.size(Paths.get(inputFile.uri()));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright (c) 2018-2021, Sylvain Baudoin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.sbaudoin.sonar.plugins.ansible.rules;
+
+import com.github.sbaudoin.sonar.plugins.ansible.rules.AbstractAnsibleSensor.AnsibleLintIssue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.sonar.api.utils.log.LogTester;
+import org.sonar.api.utils.log.LoggerLevel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AnsibleLintJsonReaderTest {
+    @Rule
+    public final LogTester logTester = new LogTester();
+
+    private final List<String> paths = new ArrayList<>();
+    private final List<AnsibleLintIssue> issues = new ArrayList<>();
+
+
+    @Test
+    public void testCodeclimate() throws IOException {
+        read(AnsibleLintJsonReader.Format.CODECLIMATE, "[\n" +
+                "  {\"type\": \"issue\", \"check_name\": \"[yaml] Line too long\", \"categories\": [\"formatting\", \"yaml\"], \"severity\": \"minor\",\n" +
+                "   \"description\": \"line too long (165 > 160 characters)\", \"fingerprint\": \"abc\", \"location\": {\"path\": \"roles/foo/tasks/main.yml\", \"lines\": {\"begin\": 12}}},\n" +
+                "  {\"type\": \"issue\", \"check_name\": \"name[casing]\", \"url\": null, \"severity\": \"major\", \"description\": \"All names should start with an uppercase letter \\u00e9\\n\\\"x\\\"\",\n" +
+                "   \"location\": {\"path\": \"site.yml\", \"positions\": {\"begin\": {\"line\": 3, \"column\": 7}}}, \"content\": {\"body\": \"details\"}, \"score\": -1.5e2, \"ok\": true}\n" +
+                "]\n");
+
+        assertEquals(2, issues.size());
+        assertEquals("roles/foo/tasks/main.yml", paths.get(0));
+        assertEquals(12, issues.get(0).getLine());
+        assertEquals(0, issues.get(0).getColumn());
+        assertEquals("yaml", issues.get(0).getId());
+        assertEquals("line too long (165 > 160 characters)", issues.get(0).getMessage());
+        assertEquals("site.yml", paths.get(1));
+        assertEquals(3, issues.get(1).getLine());
+        assertEquals(7, issues.get(1).getColumn());
+        assertEquals("name", issues.get(1).getId());
+        assertEquals("All names should start with an uppercase letter é\n\"x\"", issues.get(1).getMessage());
+    }
+
+    @Test
+    public void testSarif() throws IOException {
+        String file = new File("/tmp/site.yml").getAbsoluteFile().toURI().toString();
+        read(AnsibleLintJsonReader.Format.SARIF, "{\"$schema\": \"https://json.schemastore.org/sarif-2.1.0.json\", \"version\": \"2.1.0\", \"runs\": [{\n" +
+                "  \"tool\": {\"driver\": {\"name\": \"ansible-lint\", \"rules\": [{\"id\": \"yaml\", \"shortDescription\": {\"text\": \"Violations reported by yamllint.\"}}]}},\n" +
+                "  \"columnKind\": \"utf16CodeUnits\",\n" +
+                "  \"results\": [\n" +
+                "    {\"ruleId\": \"yaml[truthy]\", \"level\": \"error\", \"message\": {\"text\": \"Truthy value should be one of [false, true]\"},\n" +
+                "     \"locations\": [{\"physicalLocation\": {\"artifactLocation\": {\"uri\": \"playbook.yml\", \"uriBaseId\": \"SRCROOT\"}, \"region\": {\"startLine\": 4, \"startColumn\": 3}}}]},\n" +
+                "    {\"ruleId\": \"no-changed-when\", \"message\": {\"text\": \"Commands should not change things if nothing needs doing.\"},\n" +
+                "     \"locations\": [{\"physicalLocation\": {\"artifactLocation\": {\"uri\": \"" + file + "\"}, \"region\": {\"startLine\": 9}}}]}\n" +
+                "  ]\n" +
+                "}]}");
+
+        assertEquals(2, issues.size());
+        assertEquals("playbook.yml", paths.get(0));
+        assertEquals(4, issues.get(0).getLine());
+        assertEquals(3, issues.get(0).getColumn());
+        assertEquals("yaml", issues.get(0).getId());
+        assertEquals("Truthy value should be one of [false, true]", issues.get(0).getMessage());
+        assertEquals(new File("/tmp/site.yml").getAbsolutePath(), paths.get(1));
+        assertEquals(9, issues.get(1).getLine());
+        assertEquals(0, issues.get(1).getColumn());
+        assertEquals("no-changed-when", issues.get(1).getId());
+    }
+
+    @Test
+    public void testEmptyOutput() throws IOException {
+        read(AnsibleLintJsonReader.Format.CODECLIMATE, "");
+        read(AnsibleLintJsonReader.Format.CODECLIMATE, "  \n[]\n");
+        read(AnsibleLintJsonReader.Format.SARIF, "{\"runs\": [{\"results\": []}]}");
+        assertTrue(issues.isEmpty());
+        assertTrue(logTester.logs(LoggerLevel.WARN).isEmpty());
+    }
+
+    @Test
+    public void testInvalidOutput() throws IOException {
+        read(AnsibleLintJsonReader.Format.CODECLIMATE, "[{\"check_name\": \"yaml\", \"location\": {\"path\": \"a.yml\", \"lines\": {\"begin\": 1}}}, {\"check_name\": \"yaml\", \"location\": {\"path\": \"b.yml\", \"lines\": {\"begin\": 2}}}, {\"check_name\": ");
+        assertEquals(2, issues.size());
+        assertEquals(1, logTester.logs(LoggerLevel.WARN).size());
+        assertTrue(logTester.logs(LoggerLevel.WARN).get(0).startsWith("Invalid ansible-lint codeclimate output"));
+
+        logTester.clear();
+        read(AnsibleLintJsonReader.Format.CODECLIMATE, "WARNING Listing 1 violation(s) that are fatal");
+        assertEquals(2, issues.size());
+        assertEquals(1, logTester.logs(LoggerLevel.WARN).size());
+
+        // Issues without file are ignored
+        logTester.clear();
+        read(AnsibleLintJsonReader.Format.CODECLIMATE, "[{\"check_name\": \"yaml\"}] ");
+        assertEquals(2, issues.size());
+        assertTrue(logTester.logs(LoggerLevel.WARN).get(0).startsWith("Invalid issue, ignoring"));
+    }
+
+    @Test
+    public void testGetRuleId() {
+        assertEquals("yaml", AnsibleLintJsonReader.getRuleId("yaml"));
+        assertEquals("yaml", AnsibleLintJsonReader.getRuleId("yaml[line-length]"));
+        assertEquals("E301", AnsibleLintJsonReader.getRuleId("[E301] Commands should not change things"));
+        assertEquals("no-changed-when", AnsibleLintJsonReader.getRuleId("[no-changed-when] Commands should not change things [x]"));
+    }
+
+
+    private void read(AnsibleLintJsonReader.Format format, String output) throws IOException {
+        new AnsibleLintJsonReader(format, (path, issue) -> {
+            paths.add(path);
+            issues.add(issue);
+        }).read(new StringReader(output));
+    }
+}
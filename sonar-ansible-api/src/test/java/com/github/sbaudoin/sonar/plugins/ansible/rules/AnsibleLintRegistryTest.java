@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2018-2021, Sylvain Baudoin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.sbaudoin.sonar.plugins.ansible.rules;
+
+import com.github.sbaudoin.sonar.plugins.ansible.Utils;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.fs.internal.DefaultFileSystem;
+import org.sonar.api.batch.sensor.internal.SensorContextTester;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+public class AnsibleLintRegistryTest {
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+
+    @After
+    public void tearDown() {
+        System.clearProperty(AnsibleLintRegistry.DEFAULT_RULES_PROPERTY);
+        System.clearProperty(AnsibleLintRegistry.EXTRA_RULES_PROPERTY);
+    }
+
+
+    @Test
+    public void testDefaultRules() {
+        System.clearProperty(AnsibleLintRegistry.DEFAULT_RULES_PROPERTY);
+        assertFalse(AnsibleLintRegistry.hasDefaultRules());
+        AnsibleLintRegistry.registerDefaultRules();
+        assertTrue(AnsibleLintRegistry.hasDefaultRules());
+    }
+
+    @Test
+    public void testExtraRules() {
+        URI rules1 = URI.create("jar:file:/plugins/sonar-ansible-extras-plugin-1.jar!/extra-rules");
+        URI rules2 = URI.create("jar:file:/plugins/sonar-ansible-extras-plugin-2.jar!/extra-rules");
+        AnsibleLintRegistry.registerExtraRules(rules1);
+        AnsibleLintRegistry.registerExtraRules(rules2);
+        AnsibleLintRegistry.registerExtraRules(rules1);
+        assertTrue(AnsibleLintRegistry.getExtraRules().contains(rules1));
+        assertTrue(AnsibleLintRegistry.getExtraRules().contains(rules2));
+        assertEquals(1, AnsibleLintRegistry.getExtraRules().stream().filter(rules1::equals).count());
+        assertTrue(AnsibleLintRegistry.getExtraRules().indexOf(rules1) < AnsibleLintRegistry.getExtraRules().indexOf(rules2));
+    }
+
+    @Test
+    public void testClaimCombinedExecution() throws IOException {
+        SensorContextTester context1 = Utils.getSensorContext();
+        DefaultFileSystem fs = Utils.getFileSystem();
+        fs.setWorkDir(temporaryFolder.newFolder("module1").toPath());
+        context1.setFileSystem(fs);
+        SensorContextTester context2 = Utils.getSensorContext();
+        fs = Utils.getFileSystem();
+        fs.setWorkDir(temporaryFolder.newFolder("module2").toPath());
+        context2.setFileSystem(fs);
+
+        assertTrue(AnsibleLintRegistry.claimCombinedExecution(context1));
+        assertFalse(AnsibleLintRegistry.claimCombinedExecution(context1));
+        assertTrue(AnsibleLintRegistry.claimCombinedExecution(context2));
+        assertFalse(AnsibleLintRegistry.claimCombinedExecution(context2));
+    }
+
+    @Test
+    public void testClaimCombinedExecutionNewAnalysis() throws IOException {
+        SensorContextTester context = Utils.getSensorContext();
+        DefaultFileSystem fs = Utils.getFileSystem();
+        Path workDir = temporaryFolder.newFolder("module").toPath();
+        fs.setWorkDir(workDir);
+        context.setFileSystem(fs);
+
+        assertTrue(AnsibleLintRegistry.claimCombinedExecution(context));
+        assertTrue(Files.exists(workDir.resolve(AnsibleLintRegistry.CLAIM_FILE)));
+        assertFalse(AnsibleLintRegistry.claimCombinedExecution(context));
+
+        // The scanner cleans the work directory at the beginning of each analysis
+        Files.delete(workDir.resolve(AnsibleLintRegistry.CLAIM_FILE));
+        assertTrue(AnsibleLintRegistry.claimCombinedExecution(context));
+    }
+}
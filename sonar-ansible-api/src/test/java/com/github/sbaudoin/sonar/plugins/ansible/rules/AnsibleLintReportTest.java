@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2018-2021, Sylvain Baudoin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.sbaudoin.sonar.plugins.ansible.rules;
+
+import com.github.sbaudoin.sonar.plugins.ansible.Utils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.fs.InputFile;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AnsibleLintReportTest {
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+
+    @Test
+    public void testPercentile() {
+        long[] values = new long[100];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i + 1;
+        }
+        assertEquals(50, AnsibleLintReport.percentile(values, 50));
+        assertEquals(95, AnsibleLintReport.percentile(values, 95));
+        assertEquals(99, AnsibleLintReport.percentile(values, 99));
+        assertEquals(1, AnsibleLintReport.percentile(values, 0));
+        assertEquals(100, AnsibleLintReport.percentile(values, 100));
+        assertEquals(7, AnsibleLintReport.percentile(new long[] { 7 }, 99));
+        assertEquals(0, AnsibleLintReport.percentile(new long[0], 50));
+    }
+
+    @Test
+    public void testReport() throws IOException {
+        InputFile playbook1 = Utils.getInputFile("playbooks/playbook1.yml");
+        InputFile playbook2 = Utils.getInputFile("playbooks/playbook2.yml");
+        InputFile playbook3 = Utils.getInputFile("playbooks/playbook3.yml");
+        AnsibleLintReport report = new AnsibleLintReport(Utils.BASE_DIR.toFile());
+        report.add(Collections.singletonList(playbook1), 1_000_000, 30_000_000, 500_000, 120, 2);
+        report.add(Arrays.asList(playbook2, playbook3), 2_000_000, 90_000_000, 1_500_000, 0, 0);
+        assertEquals(2, report.size());
+
+        List<AnsibleLintReport.Execution> slowest = report.getSlowest(1);
+        assertEquals(1, slowest.size());
+        assertEquals(Arrays.asList("playbooks/playbook2.yml", "playbooks/playbook3.yml"), slowest.get(0).getFiles());
+        assertEquals(90_000_000, slowest.get(0).getWallNanos());
+
+        Path file = temporaryFolder.getRoot().toPath().resolve("report").resolve("performance.json");
+        report.write(file);
+        assertEquals("{\"executions\":2,\"files\":3," +
+                "\"totals\":{\"spawnMs\":3.000,\"wallMs\":120.000,\"parseMs\":2.000,\"outputBytes\":120,\"issues\":2}," +
+                "\"wallMsPercentiles\":{\"p50\":30.000,\"p95\":90.000,\"p99\":90.000}," +
+                "\"entries\":[{\"files\":[\"playbooks/playbook1.yml\"],\"spawnMs\":1.000,\"wallMs\":30.000,\"parseMs\":0.500,\"outputBytes\":120,\"issues\":2}," +
+                "{\"files\":[\"playbooks/playbook2.yml\",\"playbooks/playbook3.yml\"],\"spawnMs\":2.000,\"wallMs\":90.000,\"parseMs\":1.500,\"outputBytes\":0,\"issues\":0}]}",
+                new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim());
+    }
+}
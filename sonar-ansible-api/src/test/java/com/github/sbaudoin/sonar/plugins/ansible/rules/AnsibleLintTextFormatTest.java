@@ -0,0 +1,135 @@
+/**
+ * Copyright (c) 2018-2021, Sylvain Baudoin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.sbaudoin.sonar.plugins.ansible.rules;
+
+import com.github.sbaudoin.sonar.plugins.ansible.rules.AbstractAnsibleSensor.ReportedIssue;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class AnsibleLintTextFormatTest {
+    private static final Function<String, URI> RESOLVER = path -> URI.create("file:///base/" + path.replace(' ', '_').replace("[", "%5B").replace("]", "%5D"));
+
+    private static final List<String> LINES = Arrays.asList(
+            "invalid issue",
+            "filename:invalid issue",
+            "filename:a:invalid issue",
+            "filename:12:invalid issue",
+            "filename:12: invalid issue",
+            "filename:12:[xxx]invalid issue",
+            "filename:12: [xxx]invalid issue",
+            "filename:12: [xxx] invalid issue",
+            "filename:12: [Exxx]invalid issue",
+            "filename:12:[Exxx]invalid issue",
+            "filename:12:[Exxx] invalid issue",
+            "filename:12: [Exxx invalid issue",
+            "xxx filename:12: invalid issue",
+            "path/to/myfile.yml:2: [Exxx] there is a problem",
+            "path/to/myfile.yml:2: [E] there is a problem",
+            "path/to/myfile.yml:2: [Exx] x] there is a problem",
+            "path/to/myfile.yml:2: [Exx] there [is] a problem",
+            "path/to/my file.yml:12:34: [E301] msg: with: colons",
+            "path:1: [E1] a:2: [E2] b",
+            "a:1: [E1] ",
+            ":1: [E1] x",
+            "xxx path/to/myfile.yml:2",
+            "xxx path/to/my file.yml:2",
+            "xxx path:to:file.yml:22",
+            "xxx :2",
+            " xxx path:2",
+            "xxx path:",
+            "xxx path:2a",
+            "path/to/myfile.yml:3: xxx",
+            "path/to/my file.yml:3: xxx",
+            ":3: xxx",
+            "3: xxx",
+            "path:3: ",
+            "path:3:  xxx",
+            "path::3: xxx",
+            "path:99999999999: xxx",
+            "path:2: [Exxx] yyy:3: zzz"
+    );
+
+    private static final Pattern LEGACY = Pattern.compile("^(.*):([0-9]+): \\[E([^\\[]+)\\] (.*)$");
+    private static final Pattern V4_3 = Pattern.compile("^([^ ]+) (.+):([0-9]+)$");
+    private static final Pattern V5 = Pattern.compile("^(.*):([0-9]+): ([^ ]+)$");
+
+
+    @Test
+    public void testLegacy() {
+        for (String line : LINES) {
+            Matcher matcher = LEGACY.matcher(line);
+            assertSame(line, matcher.matches() && fitsInt(matcher.group(2)) ?
+                    expected(matcher.group(1), matcher.group(2), matcher.group(3), matcher.group(4)) : null,
+                    AnsibleLintTextFormat.LEGACY.parse(line, RESOLVER));
+        }
+    }
+
+    @Test
+    public void testV43() {
+        for (String line : LINES) {
+            Matcher matcher = V4_3.matcher(line);
+            assertSame(line, matcher.matches() && fitsInt(matcher.group(3)) ?
+                    expected(matcher.group(2), matcher.group(3), matcher.group(1), null) : null,
+                    AnsibleLintTextFormat.V4_3.parse(line, RESOLVER));
+        }
+    }
+
+    @Test
+    public void testV5() {
+        for (String line : LINES) {
+            Matcher matcher = V5.matcher(line);
+            assertSame(line, matcher.matches() && fitsInt(matcher.group(2)) ?
+                    expected(matcher.group(1), matcher.group(2), matcher.group(3), null) : null,
+                    AnsibleLintTextFormat.V5.parse(line, RESOLVER));
+        }
+    }
+
+    @Test
+    public void testForVersion() {
+        assertEquals(AnsibleLintTextFormat.LEGACY, AnsibleLintTextFormat.forVersion(3, 5));
+        assertEquals(AnsibleLintTextFormat.LEGACY, AnsibleLintTextFormat.forVersion(4, 2));
+        assertEquals(AnsibleLintTextFormat.V4_3, AnsibleLintTextFormat.forVersion(4, 3));
+        assertEquals(AnsibleLintTextFormat.V5, AnsibleLintTextFormat.forVersion(5, 0));
+        assertEquals(AnsibleLintTextFormat.V5, AnsibleLintTextFormat.forVersion(6, 22));
+    }
+
+
+    private static boolean fitsInt(String number) {
+        try {
+            Integer.parseInt(number);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static String expected(String path, String line, String id, String message) {
+        return RESOLVER.apply(path) + ":" + line + ":" + id + ":" + message;
+    }
+
+    private static void assertSame(String line, String expected, ReportedIssue actual) {
+        assertEquals(line, expected, (actual == null) ? null :
+                actual.getFile() + ":" + actual.getIssue().getLine() + ":" + actual.getIssue().getId() + ":" + actual.getIssue().getMessage());
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2018-2021, Sylvain Baudoin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.sbaudoin.sonar.plugins.ansible.rules;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.github.sbaudoin.sonar.plugins.ansible.Utils.setShellRights;
+import static org.junit.Assert.*;
+
+public class AnsibleLintWorkerTest {
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+
+    @Test
+    public void testLint() throws IOException {
+        try (AnsibleLintWorker worker = new AnsibleLintWorker(Collections.singletonList(getScript("ansible-lint-worker")), temporaryFolder.getRoot())) {
+            assertEquals("1.2.3", worker.getVersion());
+
+            List<String> output = new ArrayList<>();
+            List<String> error = new ArrayList<>();
+            worker.lint(Collections.singletonList("foo.yml"), output, error);
+            assertEquals(1, output.size());
+            assertTrue(output.get(0).startsWith("foo.yml:2: [EANSIBLE1] From worker "));
+
+            // The same process answers the next requests
+            output.clear();
+            worker.lint(Arrays.asList("bar.yml", "baz.yml"), output, error);
+            if (!System.getProperty("os.name").toLowerCase().contains("windows")) {
+                assertEquals(2, output.size());
+                assertTrue(output.get(0).startsWith("bar.yml:2: [EANSIBLE1] From worker "));
+                assertTrue(output.get(1).startsWith("baz.yml:2: [EANSIBLE1] From worker "));
+            }
+        }
+    }
+
+    @Test
+    public void testUnsupported() throws IOException {
+        try {
+            new AnsibleLintWorker(Arrays.asList(getScript("echo"), "UNSUPPORTED"), temporaryFolder.getRoot());
+            fail("Worker should not be supported");
+        } catch (IOException e) {
+            assertEquals("ansible-lint worker not supported: UNSUPPORTED", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testStartupTimeout() throws IOException {
+        // The script does not answer before 5 seconds
+        try {
+            new AnsibleLintWorker(Arrays.asList(getScript("ansible-lint-timeout"), "playbook2.yml"), temporaryFolder.getRoot(), 500);
+            fail("Worker should not be ready");
+        } catch (IOException e) {
+            assertEquals("ansible-lint worker not ready after 500 ms", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testExtractShim() throws IOException {
+        Path shim = AnsibleLintWorker.extractShim(temporaryFolder.getRoot().toPath().resolve("foo"));
+        assertTrue(Files.exists(shim));
+        assertEquals(AnsibleLintWorker.SHIM_RESOURCE, shim.getFileName().toString());
+        assertTrue(new String(Files.readAllBytes(shim)).contains(AnsibleLintWorker.END_MARKER));
+    }
+
+
+    private String getScript(String name) throws IOException {
+        if (System.getProperty("os.name").toLowerCase().contains("windows")) {
+            return new File(getClass().getResource("/scripts/" + name + ".cmd").getFile()).getAbsolutePath();
+        }
+        String path = new File(getClass().getResource("/scripts/" + name + ".sh").getFile()).getAbsolutePath();
+        setShellRights(path);
+        return path;
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2018-2021, Sylvain Baudoin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.sbaudoin.sonar.plugins.ansible.rules;
+
+import com.github.sbaudoin.sonar.plugins.ansible.Utils;
+import com.github.sbaudoin.sonar.plugins.ansible.rules.AbstractAnsibleSensor.AnsibleLintIssue;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class AnsibleNativeChecksTest {
+    @Test
+    public void testCheck() throws IOException {
+        AnsibleNativeChecks checks = new AnsibleNativeChecks(Utils.BASE_DIR.toFile(), allChecks());
+        assertFalse(checks.isEmpty());
+
+        assertEquals(new HashSet<>(Arrays.asList(
+                "4 package-latest Package installs should not use latest",
+                "12 command-instead-of-module curl used in place of get_url or uri module",
+                "26 risky-shell-pipe Shells that use pipes should set the pipefail option",
+                "40 literal-compare Don't compare to literal True/False",
+                "46 unnamed-task All tasks should be named",
+                "46 no-changed-when Commands should not change things if nothing needs doing",
+                "48 literal-compare Don't compare to literal True/False",
+                "54 command-instead-of-module systemctl used in place of systemd module",
+                "54 no-changed-when Commands should not change things if nothing needs doing")),
+                toStrings(checks.check(Utils.getInputFile("native/playbook.yml"))));
+
+        // Handlers are not checked for changes and pipes
+        assertEquals(Collections.singleton("2 command-instead-of-module systemctl used in place of systemd module"),
+                toStrings(checks.check(Utils.getInputFile("native/roles/app/handlers/main.yml"))));
+
+        // Task files are those of a tasks directory
+        assertEquals(new HashSet<>(Arrays.asList(
+                "2 unnamed-task All tasks should be named",
+                "2 command-instead-of-module curl used in place of get_url or uri module",
+                "2 no-changed-when Commands should not change things if nothing needs doing")),
+                toStrings(checks.check(Utils.getInputFile("native/roles/app/tasks/main.yml"))));
+        assertTrue(checks.check(Utils.getInputFile("native/tasks.yml")).isEmpty());
+
+        // Requirements, vars files and invalid files have no task
+        assertTrue(checks.check(Utils.getInputFile("native/requirements.yml")).isEmpty());
+        assertTrue(checks.check(Utils.getInputFile("native/vars.yml")).isEmpty());
+        assertTrue(checks.check(Utils.getInputFile("native/invalid.yml")).isEmpty());
+    }
+
+    @Test
+    public void testGetKind() {
+        assertEquals(AnsibleNativeChecks.Kind.PLAYBOOK, AnsibleNativeChecks.getKind("site.yml"));
+        assertEquals(AnsibleNativeChecks.Kind.PLAYBOOK, AnsibleNativeChecks.getKind("playbooks/deploy.yaml"));
+        assertEquals(AnsibleNativeChecks.Kind.TASKS, AnsibleNativeChecks.getKind("roles/app/tasks/main.yml"));
+        assertEquals(AnsibleNativeChecks.Kind.TASKS, AnsibleNativeChecks.getKind("tasks/install/debian.yml"));
+        assertEquals(AnsibleNativeChecks.Kind.HANDLERS, AnsibleNativeChecks.getKind("roles/app/handlers/main.yml"));
+        assertNull(AnsibleNativeChecks.getKind("requirements.yml"));
+        assertNull(AnsibleNativeChecks.getKind("roles/requirements.yaml"));
+        assertNull(AnsibleNativeChecks.getKind("roles/app/vars/main.yml"));
+        assertNull(AnsibleNativeChecks.getKind("roles/app/defaults/main.yml"));
+        assertNull(AnsibleNativeChecks.getKind("roles/app/meta/main.yml"));
+        assertNull(AnsibleNativeChecks.getKind("group_vars/all.yml"));
+        assertNull(AnsibleNativeChecks.getKind("host_vars/server1/main.yml"));
+        assertNull(AnsibleNativeChecks.getKind("roles/app/molecule/default/tasks/verify.yml"));
+    }
+
+    @Test
+    public void testCheckIds() throws IOException {
+        Map<AnsibleNativeChecks.Check, String> ids = new EnumMap<>(AnsibleNativeChecks.Check.class);
+        ids.put(AnsibleNativeChecks.Check.PACKAGE_LATEST, "E403");
+        AnsibleNativeChecks checks = new AnsibleNativeChecks(Utils.BASE_DIR.toFile(), ids);
+        assertEquals(Collections.singletonList("E403"), new ArrayList<>(checks.getIds()));
+        assertEquals(Collections.singleton("4 E403 Package installs should not use latest"),
+                toStrings(checks.check(Utils.getInputFile("native/playbook.yml"))));
+
+        checks = new AnsibleNativeChecks(Utils.BASE_DIR.toFile(), Collections.emptyMap());
+        assertTrue(checks.isEmpty());
+        assertTrue(checks.check(Utils.getInputFile("native/playbook.yml")).isEmpty());
+    }
+
+    @Test
+    public void testParity() throws IOException {
+        // The native checks report what ansible-lint 5 reports on the same files for the same rules (see the header of
+        // ansible-lint-output.txt)
+        AnsibleNativeChecks checks = new AnsibleNativeChecks(Utils.BASE_DIR.toFile(), allChecks());
+        Map<String, Set<String>> recorded = new TreeMap<>();
+        for (String line : Files.readAllLines(Utils.BASE_DIR.resolve("native/ansible-lint-output.txt"), StandardCharsets.UTF_8)) {
+            if (line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split(": ?");
+            recorded.computeIfAbsent(parts[0], file -> new HashSet<>());
+            if (checks.getIds().contains(parts[2])) {
+                recorded.get(parts[0]).add(parts[1] + " " + parts[2]);
+            }
+        }
+        assertEquals(3, recorded.size());
+        for (Map.Entry<String, Set<String>> entry : recorded.entrySet()) {
+            Set<String> issues = new HashSet<>();
+            checks.check(Utils.getInputFile("native/" + entry.getKey())).forEach(issue -> issues.add(issue.getLine() + " " + issue.getId()));
+            assertEquals(entry.getKey(), entry.getValue(), issues);
+        }
+    }
+
+
+    private static Map<AnsibleNativeChecks.Check, String> allChecks() {
+        Map<AnsibleNativeChecks.Check, String> checks = new EnumMap<>(AnsibleNativeChecks.Check.class);
+        for (AnsibleNativeChecks.Check check : AnsibleNativeChecks.Check.values()) {
+            checks.put(check, check.getIds().get(0));
+        }
+        return checks;
+    }
+
+    private static Set<String> toStrings(List<AnsibleLintIssue> issues) {
+        Set<String> strings = new HashSet<>();
+        issues.forEach(issue -> strings.add(issue.getLine() + " " + issue.getId() + " " + issue.getMessage()));
+        return strings;
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) 2018-2021, Sylvain Baudoin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.sbaudoin.sonar.plugins.ansible.rules;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AnsibleVersionCacheTest {
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+
+    @Test
+    public void testPutGetSaveLoad() throws IOException {
+        Path cacheFile = temporaryFolder.getRoot().toPath().resolve("work").resolve("versions");
+        Path executable = temporaryFolder.newFile("ansible-lint").toPath();
+        List<String> version = Arrays.asList("ansible-lint 6.22.1 using ansible 2.16.2", "");
+
+        AnsibleVersionCache cache = new AnsibleVersionCache(cacheFile);
+        String key = cache.getKey(executable.toString());
+        assertNotNull(key);
+        assertNull(cache.get(key));
+        cache.put(key, version);
+        assertEquals(version, cache.get(key));
+        assertTrue(Files.exists(cacheFile));
+
+        // Reload the cache
+        cache = new AnsibleVersionCache(cacheFile);
+        assertEquals(key, cache.getKey(executable.toString()));
+        assertEquals(version, cache.get(key));
+
+        // An updated executable has another key
+        Files.write(executable, "#!/bin/sh\n".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(executable, FileTime.fromMillis(0));
+        assertNotEquals(key, cache.getKey(executable.toString()));
+        assertNull(cache.get(cache.getKey(executable.toString())));
+    }
+
+    @Test
+    public void testGetKey() throws IOException {
+        AnsibleVersionCache cache = new AnsibleVersionCache(temporaryFolder.getRoot().toPath().resolve("versions"));
+        assertNull(cache.getKey(temporaryFolder.getRoot().toPath().resolve("missing").toString()));
+        assertNull(cache.getKey("relative/ansible-lint"));
+        assertNull(cache.getKey("an-executable-that-does-not-exist"));
+        assertNotNull(cache.getKey(System.getProperty("os.name").toLowerCase().contains("windows") ? "cmd" : "sh"));
+    }
+
+    @Test
+    public void testLoadInvalidFile() throws IOException {
+        Path cacheFile = temporaryFolder.newFile("versions").toPath();
+        Files.write(cacheFile, "bad".getBytes(StandardCharsets.UTF_8));
+        AnsibleVersionCache cache = new AnsibleVersionCache(cacheFile);
+        assertNull(cache.get("key"));
+    }
+}
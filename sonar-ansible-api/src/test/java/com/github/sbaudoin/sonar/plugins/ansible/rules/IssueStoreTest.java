@@ -0,0 +1,154 @@
+/**
+ * Copyright (c) 2018-2021, Sylvain Baudoin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.sbaudoin.sonar.plugins.ansible.rules;
+
+import com.github.sbaudoin.sonar.plugins.ansible.rules.AbstractAnsibleSensor.AnsibleLintIssue;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class IssueStoreTest {
+    private static final URI FILE1 = URI.create("file:///project/file1.yml");
+    private static final URI FILE2 = URI.create("file:///project/file2.yml");
+
+
+    @Test
+    public void testAdd() {
+        IssueStore store = new IssueStore();
+        assertTrue(store.add(FILE1, new AnsibleLintIssue(2, 5, "xxx", "there is a problem")));
+        assertTrue(store.add(FILE1, new AnsibleLintIssue(3, "xxx")));
+        assertTrue(store.add(FILE1, new AnsibleLintIssue(2, "yyy")));
+        assertTrue(store.add(FILE2, new AnsibleLintIssue(2, "xxx")));
+        // Same line and rule id: the first issue is kept
+        assertFalse(store.add(FILE1, new AnsibleLintIssue(2, "xxx", "another message")));
+
+        assertEquals(2, store.size());
+        assertEquals(4, store.getIssueCount());
+        assertTrue(store.containsKey(FILE1));
+        assertFalse(store.containsKey(URI.create("file:///project/file3.yml")));
+        assertNull(store.get(URI.create("file:///project/file3.yml")));
+        Set<AnsibleLintIssue> issues = store.get(FILE1);
+        assertEquals(3, issues.size());
+        AnsibleLintIssue issue = issues.iterator().next();
+        assertEquals(2, issue.getLine());
+        assertEquals(5, issue.getColumn());
+        assertEquals("xxx", issue.getId());
+        assertEquals("there is a problem", issue.getMessage());
+        assertTrue(issues.contains(new AnsibleLintIssue(3, "xxx")));
+        assertNull(issues.stream().filter(i -> i.getLine() == 3).findFirst().get().getMessage());
+        assertTrue(issues.contains(new AnsibleLintIssue(2, "yyy")));
+    }
+
+    @Test
+    public void testManyIssues() {
+        IssueStore store = new IssueStore();
+        for (int line = 1; line <= 1000; line++) {
+            assertTrue(store.add(FILE1, new AnsibleLintIssue(line, "rule" + (line % 7), "message " + (line % 3))));
+        }
+        for (int line = 1; line <= 1000; line++) {
+            assertFalse(store.add(FILE1, new AnsibleLintIssue(line, "rule" + (line % 7))));
+        }
+        assertEquals(1000, store.get(FILE1).size());
+        assertTrue(store.get(FILE1).contains(new AnsibleLintIssue(500, "rule3")));
+        assertFalse(store.get(FILE1).contains(new AnsibleLintIssue(500, "rule4")));
+    }
+
+    @Test
+    public void testOneMillionIssues() {
+        long before = getUsedMemory();
+        IssueStore store = new IssueStore();
+        // 10,000 files x 100 issues, 40 rules, messages parsed for every issue as ansible-lint does not share them
+        for (int file = 0; file < 10000; file++) {
+            URI uri = URI.create("file:///project/roles/role" + (file / 100) + "/tasks/file" + file + ".yml");
+            for (int line = 1; line <= 100; line++) {
+                int rule = (file + line) % 40;
+                store.add(uri, new AnsibleLintIssue(line, 1, new String("rule" + rule), new String("Message of the rule " + rule)));
+            }
+        }
+        long used = getUsedMemory() - before;
+
+        assertEquals(10000, store.size());
+        assertEquals(1000000, store.getIssueCount());
+        assertTrue(store.get(URI.create("file:///project/roles/role42/tasks/file4242.yml")).contains(new AnsibleLintIssue(58, "rule20")));
+        // About 33 MiB on a 64-bit JDK 8 with compressed oops, against about 181 MiB for a HashMap of HashSets
+        assertTrue("Store of 1,000,000 issues uses " + (used >> 20) + " MiB", used < 64L << 20);
+    }
+
+    @Test
+    public void testRemove() {
+        IssueStore store = new IssueStore();
+        store.add(FILE1, new AnsibleLintIssue(2, "xxx"));
+        store.add(FILE2, new AnsibleLintIssue(3, "yyy"));
+
+        Iterator<Map.Entry<URI, Set<AnsibleLintIssue>>> entries = store.entrySet().iterator();
+        Map.Entry<URI, Set<AnsibleLintIssue>> entry = entries.next();
+        assertEquals(FILE1, entry.getKey());
+        assertEquals(1, entry.getValue().size());
+        entries.remove();
+        assertEquals(1, store.size());
+        assertFalse(store.containsKey(FILE1));
+
+        assertEquals(1, store.remove(FILE2).size());
+        assertTrue(store.isEmpty());
+
+        store.add(FILE1, new AnsibleLintIssue(2, "xxx"));
+        store.clear();
+        assertTrue(store.isEmpty());
+        assertEquals(0, store.getIssueCount());
+    }
+
+    @Test
+    public void testWritable() {
+        IssueStore store = new IssueStore();
+        store.add(FILE1, new AnsibleLintIssue(2, "xxx"));
+        assertTrue(store.get(FILE1).add(new AnsibleLintIssue(3, "xxx")));
+        assertFalse(store.get(FILE1).add(new AnsibleLintIssue(3, "xxx", "another message")));
+        assertEquals(2, store.get(FILE1).size());
+
+        // Usage of the map before the issues were kept in a compact store
+        Map<URI, Set<AnsibleLintIssue>> map = store;
+        map.computeIfAbsent(FILE2, k -> new HashSet<>()).add(new AnsibleLintIssue(4, "yyy"));
+        assertTrue(map.get(FILE2).contains(new AnsibleLintIssue(4, "yyy")));
+        map.put(FILE1, new HashSet<>(Collections.singletonList(new AnsibleLintIssue(5, "zzz"))));
+        map.get(FILE1).add(new AnsibleLintIssue(6, "zzz"));
+        assertEquals(2, map.get(FILE1).size());
+        assertFalse(map.get(FILE1).contains(new AnsibleLintIssue(2, "xxx")));
+        assertEquals(3, store.getIssueCount());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testRemoveIssue() {
+        IssueStore store = new IssueStore();
+        store.add(FILE1, new AnsibleLintIssue(2, "xxx"));
+        store.get(FILE1).remove(new AnsibleLintIssue(2, "xxx"));
+    }
+
+
+    private static long getUsedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
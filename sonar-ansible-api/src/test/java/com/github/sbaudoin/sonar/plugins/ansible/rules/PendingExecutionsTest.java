@@ -0,0 +1,65 @@
+/**
+ * Copyright (c) 2018-2021, Sylvain Baudoin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.sbaudoin.sonar.plugins.ansible.rules;
+
+import com.github.sbaudoin.sonar.plugins.ansible.Utils;
+import org.junit.Test;
+import org.sonar.api.batch.fs.InputFile;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PendingExecutionsTest {
+    private static final Path PROJECT = Utils.BASE_DIR.resolve("graph").toAbsolutePath();
+
+
+    @Test
+    public void testPendingExecutions() throws IOException {
+        InputFile roleMain = Utils.getInputFile("graph/roles/web/tasks/main.yml");
+        InputFile site = Utils.getInputFile("graph/site.yml");
+        InputFile standalone = Utils.getInputFile("graph/standalone.yml");
+        AnsibleDependencyGraph graph = new AnsibleDependencyGraph(PROJECT);
+        graph.update(Arrays.asList(PROJECT.resolve("site.yml"), PROJECT.resolve("standalone.yml")));
+
+        PendingExecutions pending = new PendingExecutions(graph);
+        List<InputFile> batch1 = Collections.singletonList(site);
+        List<InputFile> batch2 = Collections.singletonList(roleMain);
+        pending.add(batch1, batch1);
+        pending.add(batch2, batch2);
+        assertEquals(2, pending.size());
+        assertTrue(pending.isPending(site.uri()));
+        assertTrue(pending.isPending(roleMain.uri()));
+        assertFalse(pending.isPending(standalone.uri()));
+
+        // The role is still used by the pending playbook
+        pending.complete(batch2);
+        assertEquals(1, pending.size());
+        assertTrue(pending.isPending(roleMain.uri()));
+
+        pending.complete(batch1);
+        pending.complete(batch1);
+        assertEquals(0, pending.size());
+        assertFalse(pending.isPending(site.uri()));
+        assertFalse(pending.isPending(roleMain.uri()));
+        assertFalse(pending.isPending(URI.create("http://localhost/site.yml")));
+    }
+}
@@ -24,9 +24,47 @@ public class AnsibleSettingsTest extends TestCase {
     public void testGetProperties() {
         List<PropertyDefinition> defs = AnsibleSettings.getProperties();
 
-        assertEquals(3, defs.size());
+        assertEquals(22, defs.size());
         assertEquals(AnsibleSettings.ANSIBLE_LINT_PATH_KEY, defs.get(0).key());
         assertEquals(AnsibleSettings.ANSIBLE_LINT_PATH_DEFAULT_VALUE, defs.get(0).defaultValue());
         assertEquals(AnsibleSettings.ANSIBLE_LINT_DISABLE_WARNINGS_DEFAULT_VALUE, defs.get(2).defaultValue());
+        assertEquals(AnsibleSettings.ANSIBLE_LINT_BATCH_SIZE_KEY, defs.get(3).key());
+        assertEquals(AnsibleSettings.ANSIBLE_LINT_BATCH_SIZE_DEFAULT_VALUE, defs.get(3).defaultValue());
+        assertEquals(AnsibleSettings.ANSIBLE_LINT_THREADS_KEY, defs.get(4).key());
+        assertEquals(AnsibleSettings.ANSIBLE_LINT_THREADS_DEFAULT_VALUE, defs.get(4).defaultValue());
+        assertEquals(AnsibleSettings.ANSIBLE_LINT_WORKER_KEY, defs.get(5).key());
+        assertEquals(AnsibleSettings.ANSIBLE_LINT_WORKER_DEFAULT_VALUE, defs.get(5).defaultValue());
+        assertEquals(AnsibleSettings.PYTHON_PATH_KEY, defs.get(6).key());
+        assertEquals(AnsibleSettings.PYTHON_PATH_DEFAULT_VALUE, defs.get(6).defaultValue());
+        assertEquals(AnsibleSettings.ANSIBLE_LINT_CACHE_KEY, defs.get(7).key());
+        assertEquals(AnsibleSettings.ANSIBLE_LINT_CACHE_DEFAULT_VALUE, defs.get(7).defaultValue());
+        assertEquals(AnsibleSettings.ANSIBLE_LINT_CHANGED_FILES_ONLY_KEY, defs.get(8).key());
+        assertEquals(AnsibleSettings.ANSIBLE_LINT_CHANGED_FILES_ONLY_DEFAULT_VALUE, defs.get(8).defaultValue());
+        assertEquals(AnsibleSettings.DEPENDENCY_GRAPH_KEY, defs.get(9).key());
+        assertEquals(AnsibleSettings.DEPENDENCY_GRAPH_DEFAULT_VALUE, defs.get(9).defaultValue());
+        assertEquals(AnsibleSettings.ANSIBLE_LINT_SKIP_COVERED_FILES_KEY, defs.get(10).key());
+        assertEquals(AnsibleSettings.ANSIBLE_LINT_SKIP_COVERED_FILES_DEFAULT_VALUE, defs.get(10).defaultValue());
+        assertEquals(AnsibleSettings.ANSIBLE_LINT_OUTPUT_FORMAT_KEY, defs.get(11).key());
+        assertEquals(AnsibleSettings.ANSIBLE_LINT_OUTPUT_FORMAT_DEFAULT_VALUE, defs.get(11).defaultValue());
+        assertEquals(AnsibleSettings.ANSIBLE_LINT_COMBINED_KEY, defs.get(12).key());
+        assertEquals(AnsibleSettings.ANSIBLE_LINT_COMBINED_DEFAULT_VALUE, defs.get(12).defaultValue());
+        assertEquals(AnsibleSettings.ANSIBLE_LINT_STREAMING_KEY, defs.get(13).key());
+        assertEquals(AnsibleSettings.ANSIBLE_LINT_STREAMING_DEFAULT_VALUE, defs.get(13).defaultValue());
+        assertEquals(AnsibleSettings.ANSIBLE_LINT_PERFORMANCE_REPORT_KEY, defs.get(14).key());
+        assertEquals(AnsibleSettings.ANSIBLE_LINT_PERFORMANCE_REPORT_DEFAULT_VALUE, defs.get(14).defaultValue());
+        assertEquals(AnsibleSettings.ANSIBLE_LINT_TIMEOUT_KEY, defs.get(15).key());
+        assertEquals(AnsibleSettings.ANSIBLE_LINT_TIMEOUT_DEFAULT_VALUE, defs.get(15).defaultValue());
+        assertEquals(AnsibleSettings.ANSIBLE_LINT_TIMEOUT_RETRIES_KEY, defs.get(16).key());
+        assertEquals(AnsibleSettings.ANSIBLE_LINT_TIMEOUT_RETRIES_DEFAULT_VALUE, defs.get(16).defaultValue());
+        assertEquals(AnsibleSettings.NON_ANSIBLE_FILES_SKIP_KEY, defs.get(17).key());
+        assertEquals(AnsibleSettings.NON_ANSIBLE_FILES_SKIP_DEFAULT_VALUE, defs.get(17).defaultValue());
+        assertEquals(AnsibleSettings.ANSIBLE_LINT_ENTRY_POINTS_KEY, defs.get(18).key());
+        assertEquals(AnsibleSettings.ANSIBLE_LINT_ENTRY_POINTS_DEFAULT_VALUE, defs.get(18).defaultValue());
+        assertEquals(AnsibleSettings.RULE_ENGINE_KEY, defs.get(19).key());
+        assertEquals(AnsibleSettings.RULE_ENGINE_DEFAULT_VALUE, defs.get(19).defaultValue());
+        assertEquals(AnsibleSettings.ANSIBLE_LINT_ACTIVE_RULES_ONLY_KEY, defs.get(20).key());
+        assertEquals(AnsibleSettings.ANSIBLE_LINT_ACTIVE_RULES_ONLY_DEFAULT_VALUE, defs.get(20).defaultValue());
+        assertEquals(AnsibleSettings.ANSIBLE_LINT_PROJECT_MODE_KEY, defs.get(21).key());
+        assertEquals(AnsibleSettings.ANSIBLE_LINT_PROJECT_MODE_DEFAULT_VALUE, defs.get(21).defaultValue());
     }
 }
@@ -76,4 +76,13 @@ public class FileSystemTest {
         assertTrue(content.contains(root.resolve("rule1.json").toAbsolutePath()));
         assertTrue(content.contains(root.resolve("rule2.json").toAbsolutePath()));
     }
+
+    @Test
+    public void testGetContentHash() throws URISyntaxException, IOException {
+        FileSystem fs = new FileSystem(new URI("file:///"));
+        String hash = fs.getContentHash(Paths.get("src", "test", "resources", "my-rules").toUri());
+        assertEquals(64, hash.length());
+        assertEquals(hash, fs.getContentHash(Paths.get("src", "test", "resources", "my-rules").toUri()));
+        assertNotEquals(hash, fs.getContentHash(Paths.get("src", "test", "resources", "extra-rules").toUri()));
+    }
 }
@@ -0,0 +1,4 @@
+@echo off
+set count=0
+for %%f in (%*) do if "%%~xf"==".yml" set /a count+=1
+for %%f in (%*) do if "%%~xf"==".yml" echo %%~f:2: [EANSIBLE1] %count% file(s)
@@ -0,0 +1,13 @@
+#!/bin/sh
+
+count=0
+for arg in "$@"; do
+  case "$arg" in
+    *.yml) count=$((count+1));;
+  esac
+done
+for arg in "$@"; do
+  case "$arg" in
+    *.yml) echo "$arg:2: [EANSIBLE1] $count file(s)";;
+  esac
+done
@@ -0,0 +1,5 @@
+@echo off
+echo [
+echo   {"type": "issue", "check_name": "[ANSIBLE1] A first error", "description": "A first error, with a \"long\" message", "location": {"path": "playbooks/playbook1.yml", "lines": {"begin": 2}}},
+echo   {"type": "issue", "check_name": "AnyCheck1[sub]", "description": "An error", "location": {"path": "playbooks/playbook1.yml", "positions": {"begin": {"line": 3, "column": 5}}}}
+echo ]
\ No newline at end of file
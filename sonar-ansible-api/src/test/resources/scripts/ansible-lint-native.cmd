@@ -0,0 +1,26 @@
+@echo off
+setlocal enabledelayedexpansion
+rem Replays the output of ansible-lint 5 expected on the files of the native directory (see ansible-lint-output.txt), without the rules passed with -x
+set recorded=%~dp0..\native\ansible-lint-output.txt
+set skip=,
+:args
+if "%~1"=="" exit /b 0
+if "%~1"=="-x" (
+    set skip=,%~2,
+    shift
+    shift
+    goto args
+)
+set file=%~1
+set name=!file:\=/!
+set name=!name:*native/=!
+if not "!name!"=="!file:\=/!" (
+    for /f "usebackq tokens=1,2,3 delims=: " %%a in ("%recorded%") do (
+        if "%%a"=="!name!" (
+            set test=!skip:,%%c,=!
+            if "!test!"=="!skip!" echo !file!:%%b: %%c
+        )
+    )
+)
+shift
+goto args
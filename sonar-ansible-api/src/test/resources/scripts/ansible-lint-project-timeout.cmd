@@ -0,0 +1,9 @@
+@echo off
+rem Lints the whole project, reports an issue then hangs
+if "%~1"=="--version" (
+    echo ansible-lint 5.4.0
+    exit /b 0
+)
+echo playbooks/playbook1.yml:2: ANSIBLE1
+ping -n 6 127.0.0.1 > nul
+echo ./playbooks/playbook2.yml:3: EAnyCheck1
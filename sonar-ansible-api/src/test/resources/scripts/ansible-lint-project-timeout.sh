@@ -0,0 +1,10 @@
+#!/bin/sh
+
+# Lints the whole project, reports an issue then hangs
+if [ "$1" = "--version" ]; then
+  echo "ansible-lint 5.4.0"
+  exit 0
+fi
+echo "playbooks/playbook1.yml:2: ANSIBLE1"
+sleep 5
+echo "./playbooks/playbook2.yml:3: EAnyCheck1"
@@ -0,0 +1,15 @@
+@echo off
+rem Lints the whole project when no file is passed, as ansible-lint 5 does
+if "%~1"=="--version" (
+    echo ansible-lint 5.4.0
+    exit /b 0
+)
+for %%a in (%*) do (
+    echo %%~a | findstr /c:"playbooks" >nul && (
+        echo Files must not be passed in project mode: %%~a 1>&2
+        exit /b 1
+    )
+)
+echo playbooks/playbook1.yml:2: ANSIBLE1
+echo ./playbooks/playbook2.yml:3: EAnyCheck1
+echo roles/not-indexed/tasks/main.yml:1: ANSIBLE1
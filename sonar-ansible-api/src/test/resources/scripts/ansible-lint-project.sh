@@ -0,0 +1,16 @@
+#!/bin/sh
+
+# Lints the whole project when no file is passed, as ansible-lint 5 does
+if [ "$1" = "--version" ]; then
+  echo "ansible-lint 5.4.0"
+  exit 0
+fi
+for arg in "$@"; do
+  case "$arg" in
+    *playbooks/*) echo "Files must not be passed in project mode: $arg" >&2
+                  exit 1;;
+  esac
+done
+echo "playbooks/playbook1.yml:2: ANSIBLE1"
+echo "./playbooks/playbook2.yml:3: EAnyCheck1"
+echo "roles/not-indexed/tasks/main.yml:1: ANSIBLE1"
@@ -0,0 +1,3 @@
+@echo off
+for %%f in (%*) do if "%%~xf"==".yml" echo %%~f:2: [EANSIBLE1] analyzed
+for %%f in (%*) do if "%%~nxf"=="site.yml" echo graph/roles/web/tasks/main.yml:3: [EANSIBLE1] used by playbook
\ No newline at end of file
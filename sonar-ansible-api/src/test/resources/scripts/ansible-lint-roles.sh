@@ -0,0 +1,9 @@
+#!/bin/sh
+
+for arg in "$@"; do
+  case "$arg" in
+    *site.yml) echo "$arg:2: [EANSIBLE1] analyzed"
+               echo "graph/roles/web/tasks/main.yml:3: [EANSIBLE1] used by playbook";;
+    *.yml) echo "$arg:2: [EANSIBLE1] analyzed";;
+  esac
+done
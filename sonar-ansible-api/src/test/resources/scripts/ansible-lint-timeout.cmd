@@ -0,0 +1,9 @@
+@echo off
+for %%f in (%*) do (
+  if "%%~nxf"=="playbook2.yml" (
+    ping -n 6 127.0.0.1 > nul
+    echo %%~f:2: [EANSIBLE1] too late
+  ) else if "%%~xf"==".yml" (
+    echo %%~f:2: [EANSIBLE1] analyzed
+  )
+)
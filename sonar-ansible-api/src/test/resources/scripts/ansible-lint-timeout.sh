@@ -0,0 +1,9 @@
+#!/bin/sh
+
+for arg in "$@"; do
+  case "$arg" in
+    *playbook2.yml) sleep 5
+                    echo "$arg:2: [EANSIBLE1] too late";;
+    *.yml) echo "$arg:2: [EANSIBLE1] analyzed";;
+  esac
+done
@@ -0,0 +1,10 @@
+@echo off
+echo READY 1.2.3
+:loop
+set line=
+set /p line=
+if "%line%"=="" goto :eof
+if "%line:playbook2.yml=%" neq "%line%" ping -n 6 127.0.0.1 > nul
+echo %line%:2: [EANSIBLE1] From worker 0
+echo __ANSIBLE_LINT_WORKER_END__
+goto loop
\ No newline at end of file
@@ -0,0 +1,9 @@
+@echo off
+echo READY 1.2.3
+:loop
+set line=
+set /p line=
+if "%line%"=="" goto :eof
+echo %line%:2: [EANSIBLE1] From worker 0
+echo __ANSIBLE_LINT_WORKER_END__
+goto loop
\ No newline at end of file
@@ -0,0 +1,9 @@
+#!/bin/sh
+
+echo "READY 1.2.3"
+while IFS= read -r line; do
+  echo "$line" | tr '\t' '\n' | while IFS= read -r file; do
+    echo "$file:2: [EANSIBLE1] From worker $$"
+  done
+  echo "__ANSIBLE_LINT_WORKER_END__"
+done
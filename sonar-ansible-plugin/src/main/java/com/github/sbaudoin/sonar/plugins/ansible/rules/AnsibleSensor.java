@@ -18,16 +18,22 @@ package com.github.sbaudoin.sonar.plugins.ansible.rules;
 import org.sonar.api.batch.fs.FileSystem;
 import org.sonar.api.batch.sensor.SensorContext;
 import org.sonar.api.batch.sensor.SensorDescriptor;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
 import com.github.sbaudoin.sonar.plugins.yaml.languages.YamlLanguage;
 
 public class AnsibleSensor extends AbstractAnsibleSensor {
+    private static final Logger LOGGER = Loggers.get(AnsibleSensor.class);
+
+
     /**
-     * Constructor
+     * Constructor. The default rules are registered for the combined {@code ansible-lint} execution.
      *
      * @param fileSystem the file system on which the sensor will find the files to be analyzed
      */
     public AnsibleSensor(FileSystem fileSystem) {
         super(fileSystem);
+        AnsibleLintRegistry.registerDefaultRules();
     }
 
 
@@ -39,6 +45,11 @@ public class AnsibleSensor extends AbstractAnsibleSensor {
 
     @Override
     public void execute(SensorContext context) {
+        if (isCombinedExecution(context) && !AnsibleLintRegistry.getExtraRules().isEmpty()) {
+            // The default rules are executed along with the extra rules by the sensor of an extra rules plugin
+            LOGGER.info("Default rules executed by the combined ansible-lint execution, skipping");
+            return;
+        }
         executeWithAnsibleLint(context, null);
     }
 }
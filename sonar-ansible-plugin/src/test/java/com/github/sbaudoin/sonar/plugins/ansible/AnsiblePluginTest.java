@@ -25,6 +25,6 @@ public class AnsiblePluginTest extends TestCase {
     public void testExtensionCounts() {
         Plugin.Context context = new Plugin.Context(SonarRuntimeImpl.forSonarQube(Version.create(6, 2), SonarQubeSide.SERVER));
         new AnsiblePlugin().define(context);
-        assertEquals(5, context.getExtensions().size());
+        assertEquals(24, context.getExtensions().size());
     }
 }
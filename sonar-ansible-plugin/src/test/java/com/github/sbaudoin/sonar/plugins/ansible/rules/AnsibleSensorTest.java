@@ -18,6 +18,7 @@ package com.github.sbaudoin.sonar.plugins.ansible.rules;
 import com.github.sbaudoin.sonar.plugins.ansible.checks.AnsibleCheckRepository;
 import com.github.sbaudoin.sonar.plugins.ansible.settings.AnsibleSettings;
 import com.github.sbaudoin.sonar.plugins.yaml.languages.YamlLanguage;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -38,6 +39,7 @@ import org.sonar.api.rule.RuleKey;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -124,6 +126,26 @@ public class AnsibleSensorTest {
         assertTrue(issueExists(issues, ruleKey3, playbook, 5, "Another error --nocolor"));
     }
 
+    @Test
+    public void testExecuteCombined() throws IOException {
+        Path baseDir = context.fileSystem().baseDirPath();
+        InputFile playbook = TestInputFileBuilder.create("moduleKey", baseDir.resolve("playbooks/playbook1.yml").toString())
+                .setModuleBaseDir(Paths.get("."))
+                .setContents(new String(Files.readAllBytes(baseDir.resolve("playbooks/playbook1.yml"))))
+                .setLanguage(YamlLanguage.KEY)
+                .setCharset(StandardCharsets.UTF_8)
+                .build();
+        context.fileSystem().add(playbook);
+        context.settings().appendProperty(AnsibleSettings.ANSIBLE_LINT_COMBINED_KEY, "true");
+        assertTrue(AnsibleLintRegistry.hasDefaultRules());
+
+        // The default rules are executed by the extra rules plugins
+        AnsibleLintRegistry.registerExtraRules(URI.create("jar:file:/plugins/sonar-ansible-extras-plugin.jar!/extra-rules"));
+        sensor.execute(context);
+        assertEquals(0, sensor.scannedFiles.size());
+        assertEquals(0, context.allIssues().size());
+    }
+
     private boolean issueExists(Collection<Issue> issues, RuleKey ruleKey, InputFile file, int line, String regex) {
         // Brut force...
         for (Issue issue : issues) {
@@ -139,6 +161,12 @@ public class AnsibleSensorTest {
         return false;
     }
 
+    @After
+    public void tearDown() {
+        System.clearProperty(AnsibleLintRegistry.DEFAULT_RULES_PROPERTY);
+        System.clearProperty(AnsibleLintRegistry.EXTRA_RULES_PROPERTY);
+    }
+
     @Before
     public void init() throws Exception {
         Path baseDir = Paths.get("src/test/resources");